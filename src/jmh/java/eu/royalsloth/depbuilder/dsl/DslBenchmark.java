@@ -0,0 +1,46 @@
+package eu.royalsloth.depbuilder.dsl;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the lexer and the parser on the generated pipelines of different sizes. Run with {@code -prof
+ * gc} to see the allocation rate as well (see jmh profile in pom.xml).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DslBenchmark {
+
+    @Param({"10", "100", "1000", "20000"})
+    public int nodes;
+
+    private String pipeline;
+
+    @Setup
+    public void setUp() {
+        pipeline = PipelineGenerator.generate(nodes, 42);
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        DslLexer.Tokenizer tokenizer = new DslLexer.Tokenizer(pipeline);
+        Token token = tokenizer.getNextToken();
+        while (token.type != TokenType.EOF) {
+            blackhole.consume(token);
+            token = tokenizer.getNextToken();
+        }
+    }
+
+    @Benchmark
+    public ParsedBuild parseBuild() throws ParseException {
+        SettingsVerifier verifier = new SettingsVerifier();
+        verifier.setVerify(false);
+        return DslParser.parseBuild(pipeline, verifier);
+    }
+}
@@ -0,0 +1,61 @@
+package eu.royalsloth.depbuilder.dsl;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generator of the synthetic pipeline scripts that are used in the benchmarks. The generated pipeline
+ * resembles the real pipelines: scheduler settings, a settings block for every few jobs and the job
+ * dependencies where most of the jobs depend on the jobs that were defined shortly before them.
+ */
+public class PipelineGenerator {
+
+    /**
+     * @param nodes number of jobs in the pipeline
+     * @param seed  seed of the random generator, the same seed always generates the same pipeline
+     */
+    public static String generate(int nodes, long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder pipeline = new StringBuilder(nodes * 64);
+        pipeline.append("_BUILD {\n")
+                .append("    maxDuration: 10:00\n")
+                .append("    buildThrottle: [08:00|4, 18:00|-1]\n")
+                .append("}\n\n")
+                .append("_ALL {\n")
+                .append("    onParentFailure: ABORT\n")
+                .append("}\n\n");
+
+        for (int job = 0; job < nodes; job += 10) {
+            pipeline.append(jobId(job)).append(" {\n")
+                    .append("    name: \"Job number ").append(job).append("\"\n")
+                    .append("    agent: [any]\n")
+                    .append("    weight: ").append(1 + random.nextInt(5)).append("\n")
+                    .append("    onParentFailure: BUILD\n")
+                    .append("    maxDuration: 01:30\n")
+                    .append("}\n");
+        }
+        pipeline.append("\n");
+
+        for (int job = 0; job < nodes; job++) {
+            Set<Integer> parents = new TreeSet<>();
+            int fanIn = job == 0 ? 0 : 1 + random.nextInt(3);
+            for (int i = 0; i < fanIn; i++) {
+                int windowStart = Math.max(0, job - 50);
+                parents.add(windowStart + random.nextInt(job - windowStart));
+            }
+
+            if (parents.isEmpty()) {
+                pipeline.append(jobId(job)).append("\n");
+            }
+            for (int parent : parents) {
+                pipeline.append(jobId(parent)).append(" -> ").append(jobId(job)).append("\n");
+            }
+        }
+        return pipeline.toString();
+    }
+
+    public static String jobId(int job) {
+        return "job_" + job;
+    }
+}
@@ -0,0 +1,92 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import eu.royalsloth.depbuilder.dsl.DslParser;
+import eu.royalsloth.depbuilder.dsl.ParseException;
+import eu.royalsloth.depbuilder.dsl.ParsedBuildJob;
+import eu.royalsloth.depbuilder.dsl.PipelineGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the topological sort and the scheduler on the generated pipelines of different sizes. Run
+ * with {@code -prof gc} to see the allocation rate as well (see jmh profile in pom.xml).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchedulingBenchmark {
+
+    @Param({"10", "100", "1000", "20000"})
+    public int nodes;
+
+    private List<ParsedBuildJob> parsedJobs;
+
+    @Setup
+    public void setUp() throws ParseException {
+        parsedJobs = DslParser.parseBuildNoVerify(PipelineGenerator.generate(nodes, 42)).parsedJobs;
+    }
+
+    /**
+     * Scheduler changes the build status of the jobs, so every scheduler benchmark invocation needs fresh
+     * build layers. The layers are created outside of the measured code.
+     */
+    @State(Scope.Thread)
+    public static class FreshBuildLayers {
+        BuildLayers buildLayers;
+
+        @Setup(Level.Invocation)
+        public void setUp(SchedulingBenchmark benchmark) {
+            buildLayers = BuildLayers.topologicalSort(benchmark.parsedJobs);
+        }
+    }
+
+    @Benchmark
+    public BuildLayers topologicalSort() {
+        return BuildLayers.topologicalSort(parsedJobs);
+    }
+
+    /**
+     * Schedule the whole pipeline with the given number of executors, the builds finish in the order in which
+     * they were started and they always succeed.
+     */
+    private static int schedule(BuildLayers buildLayers, int executors) {
+        SchedulerSettings settings = new SchedulerSettings();
+        settings.maxParallelBuilds = executors;
+        Scheduler scheduler = new Scheduler(buildLayers, settings, new VirtualClock(Instant.EPOCH, ZoneOffset.UTC));
+
+        ArrayDeque<BuildJob> running = new ArrayDeque<>();
+        int scheduledBuilds = 0;
+        while (true) {
+            ScheduledNode node = scheduler.getNext();
+            switch (node.getStatus()) {
+                case OK:
+                    running.add(node.getBuildJob());
+                    scheduledBuilds++;
+                    break;
+                case WAIT:
+                    scheduler.finishBuild(running.poll(), BuildStatus.SUCCESS);
+                    break;
+                default:
+                    return scheduledBuilds;
+            }
+        }
+    }
+
+    @Benchmark
+    public int schedule_unlimitedExecutors(FreshBuildLayers layers) {
+        return schedule(layers.buildLayers, SchedulerSettings.NO_RESTRICTION);
+    }
+
+    @Benchmark
+    public int schedule_4Executors(FreshBuildLayers layers) {
+        return schedule(layers.buildLayers, 4);
+    }
+}
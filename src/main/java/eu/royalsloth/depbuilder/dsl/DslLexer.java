@@ -5,27 +5,147 @@ import java.util.List;
 
 public class DslLexer {
     private static final char CHAR_EOF = '\0';
+    private static final String NEWLINE_TEXT = "\\n";
 
     public static class Tokenizer {
 
         public int position = 0;
         public int line = 1;
         public final String input;
+        private final char[] chars;
 
         public Tokenizer(String input) {
             this.input = input;
+            this.chars = input.toCharArray();
         }
 
+        /**
+         * Peek buffer of one lookahead token. The peeked token is lexed only once and then handed out by the
+         * next {@link #getNextToken()}, which moves the tokenizer to the position after the peeked token. The
+         * span lexing ({@link #nextSpan()}) discards the buffer.
+         */
+        private Token peekedToken = null;
+        private int peekedToPosition = -1;
+        private int peekedToLine = -1;
+
         public Token peekNextToken() {
+            if (peekedToken != null) {
+                return peekedToken;
+            }
+
             int currentPos = position;
             int currentLine = line;
-            Token token = getNextToken();
+            Token token = lexToken();
+            peekedToken = token;
+            peekedToPosition = position;
+            peekedToLine = line;
+
             position = currentPos; // reset position
             line = currentLine;
             return token;
         }
 
         public Token getNextToken() {
+            if (peekedToken != null) {
+                Token token = peekedToken;
+                peekedToken = null;
+                position = peekedToPosition;
+                line = peekedToLine;
+                return token;
+            }
+            return lexToken();
+        }
+
+        /**
+         * Get the next token that is not a semicolon (or a newline). The skipped separators are lexed as spans,
+         * so no tokens are created for them.
+         */
+        public Token getNextNonSemicolonToken() {
+            if (peekedToken != null) {
+                Token token = getNextToken();
+                if (token.type != TokenType.SEMICOLON) {
+                    return token;
+                }
+            }
+
+            TokenType type = nextSpan();
+            while (type == TokenType.SEMICOLON) {
+                type = nextSpan();
+            }
+            return spanToToken(type);
+        }
+
+        private Token lexToken() {
+            return spanToToken(nextSpan());
+        }
+
+        private Token spanToToken(TokenType type) {
+            if (type == TokenType.EOF) {
+                return new Token(type, "", spanStart, spanEnd);
+            }
+            if (type == TokenType.SEMICOLON && isNewline(chars[spanStart])) {
+                return new Token(type, NEWLINE_TEXT, spanStart, spanEnd);
+            }
+            return Token.span(input, type, spanStart, spanEnd);
+        }
+
+        /**
+         * Type of the last token lexed with {@link #nextSpan()}
+         */
+        private TokenType spanType = TokenType.UNKNOWN;
+        private int spanStart = 0;
+        private int spanEnd = 0;
+
+        public TokenType getSpanType() {
+            return spanType;
+        }
+
+        public int getSpanStart() {
+            return spanStart;
+        }
+
+        public int getSpanEnd() {
+            return spanEnd;
+        }
+
+        /**
+         * @return text of the last lexed span (a new string is created on every call)
+         */
+        public String getSpanText() {
+            return substring(spanStart, spanEnd);
+        }
+
+        /**
+         * @return true if the text of the last lexed span equals the given text (without creating the span
+         * text)
+         */
+        public boolean spanTextEquals(String text) {
+            int length = spanEnd - spanStart;
+            if (length != text.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chars[spanStart + i] != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private TokenType span(TokenType type, int start, int end) {
+            spanType = type;
+            spanStart = start;
+            spanEnd = end;
+            return type;
+        }
+
+        /**
+         * Lex the next token without creating the token object. The type of the token is returned, while
+         * the position of the token text in the input is available via {@link #getSpanStart()} and {@link
+         * #getSpanEnd()}. The lookahead token of {@link #peekNextToken()} is not used in this mode.
+         */
+        public TokenType nextSpan() {
+            peekedToken = null;
             char c = getCurrentChar();
             // chomp on white space
             while (true) {
@@ -35,12 +155,9 @@ public class DslLexer {
                         // this only happens if we are chomping white space and does
                         // not happen if we contain \n within the string
                         line++;
-                        Token token = new Token();
-                        token.type = TokenType.SEMICOLON;
-                        token.text = "\\n"; // should we set text in such case?
-                        token.startPos = this.position;
+                        int start = this.position;
                         advance();
-                        return token;
+                        return span(TokenType.SEMICOLON, start, this.position);
                     }
                     advance();
                     c = getCurrentChar();
@@ -50,155 +167,133 @@ public class DslLexer {
                         advance();
                         c = getCurrentChar();
                     }
+                } else if (c == '/' && peekNextChar() == '*') {
+                    // parsing multi line comment
+                    advance(); // move iterator to peeked '*'
+                    c = getCurrentChar(); // c = '*'
+                    advance(); // move past '*'
+                    while (c != CHAR_EOF) {
+                        c = getCurrentChar();
+                        if (c == '*' && peekNextChar() == '/') {
+                            advance(); // move to '/'
+                            advance(); // skip past '/'
+                            break;
+                        }
+                        advance();
+                    }
+                    c = getCurrentChar();
                 } else {
                     // stop chomping whitespace, we found a non white space character
                     break;
                 }
             }
 
-            Token token = new Token();
-            token.startPos = this.position;
+            final int start = this.position;
             if (c == CHAR_EOF) {
-                token.type = TokenType.EOF;
-                return token;
+                return span(TokenType.EOF, start, start);
             }
 
-            token.text = Character.toString(c);
+            TokenType type;
             switch (c) {
                 case '-': {
                     if (peekNextChar() == '>') {
-                        token.type = TokenType.RIGHT_ARROW;
-                        token.text = "->";
                         advance();
                         advance();
-                        return token;
+                        return span(TokenType.RIGHT_ARROW, start, this.position);
                     }
                     // lonely minus sign
-                    token.type = TokenType.MINUS;
+                    type = TokenType.MINUS;
                 }
                 break;
                 case '*':
-                    token.type = TokenType.STAR;
+                    type = TokenType.STAR;
                     break;
                 case '+':
-                    token.type = TokenType.PLUS;
+                    type = TokenType.PLUS;
                     break;
                 case '/':
-                    char nextChar = peekNextChar();
-                    if (nextChar == '/') {
-                        // skip the comment
-                        while (c != CHAR_EOF && !isNewline(c)) {
-                            advance();
-                            c = getCurrentChar();
-                        }
-                        return this.getNextToken();
-                    }
-
-                    // parsing multi line comment
-                    if (nextChar == '*') {
-                        advance(); // move iterator to peeked '*'
-                        c = getCurrentChar(); // c = '*'
-                        advance(); // move past '*'
-                        while (c != CHAR_EOF) {
-                            c = getCurrentChar();
-                            if (c == '*') {
-                                nextChar = peekNextChar();
-                                if (nextChar == '/') {
-                                    advance(); // move to '/'
-                                    advance(); // skip past '/'
-                                    break;
-                                }
-                            }
-                            advance();
-                        }
-                        return this.getNextToken();
-                    } else {
-                        token.type = TokenType.DIVIDE;
-                    }
+                    // comments were already skipped
+                    type = TokenType.DIVIDE;
                     break;
                 case '.':
-                    token.type = TokenType.DOT;
+                    type = TokenType.DOT;
                     break;
                 case ',':
-                    token.type = TokenType.COMMA;
+                    type = TokenType.COMMA;
                     break;
                 case ';':
-                    token.type = TokenType.SEMICOLON;
+                    type = TokenType.SEMICOLON;
                     break;
                 case '|':
-                    token.type = TokenType.PIPE;
+                    type = TokenType.PIPE;
                     break;
                 case ':':
-                    token.type = TokenType.COLON;
+                    type = TokenType.COLON;
                     break;
                 case '(':
-                    token.type = TokenType.LEFT_PAREN;
+                    type = TokenType.LEFT_PAREN;
                     break;
                 case ')':
-                    token.type = TokenType.RIGHT_PAREN;
+                    type = TokenType.RIGHT_PAREN;
                     break;
                 case '{':
-                    token.type = TokenType.LEFT_BRACE;
+                    type = TokenType.LEFT_BRACE;
                     break;
                 case '}':
-                    token.type = TokenType.RIGHT_BRACE;
+                    type = TokenType.RIGHT_BRACE;
                     break;
                 case '[':
-                    token.type = TokenType.LEFT_BRACKET;
+                    type = TokenType.LEFT_BRACKET;
                     break;
                 case ']':
-                    token.type = TokenType.RIGHT_BRACKET;
+                    type = TokenType.RIGHT_BRACKET;
                     break;
                 case '"': {
                     advance(); // skip first "
-                    token.startPos = this.position;
+                    final int stringStart = this.position;
                     c = getCurrentChar();
                     while (c != '"' && c != CHAR_EOF) {
                         // skip escaped " token
-                        if (getCurrentChar() == '\\' && peekNextChar() != CHAR_EOF) {
+                        if (c == '\\' && peekNextChar() != CHAR_EOF) {
                             advance();
                         }
                         advance();
                         c = getCurrentChar();
                     }
 
-                    int end = this.position;
-                    token.text = substring(token.startPos, end);
-                    token.type = TokenType.STRING;
-                    break;
+                    final int stringEnd = this.position;
+                    advance(); // skip last "
+                    return span(TokenType.STRING, stringStart, stringEnd);
                 }
                 default: {
-                    c = getCurrentChar();
                     if (isDigit(c)) {
-                        token = parseDigitToken(this, token);
-                        return token;
+                        return lexNumber();
                     }
 
                     if (isAlpha(c)) {
-                        token = parseIdentifier(this, token);
-                        return token;
+                        lexIdentifier();
+                        return span(TokenType.IDENTIFIER, start, this.position);
                     }
 
                     // in default case, we have to advance the tokenizer
                     advance();
-                    token.type = TokenType.UNKNOWN;
-                    return token;
+                    return span(TokenType.UNKNOWN, start, this.position);
                 }
             }
 
             advance();
-            return token;
+            return span(type, start, this.position);
         }
 
         public char getCurrentChar() {
-            if (position == input.length()) {
+            if (position >= chars.length) {
                 return CHAR_EOF;
             }
-            return input.charAt(position);
+            return chars[position];
         }
 
         public void advance() {
-            if (position < input.length()) {
+            if (position < chars.length) {
                 position++;
             }
         }
@@ -215,11 +310,11 @@ public class DslLexer {
 
         public char peekNextChar() {
             int nextPos = position + 1;
-            if (nextPos == input.length()) {
+            if (nextPos >= chars.length) {
                 return CHAR_EOF;
             }
 
-            return input.charAt(nextPos);
+            return chars[nextPos];
         }
 
         /**
@@ -283,16 +378,13 @@ public class DslLexer {
             return tokens;
         }
 
-        public static Token parseDigitToken(Tokenizer tokenizer, Token token) {
-            int start = tokenizer.position;
-            token.type = TokenType.NUMBER;
-            token.startPos = start;
-
+        private TokenType lexNumber() {
+            final int start = this.position;
             boolean foundDot = false;
             while (true) {
-                char c = tokenizer.getCurrentChar();
+                char c = getCurrentChar();
                 if (isDigit(c)) {
-                    tokenizer.advance();
+                    advance();
                     continue;
                 }
 
@@ -300,7 +392,7 @@ public class DslLexer {
                 if (c == '.') {
                     if (!foundDot) {
                         foundDot = true;
-                        tokenizer.advance();
+                        advance();
                         continue;
                     }
 
@@ -315,30 +407,24 @@ public class DslLexer {
 
                 // we have an identifier that starts with a number e.g: '2myProject'
                 if (isAlpha(c)) {
-                    Token restOfToken = parseIdentifier(tokenizer, token);
-                    token.startPos = start;
-                    token.text = tokenizer.substring(start, tokenizer.position);
-                    token.type = restOfToken.type;
-                    return token;
+                    lexIdentifier();
+                    return span(TokenType.IDENTIFIER, start, this.position);
                 }
 
                 // found something that is neither the integer nor an identifier
                 // e.g: operator (+). Break the loop.
                 break;
             }
-            token.text = tokenizer.substring(start, tokenizer.position);
-            return token;
+            return span(TokenType.NUMBER, start, this.position);
         }
 
-        public static Token parseIdentifier(Tokenizer tokenizer, Token token) {
-            char c = tokenizer.getCurrentChar();
-            int start = tokenizer.position;
-            token.type = TokenType.IDENTIFIER;
-
+        private void lexIdentifier() {
+            char c = getCurrentChar();
+            final int start = this.position;
             while (isAlpha(c) || isDigit(c)) {
                 // parsing right arrow
-                if (c == '-' && tokenizer.peekNextChar() == '>') {
-                    final boolean wasParsingIdentifier = tokenizer.position - start >= 1;
+                if (c == '-' && peekNextChar() == '>') {
+                    final boolean wasParsingIdentifier = this.position - start >= 1;
                     if (wasParsingIdentifier) {
                         // we end the identifier parsing. This ensures the identifiers could
                         // contain '-' characters while still allowing '->' without spaces
@@ -347,12 +433,9 @@ public class DslLexer {
                     }
                 }
 
-                tokenizer.advance();
-                c = tokenizer.getCurrentChar();
+                advance();
+                c = getCurrentChar();
             }
-
-            token.text = tokenizer.substring(start, tokenizer.position);
-            return token;
         }
     }
 
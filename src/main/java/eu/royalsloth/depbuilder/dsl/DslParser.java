@@ -11,6 +11,7 @@ import javax.annotation.CheckForNull;
 import java.time.Duration;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 public class DslParser {
@@ -40,12 +41,12 @@ public class DslParser {
                     parse = false;
                     break;
                 case SEMICOLON:
-                    token = tokenizer.getNextToken();
+                    token = tokenizer.getNextNonSemicolonToken();
                     break;
                 case UNKNOWN:
                 case ERROR:
                     throw ParseException.create(tokenizer, token,
-                                                String.format("Error while parsing tokens %s", token.text));
+                                                String.format("Error while parsing tokens %s", token.getText()));
                 case IDENTIFIER:
                 case STRING: {
                     // every identifier has to be checked against the known identifiers
@@ -58,16 +59,16 @@ public class DslParser {
 
                     // parse build node settings (works for _ALL identifier as well)
                     if (nextToken.type == TokenType.LEFT_BRACE) {
-                        final String buildNode = token.text;
+                        final String buildNode = token.getText();
                         if (SCHEDULER_SETTINGS.equals(buildNode)) {
-                            parseSchedulerSettings(tokenizer, token.text, schedulerSettings);
+                            parseSchedulerSettings(tokenizer, token.getText(), schedulerSettings);
                             continue;
                         }
 
                         BuildSettings settings = buildSettings.getOrCreate(buildNode);
-                        BuildSettings updatedSettings = parseBuildNodeSettings(tokenizer, settings, settingsVerifier);
+                        SettingsDelta delta = parseBuildNodeSettings(tokenizer, settings.getJobName(), settingsVerifier);
                         // this put is not strictly necessary, because we are modifying the settings node
-                        buildSettings.put(buildNode, updatedSettings);
+                        buildSettings.put(buildNode, delta.applyTo(settings));
                         token = tokenizer.getNextToken();
                         continue;
                     }
@@ -76,7 +77,7 @@ public class DslParser {
                     // node settings: A,B {...}
                     if (nextToken.type == TokenType.COMMA) {
                         List<String> settingIdentifiers = new ArrayList<>();
-                        settingIdentifiers.add(token.text);
+                        settingIdentifiers.add(token.getText());
                         while (true) {
                             nextToken = tokenizer.getNextToken();
                             if (nextToken.type == TokenType.COMMA) {
@@ -85,37 +86,28 @@ public class DslParser {
 
                             if (nextToken.isIdentifier()) {
                                 verifyIdentifier(settingsVerifier, tokenizer, nodeChildrenMapping, nextToken);
-                                settingIdentifiers.add(nextToken.text);
+                                settingIdentifiers.add(nextToken.getText());
                                 continue;
                             }
 
                             if (nextToken.type == TokenType.LEFT_BRACE) {
-                                // tokenizer reparses the settings field for every build node
-                                // in front of the settings block (parsing should be very cheap)
-                                // as otherwise we would have to write the logic to update only
-                                // the fields that has changed:
+                                // the settings block is parsed only once into the settings delta, which
+                                // is applied to every build node in front of the block. Only the fields
+                                // that are present in the block are updated:
                                 // A { weight: 1, agent: [aa] }
                                 // A, B { weight: 2 }
                                 // In this case the weight should change but agent field for A should not.
-                                // The more fields we have the more complex the update logic get
-                                // so wasting some cycles with reparsing seems like the most sane decision
-                                int initialTokenizerPos = tokenizer.position;
-                                int lastTokenizerPos = -1;
+                                String settingsId = buildSettings.getOrCreate(settingIdentifiers.get(0)).getJobName();
+                                SettingsDelta delta = parseBuildNodeSettings(tokenizer, settingsId, settingsVerifier);
                                 for (String buildNode : settingIdentifiers) {
                                     BuildSettings settings = buildSettings.getOrCreate(buildNode);
-                                    BuildSettings updatedBuildSettings = parseBuildNodeSettings(tokenizer, settings, settingsVerifier);
-                                    buildSettings.put(buildNode, updatedBuildSettings);
-                                    lastTokenizerPos = tokenizer.position;
-                                    tokenizer.position = initialTokenizerPos;
+                                    buildSettings.put(buildNode, delta.applyTo(settings));
                                 }
-                                // after done parsing multiple time, skip to the
-                                // last position (after the A, B {} settings block)
-                                tokenizer.position = lastTokenizerPos;
                                 break; // break inner loop
                             }
 
                             // a supported element was not found
-                            throw ParseException.create(tokenizer, nextToken, String.format("expected build node identifier or '{', got '%s'", nextToken.text));
+                            throw ParseException.create(tokenizer, nextToken, String.format("expected build node identifier or '{', got '%s'", nextToken.getText()));
                         }
 
                         // finished with parsing multiple settings block
@@ -126,7 +118,7 @@ public class DslParser {
                     // we are not parsing build node settings, check all other possible options
                     if (nextToken.type == TokenType.SEMICOLON) {
                         // we have a lone node or a new line, find a next token and repeat the loop
-                        token = tokenizer.getNextToken();
+                        token = tokenizer.getNextNonSemicolonToken();
                         continue;
                     }
 
@@ -136,7 +128,7 @@ public class DslParser {
                         if (nextToken.isIdentifier()) {
                             // we have a child, create a relation
                             verifyIdentifier(settingsVerifier, tokenizer, nodeChildrenMapping, nextToken);
-                            nodeChildren.add(nextToken.text);
+                            nodeChildren.add(nextToken.getText());
                             token = nextToken;
                             continue;
                         }
@@ -145,7 +137,7 @@ public class DslParser {
                         // Even if the EOF happened or semicolon appeared, that is still a parsing error
                         throw ParseException.create(tokenizer, nextToken,
                                                     String.format("expected build node identifier, got: '%s'",
-                                                                  nextToken.text));
+                                                                  nextToken.getText()));
                     }
 
                     // Found a parsing problem, we should find an arrow but it wasn't there.
@@ -154,11 +146,11 @@ public class DslParser {
                     // parsing that leads to the dark path of C++ error reporting - tons of
                     // errors when one semicolon is missing and nobody wants to see that.
                     throw ParseException.create(tokenizer, nextToken,
-                                                String.format("expected '->', got: '%s'", nextToken.text));
+                                                String.format("expected '->', got: '%s'", nextToken.getText()));
                 }
                 default:
                     throw ParseException.create(tokenizer, token,
-                                                String.format("expected build node identifier, got: '%s'", token.text));
+                                                String.format("expected build node identifier, got: '%s'", token.getText()));
             }
         }
 
@@ -186,7 +178,7 @@ public class DslParser {
     private static Set<String> verifyIdentifier(SettingsVerifier settingsVerifier,
             DslLexer.Tokenizer tokenizer, Map<String, Set<String>> nodeChildrenMapping,
             Token token) throws ParseException {
-        String buildNodeId = token.text;
+        String buildNodeId = token.getText();
 
         final boolean isSetting = ALL_SETTINGS.equals(buildNodeId)
                 || SCHEDULER_SETTINGS.equals(buildNodeId);
@@ -255,10 +247,10 @@ public class DslParser {
             // expecting => 'something': 'xxx'
             if (!token.isIdentifier()) {
                 throw ParseException.create(tokenizer, token, String.format("expected a new settings field identifier, got: '%s'",
-                                                                            token.text));
+                                                                            token.getText()));
             }
 
-            String settingIdentifier = token.text;
+            String settingIdentifier = token.getText();
             expectAndParseColon(tokenizer, sectionIdentifier, settingIdentifier);
             switch (settingIdentifier) {
                 case "maxDuration":
@@ -271,6 +263,47 @@ public class DslParser {
                     }
                     settings.maxDuration = maxDuration;
                     break;
+                case "maxParallelBuilds":
+                    settings.maxParallelBuilds = parseBuildLimit(tokenizer, settingIdentifier);
+                    break;
+                case "priority": {
+                    token = tokenizer.getNextToken();
+                    if (!token.isIdentifier()) {
+                        throw ParseException.create(tokenizer, token,
+                                                    String.format("expected priority: '%s', got: '%s'",
+                                                                  SchedulerSettings.SchedulingPriority.allModes(),
+                                                                  token.getText()));
+                    }
+
+                    Optional<SchedulerSettings.SchedulingPriority> priority = SchedulerSettings.SchedulingPriority
+                            .parse(token.getText());
+                    if (!priority.isPresent()) {
+                        throw ParseException.create(tokenizer, token, String.format(
+                                "unknown priority. Expected priority: %s, got: '%s'",
+                                SchedulerSettings.SchedulingPriority.allModes(), token.getText()));
+                    }
+                    settings.priority = priority.get();
+                }
+                break;
+                case "agentSelection": {
+                    token = tokenizer.getNextToken();
+                    if (!token.isIdentifier()) {
+                        throw ParseException.create(tokenizer, token,
+                                                    String.format("expected agent selection: '%s', got: '%s'",
+                                                                  SchedulerSettings.AgentSelection.allModes(),
+                                                                  token.getText()));
+                    }
+
+                    Optional<SchedulerSettings.AgentSelection> agentSelection = SchedulerSettings.AgentSelection
+                            .parse(token.getText());
+                    if (!agentSelection.isPresent()) {
+                        throw ParseException.create(tokenizer, token, String.format(
+                                "unknown agent selection. Expected agent selection: %s, got: '%s'",
+                                SchedulerSettings.AgentSelection.allModes(), token.getText()));
+                    }
+                    settings.agentSelection = agentSelection.get();
+                }
+                break;
                 case "buildThrottle":
                     if (PluginVersion.isCommunity()) {
                         // parse the array, even if we don't care about the contents
@@ -278,24 +311,113 @@ public class DslParser {
                         // user decides to stop using enterprise version and falls back to
                         // community edition. We still have to parse an entire field,
                         // since there may be additional setting field after this one.
-                        String arrayField = chompArray(tokenizer, token);
+                        chompArray(tokenizer, token);
                     } else {
                         // @PRO:
-                        String arrayField = chompArray(tokenizer, token);
-                        // ProParser.parseThrottle(tokenizer, settings, settingIdentifier);
+                        settings.setThrottles(parseThrottles(tokenizer, settingIdentifier));
                     }
                     break;
                 default:
                     if (PluginVersion.isCommunity()) {
-                        throw ParseException.create(tokenizer, token, String.format("unknown setting field '%s', supported settings: [maxDuration]", token.text));
+                        throw ParseException.create(tokenizer, token, String.format("unknown setting field '%s', supported settings: [maxDuration, maxParallelBuilds, priority, agentSelection]", token.getText()));
                     } else {
-                        throw ParseException.create(tokenizer, token, String.format("unknown setting field '%s', supported settings: [maxDuration, buildThrottle]", token.text));
+                        throw ParseException.create(tokenizer, token, String.format("unknown setting field '%s', supported settings: [maxDuration, maxParallelBuilds, priority, agentSelection, buildThrottle]", token.getText()));
                     }
             }
         }
         return settings;
     }
 
+    /**
+     * Parse the standalone build throttle value (as used in the _BUILD settings), e.g: [08:00|2, 18:00|-1].
+     * Used when the build throttle is provided outside of the pipeline (e.g: build simulation).
+     */
+    public static List<SchedulerSettings.Throttle> parseBuildThrottle(String input) throws ParseException {
+        DslLexer.Tokenizer tokenizer = new DslLexer.Tokenizer(input);
+        List<SchedulerSettings.Throttle> throttles = parseThrottles(tokenizer, "buildThrottle");
+        Token token = eatUpSemicolons(tokenizer, tokenizer.getNextToken());
+        if (token.type != TokenType.EOF) {
+            throw ParseException.create(tokenizer, token, String.format("buildThrottle expected end of input, got '%s'", token.getText()));
+        }
+        return throttles;
+    }
+
+    /**
+     * Parse the array of build throttles in hh:mm|limit format, e.g: [12:15|3, "16:30"|12, 20:00|-1]
+     */
+    private static List<SchedulerSettings.Throttle> parseThrottles(DslLexer.Tokenizer tokenizer,
+            String settingIdentifier) throws ParseException {
+        Token token = tokenizer.getNextToken();
+        token = eatUpSemicolons(tokenizer, token);
+        if (token.type != TokenType.LEFT_BRACKET) {
+            throw ParseException.create(tokenizer, token, String.format("%s value expected '[', got '%s'",
+                                                                        settingIdentifier, token.getText()));
+        }
+
+        List<SchedulerSettings.Throttle> throttles = new ArrayList<>();
+        while (true) {
+            token = tokenizer.getNextToken();
+            token = eatUpSemicolons(tokenizer, token);
+            if (token.type == TokenType.RIGHT_BRACKET) {
+                break;
+            }
+            if (token.type == TokenType.EOF || token.type == TokenType.RIGHT_BRACE) {
+                throw ParseException.create(tokenizer, token, String.format("%s field expected hh:mm|limit or ']', got '%s'. Did you forget the closing ']'?",
+                                                                            settingIdentifier, token.getText()));
+            }
+
+            if (!throttles.isEmpty()) {
+                // throttles are separated with comma
+                if (token.type != TokenType.COMMA) {
+                    throw ParseException.create(tokenizer, token, String.format("%s field expected ',' or ']', got '%s'",
+                                                                                settingIdentifier, token.getText()));
+                }
+                token = tokenizer.getNextToken();
+                token = eatUpSemicolons(tokenizer, token);
+            }
+
+            LocalTime time = parseTime(tokenizer, settingIdentifier, token);
+            token = tokenizer.getNextToken();
+            if (token.type != TokenType.PIPE) {
+                throw ParseException.create(tokenizer, token, String.format("%s value expected hh:mm|limit, got '%s' instead of '|'",
+                                                                            settingIdentifier, token.getText()));
+            }
+            int limit = parseBuildLimit(tokenizer, settingIdentifier);
+            throttles.add(new SchedulerSettings.Throttle(time, limit));
+        }
+        return throttles;
+    }
+
+    /**
+     * Parse the limit of concurrently running builds, e.g: '5'. The value '-1' means there is no limit.
+     *
+     * @return parsed limit or {@link SchedulerSettings#NO_RESTRICTION} if the builds are not limited
+     */
+    private static int parseBuildLimit(DslLexer.Tokenizer tokenizer,
+            String settingIdentifier) throws ParseException {
+        Token token = tokenizer.getNextToken();
+        if (token.type == TokenType.MINUS) {
+            token = tokenizer.getNextToken();
+            if (token.isNumber() && "1".equals(token.getText())) {
+                return SchedulerSettings.NO_RESTRICTION;
+            }
+            throw ParseException.create(tokenizer, token, String.format("invalid %s value, expected number > 0 or -1, got: '-%s'",
+                                                                        settingIdentifier, token.getText()));
+        }
+
+        if (!token.isNumber()) {
+            throw ParseException.create(tokenizer, token, String.format("invalid %s value, expected number > 0 or -1, got: '%s'",
+                                                                        settingIdentifier, token.getText()));
+        }
+
+        int limit = safeIntParse(tokenizer, token);
+        if (limit <= 0) {
+            throw ParseException.create(tokenizer, token, String.format("invalid %s value, expected number > 0 or -1, got: '%s'",
+                                                                        settingIdentifier, token.getText()));
+        }
+        return limit;
+    }
+
     // chomp array for which we don't care what it contains
     public static String chompArray(DslLexer.Tokenizer tokenizer, Token token) throws ParseException {
         int start = tokenizer.position;
@@ -303,15 +425,17 @@ public class DslParser {
         Token t = tokenizer.getNextToken();
         t = eatUpSemicolons(tokenizer, t);
         if (t.type != TokenType.LEFT_BRACKET) {
-            throw ParseException.create(tokenizer, t, String.format("builtThrottle value expected '[', got '%s'", t.text));
+            throw ParseException.create(tokenizer, t, String.format("builtThrottle value expected '[', got '%s'", t.getText()));
         }
         while (true) {
-            t = tokenizer.getNextToken();
-            if (t.type == TokenType.EOF || t.type == TokenType.RIGHT_BRACE) {
-                throw ParseException.create(tokenizer, t, String.format("buildThrottle field expected identifier or ']', but got %s. Did you forget the closing ']'?", token.text));
+            // the array content is skipped, so we don't have to create the tokens
+            TokenType type = tokenizer.nextSpan();
+            if (type == TokenType.EOF || type == TokenType.RIGHT_BRACE) {
+                t = Token.span(tokenizer.input, type, tokenizer.getSpanStart(), tokenizer.getSpanEnd());
+                throw ParseException.create(tokenizer, t, String.format("buildThrottle field expected identifier or ']', but got %s. Did you forget the closing ']'?", token.getText()));
             }
 
-            if (t.type == TokenType.RIGHT_BRACKET) {
+            if (type == TokenType.RIGHT_BRACKET) {
                 end = tokenizer.position;
                 break;
             }
@@ -319,9 +443,16 @@ public class DslParser {
         return tokenizer.substring(start, end);
     }
 
-    private static BuildSettings parseBuildNodeSettings(DslLexer.Tokenizer tokenizer,
-            BuildSettings buildNodeSettings,
+    /**
+     * Parse the settings block of the build node (the block has to start right after the '{' token).
+     *
+     * @param settingsId name of the settings block that is used in the error messages
+     * @return settings delta that contains the settings fields present in the block
+     */
+    private static SettingsDelta parseBuildNodeSettings(DslLexer.Tokenizer tokenizer,
+            String settingsId,
             SettingsVerifier settingsVerifier) throws ParseException {
+        final SettingsDelta delta = new SettingsDelta();
         while (true) {
             Token token = tokenizer.getNextToken();
             token = eatUpSemicolons(tokenizer, token);
@@ -333,14 +464,14 @@ public class DslParser {
             if (token.type == TokenType.EOF) {
                 throw ParseException.create(tokenizer, token,
                                             String.format("'%s' settings are missing a closing brace '}'",
-                                                          buildNodeSettings.getJobName()));
+                                                          settingsId));
             }
 
             // parsing identifier: assignment
             // such as => A: 123 || A: B || A: "blah whatever"
             if (!token.isIdentifier()) {
                 throw ParseException.create(tokenizer, token, String.format("expected new settings field identifier, got: '%s'",
-                                                                            token.text));
+                                                                            token.getText()));
             }
 
             // first settings identifier found
@@ -353,22 +484,20 @@ public class DslParser {
             // a weird colon is missing error message which is really confusing, e.g:
             // A { ...
             // myProject
-            final String settingsId = buildNodeSettings.getJobName();
-            final String settingsField = settingsIdentifier.text;
+            final String settingsField = settingsIdentifier.getText();
             switch (settingsField) {
                 case "name":
                     expectAndParseColon(tokenizer, settingsId, settingsField);
                     token = tokenizer.getNextToken();
                     if (token.type != TokenType.STRING) {
-                        throw ParseException.create(tokenizer, token, String.format("expected name, got: %s", token.text));
+                        throw ParseException.create(tokenizer, token, String.format("expected name, got: %s", token.getText()));
                     }
 
-                    String name = token.text;
-                    name= name.trim();
+                    final String name = token.getText().trim();
                     if (name.isEmpty()) {
                         throw ParseException.create(tokenizer, token, String.format("%s name field should not be empty", settingsId));
                     }
-                    buildNodeSettings.setDisplayName(name);
+                    delta.add(settings -> settings.setDisplayName(name));
                     break;
                 case "agent":
                     token = expectAndParseColon(tokenizer, settingsId, settingsField);
@@ -403,10 +532,13 @@ public class DslParser {
                                                          unknownAgents));
                     }
 
-                    List<BuildAgent> agents = validAgents.stream()
-                                                         .map(agent -> new BuildAgent(agent, BuildAgentType.ANY))
-                                                         .collect(Collectors.toList());
-                    buildNodeSettings.setAgents(agents);
+                    // every build node gets its own list of agents
+                    delta.add(settings -> {
+                        List<BuildAgent> agents = validAgents.stream()
+                                                             .map(agent -> new BuildAgent(agent, BuildAgentType.ANY))
+                                                             .collect(Collectors.toList());
+                        settings.setAgents(agents);
+                    });
                     break;
                 case "onParentFailure":
                     token = expectAndParseColon(tokenizer, settingsId, settingsField);
@@ -415,23 +547,24 @@ public class DslParser {
                         throw ParseException.create(tokenizer, token,
                                                     String.format("expected modes: '%s', got: '%s'",
                                                                   BuildSettings.ParentFailureMode
-                                                                          .allModes(), token.text));
+                                                                          .allModes(), token.getText()));
                     }
 
-                    Optional<BuildSettings.ParentFailureMode> mode = BuildSettings.ParentFailureMode.parse(token.text);
+                    Optional<BuildSettings.ParentFailureMode> mode = BuildSettings.ParentFailureMode.parse(token.getText());
                     final boolean isEmpty = !mode.isPresent();
                     if (isEmpty) {
                         // mode was not found, or the input was empty, throw an exception
                         throw ParseException.create(tokenizer, token, String.format(
                                 "unknown onParentFailure mode for build node %s. Expected modes: %s, got: '%s'",
-                                buildNodeSettings.getJobName(), BuildSettings.ParentFailureMode.allModes(), token.text));
+                                settingsId, BuildSettings.ParentFailureMode.allModes(), token.getText()));
                     }
-                    buildNodeSettings.setOnParentFailure(mode.get());
+                    final BuildSettings.ParentFailureMode parentFailureMode = mode.get();
+                    delta.add(settings -> settings.setOnParentFailure(parentFailureMode));
                     break;
                 case "maxDuration":
                     token = expectAndParseColon(tokenizer, settingsId, settingsField);
-                    Duration duration = parseDuration(tokenizer, settingsIdentifier.text);
-                    buildNodeSettings.setMaxDuration(duration);
+                    Duration duration = parseDuration(tokenizer, settingsIdentifier.getText());
+                    delta.add(settings -> settings.setMaxDuration(duration));
                     break;
                 case "weight": {
                     token = expectAndParseColon(tokenizer, settingsId, settingsField);
@@ -439,26 +572,26 @@ public class DslParser {
                     if (!token.isNumber()) {
                         throw ParseException.create(tokenizer, token,
                                                     String.format("invalid weight value expected number, got: '%s'",
-                                                                  token.text));
+                                                                  token.getText()));
                     }
 
                     try {
-                        int weight = Integer.parseInt(token.text);
+                        int weight = Integer.parseInt(token.getText());
                         if (weight < 0) {
                             throw ParseException.create(tokenizer, token,
                                                         String.format("node %s, expected weight > 0, got: %d",
-                                                                      buildNodeSettings.getJobName(), weight));
+                                                                      settingsId, weight));
                         }
-                        buildNodeSettings.setWeight(weight);
+                        delta.add(settings -> settings.setWeight(weight));
                     } catch (NumberFormatException e) {
                         throw ParseException.create(tokenizer, token,
                                                     String.format("invalid weight value expected integer, got: '%s'",
-                                                                  token.text));
+                                                                  token.getText()));
                     }
                 }
                 break;
                 default:
-                    final String settingField = settingsIdentifier.text;
+                    final String settingField = settingsIdentifier.getText();
 
                     // in strict mode unknown settings are forbidden. In production we
                     // would like to strictly check settings most of the time, but I am
@@ -477,7 +610,7 @@ public class DslParser {
                         BuildSettings.UnknownSetting setting = new BuildSettings.UnknownSetting(settingField,
                                                                                                 settingValue,
                                                                                                 tokenizer.line);
-                        buildNodeSettings.addUnknownSetting(setting);
+                        delta.add(settings -> settings.addUnknownSetting((BuildSettings.UnknownSetting) setting.clone()));
                         continue;
                     }
 
@@ -485,21 +618,21 @@ public class DslParser {
                     token = tokenizer.getNextToken();
                     final boolean foundIdentifierValue = token.isIdentifier() || token.isNumber();
                     if (foundIdentifierValue) {
-                        Object settingValue = token.text;
+                        Object settingValue = token.getText();
                         BuildSettings.UnknownSetting setting = new BuildSettings.UnknownSetting(settingField,
                                                                                                 settingValue,
                                                                                                 tokenizer.line);
-                        buildNodeSettings.addUnknownSetting(setting);
+                        delta.add(settings -> settings.addUnknownSetting((BuildSettings.UnknownSetting) setting.clone()));
                     } else {
                         // we did not found an identifier value, throw a parsing exception
                         throw ParseException.create(tokenizer, token,
                                                     String.format("expected %s field value, got: '%s'",
-                                                                  settingsIdentifier.text, token.text));
+                                                                  settingsIdentifier.getText(), token.getText()));
                     }
             }
         }
 
-        return buildNodeSettings;
+        return delta;
     }
 
     /**
@@ -508,9 +641,9 @@ public class DslParser {
     public static LocalTime parseTime(DslLexer.Tokenizer tokenizer,
             String identifier, Token alreadyParsedToken) throws ParseException {
         if (alreadyParsedToken.type == TokenType.STRING) {
-            String[] arr = alreadyParsedToken.text.split(":");
+            String[] arr = alreadyParsedToken.getText().split(":");
             if (arr.length != 2) {
-                throw ParseException.create(tokenizer, alreadyParsedToken, String.format("%s value expected hh:mm, got '%s'", identifier, alreadyParsedToken.text));
+                throw ParseException.create(tokenizer, alreadyParsedToken, String.format("%s value expected hh:mm, got '%s'", identifier, alreadyParsedToken.getText()));
             }
 
             try {
@@ -526,27 +659,27 @@ public class DslParser {
         final Token firstToken = alreadyParsedToken;
         if (!firstToken.isNumber()) {
             throw ParseException.create(tokenizer, alreadyParsedToken, String.format(
-                    "%s value expected hh:mm, got: '%s'", identifier, firstToken.text));
+                    "%s value expected hh:mm, got: '%s'", identifier, firstToken.getText()));
         }
 
         Token secondToken = tokenizer.getNextToken();
         if (secondToken.type != TokenType.COLON) {
             throw ParseException.create(tokenizer, secondToken, String.format(
-                    "%s value expected hh:mm, got: '%s:%s'", identifier, firstToken.text,
-                    secondToken.text));
+                    "%s value expected hh:mm, got: '%s:%s'", identifier, firstToken.getText(),
+                    secondToken.getText()));
         }
 
         // current parsed state is 'hh:'
         Token thirdToken = tokenizer.getNextToken();
         if (!thirdToken.isNumber()) {
             throw ParseException.create(tokenizer, thirdToken, String.format(
-                    "%s value expected hh:mm, got: '%s:%s'", identifier, firstToken.text,
-                    thirdToken.text));
+                    "%s value expected hh:mm, got: '%s:%s'", identifier, firstToken.getText(),
+                    thirdToken.getText()));
         }
 
         try {
-            String hours = firstToken.text;
-            String minutes = thirdToken.text;
+            String hours = firstToken.getText();
+            String minutes = thirdToken.getText();
             return TimeUtils.parseTime(hours, minutes);
         } catch (Exception e) {
             throw ParseException.create(tokenizer, thirdToken, String.format("invalid %s value, %s", identifier,
@@ -567,7 +700,7 @@ public class DslParser {
         // convoluted.
         if (alreadyParsedToken.type == TokenType.STRING) {
             try {
-                Duration duration = TimeUtils.parseDuration(alreadyParsedToken.text);
+                Duration duration = TimeUtils.parseDuration(alreadyParsedToken.getText());
                 return duration;
             } catch (ParseException e) {
                 throw ParseException.create(tokenizer, alreadyParsedToken, e.getMessage());
@@ -578,14 +711,14 @@ public class DslParser {
         final Token hoursPart = alreadyParsedToken;
         if (!hoursPart.isNumber()) {
             throw ParseException.create(tokenizer, alreadyParsedToken, String.format(
-                    "invalid %s value, expected mm or hh:mm, got: '%s'", identifier, hoursPart.text));
+                    "invalid %s value, expected mm or hh:mm, got: '%s'", identifier, hoursPart.getText()));
         }
 
         Token firstColon = tokenizer.getNextToken();
         if (firstColon.type == TokenType.SEMICOLON || firstColon.type == TokenType.EOF) {
             try {
                 // we parsed build time that consists of minutes only
-                Duration duration = TimeUtils.parseDuration(hoursPart.text);
+                Duration duration = TimeUtils.parseDuration(hoursPart.getText());
                 return duration;
             } catch (ParseException e) {
                 throw ParseException.create(tokenizer, alreadyParsedToken,
@@ -596,16 +729,16 @@ public class DslParser {
         // we are parsing hh:mm format
         if (firstColon.type != TokenType.COLON) {
             throw ParseException.create(tokenizer, firstColon, String.format(
-                    "invalid %s value expected mm or hh:mm, got: '%s%s'", identifier, hoursPart.text,
-                    firstColon.text));
+                    "invalid %s value expected mm or hh:mm, got: '%s%s'", identifier, hoursPart.getText(),
+                    firstColon.getText()));
         }
 
         // current parsed state is 'hh:'
         Token minutesPart = tokenizer.getNextToken();
         if (!minutesPart.isNumber()) {
             throw ParseException.create(tokenizer, minutesPart, String.format(
-                    "invalid %s value expected mm or hh:mm, got: '%s:%s'", identifier, hoursPart.text,
-                    minutesPart.text));
+                    "invalid %s value expected mm or hh:mm, got: '%s:%s'", identifier, hoursPart.getText(),
+                    minutesPart.getText()));
         }
 
         // right now this info that we support seconds is not exported to the user
@@ -617,11 +750,11 @@ public class DslParser {
             tokenizer.getNextToken(); // get the colon part
             Token secondsPart = tokenizer.getNextToken();
             if (!secondsPart.isNumber()) {
-                throw ParseException.create(tokenizer, secondsPart, String.format("invalid %s value expected hh:mm:ss, got '%s:%s:%s'", identifier, hoursPart.text, minutesPart.text, secondsPart.text));
+                throw ParseException.create(tokenizer, secondsPart, String.format("invalid %s value expected hh:mm:ss, got '%s:%s:%s'", identifier, hoursPart.getText(), minutesPart.getText(), secondsPart.getText()));
             }
 
             try {
-                return validateDuration(hoursPart.text, minutesPart.text, secondsPart.text);
+                return validateDuration(hoursPart.getText(), minutesPart.getText(), secondsPart.getText());
             } catch (ParseException e) {
                 throw ParseException.create(tokenizer, secondsPart, String.format("invalid %s value, %s", identifier, e
                         .getMessage()));
@@ -629,8 +762,8 @@ public class DslParser {
         }
 
         try {
-            String hours = hoursPart.text;
-            String minutes = minutesPart.text;
+            String hours = hoursPart.getText();
+            String minutes = minutesPart.getText();
             return validateDuration(hours, minutes, "");
         } catch (Exception e) {
             throw ParseException.create(tokenizer, minutesPart, String.format("invalid %s value, %s", identifier,
@@ -688,7 +821,7 @@ public class DslParser {
             Class<T> clazz) throws ParseException {
         Token token = tokenizer.getNextToken();
         if (token.type != TokenType.LEFT_BRACKET) {
-            throw ParseException.create(tokenizer, token, String.format("Expected '[', got: '%s'", token.text));
+            throw ParseException.create(tokenizer, token, String.format("Expected '[', got: '%s'", token.getText()));
         }
 
         List<T> array = new ArrayList<>();
@@ -704,37 +837,37 @@ public class DslParser {
                 // stupid java generics
                 if (clazz == Integer.class) {
                     try {
-                        Integer value = Integer.parseInt(token.text);
+                        Integer value = Integer.parseInt(token.getText());
                         array.add((T) value);
                     } catch (Exception e) {
                         throw ParseException.create(tokenizer, token,
-                                                    String.format("expected a number, got '%s'", token.text));
+                                                    String.format("expected a number, got '%s'", token.getText()));
                     }
                 } else if (clazz == Float.class) {
                     try {
-                        Float value = Float.parseFloat(token.text);
+                        Float value = Float.parseFloat(token.getText());
                         array.add((T) value);
                     } catch (Exception e) {
                         throw ParseException.create(tokenizer, token,
-                                                    String.format("expected a float, got '%s'", token.text));
+                                                    String.format("expected a float, got '%s'", token.getText()));
                     }
                 } else if (clazz == Double.class) {
                     try {
-                        Double value = Double.parseDouble(token.text);
+                        Double value = Double.parseDouble(token.getText());
                         array.add((T) value);
                     } catch (Exception e) {
                         throw ParseException.create(tokenizer, token,
-                                                    String.format("expected a double, got '%s'", token.text));
+                                                    String.format("expected a double, got '%s'", token.getText()));
                     }
                 } else if (clazz == String.class) {
-                    array.add((T) token.text);
+                    array.add((T) token.getText());
                 } else if (clazz == Boolean.class) {
                     try {
-                        Boolean b = Boolean.parseBoolean(token.text);
+                        Boolean b = Boolean.parseBoolean(token.getText());
                         array.add((T) b);
                     } catch (Exception e) {
                         throw ParseException.create(tokenizer, token,
-                                                    String.format("expected true/false, got: '%s'", token.text));
+                                                    String.format("expected true/false, got: '%s'", token.getText()));
                     }
                 } else {
                     // FUTURE: at this point we could provide an extractor that would extract the
@@ -760,7 +893,7 @@ public class DslParser {
             }
 
             throw ParseException.create(tokenizer, token,
-                                        String.format("expected array value or ']', got: '%s'", token.text));
+                                        String.format("expected array value or ']', got: '%s'", token.getText()));
         }
         return array;
     }
@@ -772,7 +905,7 @@ public class DslParser {
     public static Token expectAndParseColon(DslLexer.Tokenizer tokenizer) throws ParseException {
         Token token = tokenizer.getNextToken();
         if (token.type != TokenType.COLON) {
-            throw ParseException.create(tokenizer, token, String.format("expected ':', got '%s'", token.text));
+            throw ParseException.create(tokenizer, token, String.format("expected ':', got '%s'", token.getText()));
         }
         return token;
     }
@@ -780,24 +913,24 @@ public class DslParser {
     public static Token expectAndParseColon(DslLexer.Tokenizer tokenizer, String settingsId, String settingsField) throws ParseException {
         Token token = tokenizer.getNextToken();
         if (token.type != TokenType.COLON) {
-            throw ParseException.create(tokenizer, token, String.format("%s '%s' field is missing a value, expected ':', got '%s'", settingsId, settingsField, token.text));
+            throw ParseException.create(tokenizer, token, String.format("%s '%s' field is missing a value, expected ':', got '%s'", settingsId, settingsField, token.getText()));
         }
         return token;
     }
 
     public static Token eatUpSemicolons(DslLexer.Tokenizer tokenizer, Token token) {
-        while (token.type == TokenType.SEMICOLON) {
-            token = tokenizer.getNextToken();
+        if (token.type == TokenType.SEMICOLON) {
+            return tokenizer.getNextNonSemicolonToken();
         }
         return token;
     }
 
     public static int safeIntParse(DslLexer.Tokenizer tokenizer, Token token) throws ParseException {
         try {
-            int i = Integer.parseInt(token.text);
+            int i = Integer.parseInt(token.getText());
             return i;
         } catch (Exception e) {
-            throw ParseException.create(tokenizer, token, String.format("provided input '%s' is not an integer", token.text));
+            throw ParseException.create(tokenizer, token, String.format("provided input '%s' is not an integer", token.getText()));
         }
     }
 
@@ -865,4 +998,23 @@ public class DslParser {
             this.buildSettings.put(buildNode, updatedSettings);
         }
     }
+
+    /**
+     * Settings fields parsed from a single settings block. The block is parsed once and then applied to all
+     * the build nodes in front of the block (A, B, C { ... }).
+     */
+    private static class SettingsDelta {
+        private final List<Consumer<BuildSettings>> updates = new ArrayList<>();
+
+        void add(Consumer<BuildSettings> update) {
+            updates.add(update);
+        }
+
+        BuildSettings applyTo(BuildSettings settings) {
+            for (Consumer<BuildSettings> update : updates) {
+                update.accept(settings);
+            }
+            return settings;
+        }
+    }
 }
@@ -0,0 +1,211 @@
+package eu.royalsloth.depbuilder.dsl;
+
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildLayers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Bounded (least recently used) cache of the parsed pipelines and their build layers, keyed by the SHA-256
+ * hash of the pipeline text. The same pipeline is parsed on the project config page, on every status poll of
+ * the build graph and at the start of the build, so we parse and sort each distinct pipeline only once.
+ * <p>
+ * The cached parsed jobs and settings are shared between all the callers and should be treated as read
+ * only (copy the settings before changing them). Callers that are scheduling the build should use {@link
+ * CachedPipeline#createBuildLayers()}, since the scheduler changes the status of the build jobs.
+ */
+public class PipelineCache {
+
+    public static final int DEFAULT_CAPACITY = 64;
+    private static final PipelineCache SHARED = new PipelineCache(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final Map<String, CachedPipeline> cache;
+
+    public PipelineCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Cache capacity should be > 0, got: %d", capacity));
+        }
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<String, CachedPipeline>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPipeline> eldest) {
+                return size() > PipelineCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return cache shared by all the projects on this Jenkins instance
+     */
+    public static PipelineCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Parse the pipeline without verifying the jobs and agents (see {@link DslParser#parseBuildNoVerify(String)}).
+     *
+     * @throws ParseException in case of syntax errors, parse errors are not cached
+     */
+    public CachedPipeline parseNoVerify(String pipeline) throws ParseException {
+        final String key = contentHash(pipeline);
+        CachedPipeline cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        ParsedBuild parsedBuild = DslParser.parseBuildNoVerify(pipeline);
+        return put(key, new CachedPipeline(parsedBuild));
+    }
+
+    /**
+     * Parse the pipeline and verify its jobs and agents with the given verifier (see {@link
+     * DslParser#parseBuild(String, SettingsVerifier)}). The verified result is reused only if the jobs
+     * of the pipeline still exist and the pipeline was verified against the same agents, since the jobs
+     * and agents on Jenkins may change between the calls. Only the pipeline jobs are checked, so reusing
+     * the verified pipeline doesn't depend on the number of jobs on Jenkins.
+     *
+     * @throws ParseException in case of syntax or verification errors, parse errors are not cached
+     */
+    public CachedPipeline parse(String pipeline, SettingsVerifier verifier) throws ParseException {
+        final String key = contentHash(pipeline);
+        final VerifiedWith verifiedWith = new VerifiedWith(verifier);
+        CachedPipeline cached = get(key);
+        if (cached != null && cached.isVerifiedWith(verifiedWith, verifier)) {
+            return cached;
+        }
+
+        ParsedBuild parsedBuild = DslParser.parseBuild(pipeline, verifier);
+        CachedPipeline verified = new CachedPipeline(parsedBuild);
+        verified.verifiedWith = verifiedWith;
+        return put(key, verified);
+    }
+
+    private synchronized CachedPipeline get(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized CachedPipeline put(String key, CachedPipeline pipeline) {
+        cache.put(key, pipeline);
+        return pipeline;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return hex encoded SHA-256 hash of the pipeline text
+     */
+    public static String contentHash(String pipeline) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(pipeline.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException("SHA-256 algorithm is not available", e);
+        }
+    }
+
+    /**
+     * Parsed pipeline with its build layers that were sorted only once.
+     */
+    public static class CachedPipeline {
+        private final ParsedBuild parsedBuild;
+        private final BuildLayers buildLayers;
+        private final List<List<String>> orderedLayers;
+        private VerifiedWith verifiedWith;
+
+        private CachedPipeline(ParsedBuild parsedBuild) {
+            this.parsedBuild = parsedBuild;
+            this.buildLayers = BuildLayers.topologicalSort(parsedBuild.parsedJobs);
+            this.orderedLayers = buildLayers.getOrderedBuildLayers();
+        }
+
+        private boolean isVerifiedWith(VerifiedWith verifiedWith, SettingsVerifier verifier) {
+            if (this.verifiedWith == null || !this.verifiedWith.equals(verifiedWith)) {
+                return false;
+            }
+            for (ParsedBuildJob job : parsedBuild.parsedJobs) {
+                if (!verifier.buildNodeExists(job.getId())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return shared parsed build, the returned jobs and settings should not be modified
+         */
+        public ParsedBuild getParsedBuild() {
+            return parsedBuild;
+        }
+
+        /**
+         * @return build layers of the shared parsed build, the returned layers should only be used for
+         * inspecting the graph (cycles, ordering) and not for scheduling the build.
+         */
+        public BuildLayers getBuildLayers() {
+            return buildLayers;
+        }
+
+        /**
+         * Create new build layers with fresh build jobs (without sorting the graph again), that can be used
+         * by the scheduler.
+         */
+        public BuildLayers createBuildLayers() {
+            if (buildLayers.hasCycle()) {
+                return buildLayers;
+            }
+            return new BuildLayers(orderedLayers, parsedBuild.parsedJobs);
+        }
+    }
+
+    /**
+     * Agents and verifier settings against which the pipeline was verified. Unknown agents are dropped
+     * from the job settings, so the pipeline has to be verified again whenever the agents change.
+     */
+    private static class VerifiedWith {
+        private final Set<String> knownAgents;
+        private final boolean strictMode;
+        private final boolean verify;
+
+        private VerifiedWith(SettingsVerifier verifier) {
+            this.knownAgents = new HashSet<>(verifier.getKnownAgents());
+            this.strictMode = verifier.getStrictMode();
+            this.verify = verifier.getVerify();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            VerifiedWith that = (VerifiedWith) o;
+            return strictMode == that.strictMode
+                    && verify == that.verify
+                    && knownAgents.equals(that.knownAgents);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(knownAgents, strictMode, verify);
+        }
+    }
+}
@@ -36,6 +36,10 @@ public class SettingsVerifier {
         this.verify = verify;
     }
 
+    public boolean getVerify() {
+        return verify;
+    }
+
     public boolean buildNodeExists(String buildNode) {
         if (verify) {
             return this.buildNodes.contains(buildNode);
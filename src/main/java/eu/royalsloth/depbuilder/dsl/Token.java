@@ -2,16 +2,56 @@ package eu.royalsloth.depbuilder.dsl;
 
 public class Token {
     public TokenType type = TokenType.UNKNOWN;
-    public String text = "";
     public int startPos = 0;
 
+    /**
+     * Position after the last character of the token in the input text
+     */
+    public int endPos = 0;
+
+    /**
+     * Text of the token, lazily created from the source on the first {@link #getText()} call.
+     */
+    private String text = "";
+    private final String source;
+
     public Token() {
+        this.source = null;
     }
 
     public Token(TokenType type, String text, int startPos) {
+        this(type, text, startPos, startPos + text.length());
+    }
+
+    public Token(TokenType type, String text, int startPos, int endPos) {
         this.type = type;
         this.text = text;
         this.startPos = startPos;
+        this.endPos = endPos;
+        this.source = null;
+    }
+
+    private Token(String source, TokenType type, int startPos, int endPos) {
+        this.type = type;
+        this.text = null;
+        this.startPos = startPos;
+        this.endPos = endPos;
+        this.source = source;
+    }
+
+    /**
+     * Create a token whose text is only copied out of the source when it's actually needed (most of the
+     * tokens like arrows and semicolons are only checked for their type).
+     */
+    public static Token span(String source, TokenType type, int startPos, int endPos) {
+        return new Token(source, type, startPos, endPos);
+    }
+
+    public String getText() {
+        if (text == null) {
+            text = source.substring(startPos, endPos);
+        }
+        return text;
     }
 
     public boolean isIdentifier() {
@@ -41,19 +81,19 @@ public class Token {
         if (type != token.type) {
             return false;
         }
-        return text.equals(token.text);
+        return getText().equals(token.getText());
     }
 
     @Override
     public int hashCode() {
         int result = type.hashCode();
-        result = 31 * result + text.hashCode();
+        result = 31 * result + getText().hashCode();
         result = 31 * result + startPos;
         return result;
     }
 
     @Override
     public String toString() {
-        return String.format("%s(%s, %d)", type, text, startPos);
+        return String.format("%s(%s, %d)", type, getText(), startPos);
     }
 }
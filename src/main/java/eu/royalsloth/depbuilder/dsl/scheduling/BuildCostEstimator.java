@@ -0,0 +1,19 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+/**
+ * Estimates the cost of building a job. The scheduler uses the cost to find the longest chain of jobs
+ * (critical path) that should be started first.
+ */
+@FunctionalInterface
+public interface BuildCostEstimator {
+
+    /**
+     * Cost of the job is its weight as defined in the job settings
+     */
+    BuildCostEstimator WEIGHT = job -> job.getBuildSettings().getWeight();
+
+    /**
+     * @return estimated cost of building the job. The costs of all jobs have to use the same unit.
+     */
+    long estimateCost(BuildJob job);
+}
@@ -0,0 +1,129 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * History of the job durations that were built by the pipeline. For every job we keep the time it spent
+ * waiting in the Jenkins queue and the time it spent executing. The history is stored per DslProject and
+ * is used for estimating how long each job is going to take.
+ * <p>
+ * This class is accessed from multiple build threads, so all the access is synchronized.
+ */
+public class BuildDurationHistory {
+
+    /**
+     * Job id: durations of that job
+     */
+    private final Map<String, JobDurations> jobs = new HashMap<>();
+
+    public static class JobDurations {
+        public final DurationStats queueWait;
+        public final DurationStats execution;
+
+        public JobDurations() {
+            this(new DurationStats(), new DurationStats());
+        }
+
+        private JobDurations(DurationStats queueWait, DurationStats execution) {
+            this.queueWait = queueWait;
+            this.execution = execution;
+        }
+    }
+
+    /**
+     * @return independent copy of the history, which can be stored without holding the history monitor
+     */
+    public synchronized BuildDurationHistory copy() {
+        BuildDurationHistory copy = new BuildDurationHistory();
+        for (Map.Entry<String, JobDurations> entry : jobs.entrySet()) {
+            JobDurations durations = entry.getValue();
+            copy.jobs.put(entry.getKey(), new JobDurations(durations.queueWait.copy(), durations.execution.copy()));
+        }
+        return copy;
+    }
+
+    public synchronized void recordQueueWait(String jobId, Duration queueWait) {
+        jobs.computeIfAbsent(jobId, id -> new JobDurations()).queueWait.add(queueWait);
+    }
+
+    public synchronized void recordExecution(String jobId, Duration execution) {
+        jobs.computeIfAbsent(jobId, id -> new JobDurations()).execution.add(execution);
+    }
+
+    /**
+     * @return expected execution duration of the job or empty if the job has never been built
+     */
+    public synchronized Optional<Duration> getExpectedDuration(String jobId) {
+        JobDurations durations = jobs.get(jobId);
+        if (durations == null || durations.execution.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(durations.execution.getAverage());
+    }
+
+    /**
+     * @return expected time the job will spend waiting in the queue or empty if it was never measured
+     */
+    public synchronized Optional<Duration> getExpectedQueueWait(String jobId) {
+        JobDurations durations = jobs.get(jobId);
+        if (durations == null || durations.queueWait.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(durations.queueWait.getAverage());
+    }
+
+    /**
+     * @param percentile percentile in range [0, 100], e.g: 95 for the duration that was exceeded in 5% of
+     *                   the last builds
+     * @return execution duration percentile of the job or empty if the job has never been built
+     */
+    public synchronized Optional<Duration> getDurationPercentile(String jobId, double percentile) {
+        JobDurations durations = jobs.get(jobId);
+        if (durations == null || durations.execution.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(durations.execution.getPercentile(percentile));
+    }
+
+    public synchronized boolean isEmpty() {
+        return jobs.isEmpty();
+    }
+
+    /**
+     * Predictor of the job build duration. Jobs that were never built are assumed to take as long as an
+     * average known job, or {@link BuildSettings#DEFAULT_BUILD_DURATION} if there is no history at all.
+     */
+    public synchronized Function<BuildJob, Duration> durationPredictor() {
+        // predictor is used by a different thread, so we take the snapshot of the current data
+        Map<String, Duration> expectedDurations = new HashMap<>();
+        long totalMillis = 0;
+        for (Map.Entry<String, JobDurations> entry : jobs.entrySet()) {
+            DurationStats execution = entry.getValue().execution;
+            if (!execution.isEmpty()) {
+                expectedDurations.put(entry.getKey(), execution.getAverage());
+                totalMillis += execution.getAverage().toMillis();
+            }
+        }
+        final Duration unknownJobDuration = expectedDurations.isEmpty()
+                ? BuildSettings.DEFAULT_BUILD_DURATION
+                : Duration.ofMillis(totalMillis / expectedDurations.size());
+        return job -> expectedDurations.getOrDefault(job.getId(), unknownJobDuration);
+    }
+
+    /**
+     * Estimator that uses the predicted job duration (in seconds, see {@link #durationPredictor()}) as the
+     * job cost. The measured duration already reflects how demanding the job is, so the weight is only used
+     * as the job cost when no job was built yet.
+     */
+    public synchronized BuildCostEstimator durationEstimator() {
+        if (isEmpty()) {
+            return BuildCostEstimator.WEIGHT;
+        }
+        Function<BuildJob, Duration> predictor = durationPredictor();
+        return job -> Math.max(1, predictor.apply(job).getSeconds());
+    }
+}
@@ -0,0 +1,202 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import eu.royalsloth.depbuilder.dsl.ParsedBuildJob;
+
+import java.util.*;
+
+/**
+ * Immutable build graph where every build job is represented with an int index. The edges between the jobs
+ * are stored in compressed sparse row format: children of the job with index i are stored in {@code
+ * childIds[childOffsets[i]...childOffsets[i + 1]]}, parents in the same way in the parent arrays.
+ * <p>
+ * Jobs are indexed in the order of build layers, which means the parent index is always smaller than the
+ * index of its child. Iterating over the jobs by index is therefore also a valid build order.
+ * <p>
+ * The graph is the only place where the edges between the build jobs are stored, the build jobs themselves
+ * only hold their settings and build status.
+ * <p>
+ * Typical iteration over the children of the job:
+ * <pre>
+ * for (int edge = graph.childrenStart(job); edge &lt; graph.childrenEnd(job); edge++) {
+ *     int child = graph.child(edge);
+ * }
+ * </pre>
+ */
+public final class BuildGraph {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final BuildJob[] jobs;
+    private final List<BuildJob> jobList;
+    private final Map<String, Integer> indexById;
+
+    private final int[] childOffsets;
+    private final int[] childIds;
+    private final int[] parentOffsets;
+    private final int[] parentIds;
+
+    /**
+     * @param orderedJobs jobs in the build order (every parent has to appear before its children)
+     * @param parsedJobs  parsed jobs that define the children of the ordered jobs
+     */
+    BuildGraph(List<BuildJob> orderedJobs, List<ParsedBuildJob> parsedJobs) {
+        final int size = orderedJobs.size();
+        this.jobs = orderedJobs.toArray(new BuildJob[0]);
+        this.jobList = Collections.unmodifiableList(Arrays.asList(jobs));
+        this.indexById = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            indexById.put(jobs[i].getId(), i);
+        }
+        final ParsedBuildJob[] parsedByIndex = new ParsedBuildJob[size];
+        for (ParsedBuildJob parsedJob : parsedJobs) {
+            parsedByIndex[indexOfExisting(parsedJob.getId())] = parsedJob;
+        }
+
+        // count the edges first, so we can allocate the arrays of the right size
+        this.childOffsets = new int[size + 1];
+        this.parentOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            for (String child : parsedByIndex[i].getChildren()) {
+                childOffsets[i + 1]++;
+                parentOffsets[indexOfExisting(child) + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+            parentOffsets[i + 1] += parentOffsets[i];
+        }
+
+        final int numberOfEdges = childOffsets[size];
+        this.childIds = numberOfEdges == 0 ? EMPTY : new int[numberOfEdges];
+        this.parentIds = numberOfEdges == 0 ? EMPTY : new int[numberOfEdges];
+        int[] parentPosition = Arrays.copyOf(parentOffsets, size);
+        for (int i = 0; i < size; i++) {
+            int childPosition = childOffsets[i];
+            for (String child : parsedByIndex[i].getChildren()) {
+                int childIndex = indexOfExisting(child);
+                childIds[childPosition++] = childIndex;
+                // parents are visited in increasing index order, so the parents
+                // of each job are also sorted by their index
+                parentIds[parentPosition[childIndex]++] = i;
+            }
+        }
+    }
+
+    private int indexOfExisting(String jobId) {
+        Integer index = indexById.get(jobId);
+        if (index == null) {
+            throw new IllegalStateException(String.format("Build job %s is not part of the build graph", jobId));
+        }
+        return index;
+    }
+
+    /**
+     * @return number of jobs in the graph
+     */
+    public int size() {
+        return jobs.length;
+    }
+
+    /**
+     * @return index of the job with the given id or -1 if the job does not exist
+     */
+    public int indexOf(String jobId) {
+        Integer index = indexById.get(jobId);
+        if (index == null) {
+            return -1;
+        }
+        return index;
+    }
+
+    public BuildJob getJob(int index) {
+        return jobs[index];
+    }
+
+    /**
+     * @return unmodifiable list of all the jobs in the build order (list index is the job index)
+     */
+    public List<BuildJob> getJobs() {
+        return jobList;
+    }
+
+    public int childrenStart(int job) {
+        return childOffsets[job];
+    }
+
+    public int childrenEnd(int job) {
+        return childOffsets[job + 1];
+    }
+
+    public int child(int edge) {
+        return childIds[edge];
+    }
+
+    public int parentsStart(int job) {
+        return parentOffsets[job];
+    }
+
+    public int parentsEnd(int job) {
+        return parentOffsets[job + 1];
+    }
+
+    public int parent(int edge) {
+        return parentIds[edge];
+    }
+
+    public int numberOfChildren(int job) {
+        return childOffsets[job + 1] - childOffsets[job];
+    }
+
+    public int numberOfParents(int job) {
+        return parentOffsets[job + 1] - parentOffsets[job];
+    }
+
+    /**
+     * @return copy of the children indexes of the given job
+     */
+    public int[] getChildren(int job) {
+        return Arrays.copyOfRange(childIds, childOffsets[job], childOffsets[job + 1]);
+    }
+
+    /**
+     * @return copy of the parent indexes of the given job
+     */
+    public int[] getParents(int job) {
+        return Arrays.copyOfRange(parentIds, parentOffsets[job], parentOffsets[job + 1]);
+    }
+
+    /**
+     * @return unmodifiable view of the parent jobs of the given job, the parents are not copied
+     */
+    public List<BuildJob> parentJobs(int job) {
+        final int start = parentOffsets[job];
+        final int size = parentOffsets[job + 1] - start;
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        return new ParentJobs(start, size);
+    }
+
+    private final class ParentJobs extends AbstractList<BuildJob> implements RandomAccess {
+        private final int start;
+        private final int size;
+
+        private ParentJobs(int start, int size) {
+            this.start = start;
+            this.size = size;
+        }
+
+        @Override
+        public BuildJob get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(String.format("Index: %d, size: %d", index, size));
+            }
+            return jobs[parentIds[start + index]];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
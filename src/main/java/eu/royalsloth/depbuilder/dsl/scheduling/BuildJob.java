@@ -2,47 +2,32 @@ package eu.royalsloth.depbuilder.dsl.scheduling;
 
 import eu.royalsloth.depbuilder.dsl.ParsedBuildJob;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-
+/**
+ * Build job with its settings and build status. The edges between the build jobs are stored in the {@link
+ * BuildGraph}.
+ */
 public class BuildJob {
     private final String id;
-    private final Set<BuildJob> children;
     private final BuildSettings buildSettings;
     private BuildStatus buildStatus = BuildStatus.NONE;
 
     public BuildJob(String id) {
-        this(id, new BuildSettings(id), new ArrayList<>());
+        this(id, new BuildSettings(id));
     }
 
     public BuildJob(ParsedBuildJob buildNode) {
-        this(buildNode.getId(), buildNode.getBuildSettings(), new ArrayList<>());
+        this(buildNode.getId(), buildNode.getBuildSettings());
     }
 
     public BuildJob(String id, BuildSettings buildSettings) {
-        this(id, buildSettings, new ArrayList<>());
-    }
-
-    public BuildJob(String id, BuildSettings buildSettings, List<BuildJob> children) {
         this.id = id;
         this.buildSettings = buildSettings;
-        this.children = new HashSet<>(children);
     }
 
     public String getId() {
         return id;
     }
 
-    public void addChild(BuildJob buildJob) {
-        this.children.add(buildJob);
-    }
-
-    public Set<BuildJob> getChildren() {
-        return children;
-    }
-
     public void setBuildStatus(BuildStatus buildStatus) {
         this.buildStatus = buildStatus;
     }
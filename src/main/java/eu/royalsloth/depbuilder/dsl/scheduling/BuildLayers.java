@@ -6,26 +6,27 @@ import java.util.*;
 
 public class BuildLayers {
 
+    private static final int[] EMPTY = new int[0];
+
     /**
-     * Ordered build layers (build should go from first layer to the last)
+     * Ordered build layers (build should go from first layer to the last), every layer is a view of the
+     * build graph jobs
      */
     private final List<List<BuildJob>> buildLayers;
     /**
      * If there is a cycle in the dependency graph, this list contains the nodes that form the cycle
      */
     private final List<String> buildCycle = new ArrayList<>();
-
     /**
-     * Id: buildNode mapping
+     * All the cycles in the dependency graph, the first one is the same as {@link #buildCycle}
      */
-    private final Map<String, BuildJob> buildNodes = new HashMap<>();
+    private final List<List<String>> buildCycles = new ArrayList<>();
 
     /**
-     * Mapping that determines which child has which parent. Child id: set of parents TODO: if the build node
-     * changes one setting (like build status) the hash will no longer find it in the provided set. We should
-     * move back to normal ids?
+     * Int indexed representation of the build graph, jobs are indexed in the order of build layers. The
+     * graph holds all the build jobs and the edges between them.
      */
-    private final Map<String, Set<BuildJob>> childIdParentMapping = new HashMap<>();
+    private final BuildGraph graph;
 
     /**
      * Class constructor for layers that has build cycle
@@ -33,280 +34,344 @@ public class BuildLayers {
     public BuildLayers(List<String> buildCycle) {
         this.buildLayers = new ArrayList<>();
         this.buildCycle.addAll(buildCycle);
+        if (!buildCycle.isEmpty()) {
+            this.buildCycles.add(this.buildCycle);
+        }
+        this.graph = new BuildGraph(new ArrayList<>(), new ArrayList<>());
     }
 
-    public BuildLayers(List<List<String>> buildLayers, List<ParsedBuildJob> parsedNodes) {
-        for (ParsedBuildJob node : parsedNodes) {
-            // we assume provided build nodes are unique and we don't have duplicates
-            buildNodes.put(node.getId(), new BuildJob(node.getId(), node.getBuildSettings()));
-        }
+    /**
+     * Create layers that contain multiple build cycles, the first cycle is used as the main build cycle
+     */
+    private static BuildLayers withCycles(List<List<String>> buildCycles) {
+        BuildLayers layers = new BuildLayers(buildCycles.get(0));
+        layers.buildCycles.addAll(buildCycles.subList(1, buildCycles.size()));
+        return layers;
+    }
 
-        // add children to build nodes (here we turn ids into actual build objects)
+    public BuildLayers(List<List<String>> buildLayers, List<ParsedBuildJob> parsedNodes) {
+        // we assume provided build nodes are unique and we don't have duplicates
+        Map<String, ParsedBuildJob> parsedById = new HashMap<>(parsedNodes.size() * 2);
         for (ParsedBuildJob node : parsedNodes) {
-            BuildJob bn = buildNodes.get(node.getId());
-            for (String child : node.getChildren()) {
-                BuildJob childBuildJob = buildNodes.get(child);
-                assert childBuildJob != null : "Child build node should not be null, id: " + child;
-                bn.addChild(childBuildJob);
-            }
+            parsedById.put(node.getId(), node);
         }
 
-        for (Map.Entry<String, BuildJob> entry : buildNodes.entrySet()) {
-            BuildJob parent = entry.getValue();
-            // create empty set for every node, so we don't end up with empty sets for nodes without a parent
-            childIdParentMapping.computeIfAbsent(parent.getId(), v -> new HashSet<>());
-
-            for (BuildJob child : parent.getChildren()) {
-                Set<BuildJob> parentsOfChild = childIdParentMapping.computeIfAbsent(child.getId(),
-                                                                                    v -> new HashSet<>());
-                parentsOfChild.add(parent);
+        // turn layers into build nodes, the edges between them are stored in the build graph
+        List<BuildJob> orderedJobs = new ArrayList<>(parsedNodes.size());
+        for (List<String> nodesInLayer : buildLayers) {
+            for (String node : nodesInLayer) {
+                ParsedBuildJob parsedNode = parsedById.get(node);
+                assert parsedNode != null : "Build node should not be null, id: " + node;
+                orderedJobs.add(new BuildJob(node, parsedNode.getBuildSettings()));
             }
         }
+        this.graph = new BuildGraph(orderedJobs, parsedNodes);
 
-        // turn layers into build nodes
-        this.buildLayers = new ArrayList<>();
+        this.buildLayers = new ArrayList<>(buildLayers.size());
+        int layerStart = 0;
         for (List<String> nodesInLayer : buildLayers) {
-            List<BuildJob> buildNodesLayer = new ArrayList<>(nodesInLayer.size());
-            for (String node : nodesInLayer) {
-                buildNodesLayer.add(buildNodes.get(node));
-            }
-            this.buildLayers.add(buildNodesLayer);
+            int layerEnd = layerStart + nodesInLayer.size();
+            this.buildLayers.add(graph.getJobs().subList(layerStart, layerEnd));
+            layerStart = layerEnd;
         }
     }
 
     /**
      * Sort build nodes with their specified dependencies into layers. Each layer has to be processed before
      * we can process another layer.
+     * <p>
+     * Layers are created with Kahn's algorithm in O(nodes + edges): the first layer contains the nodes
+     * without parents (in the provided order) and every following layer contains the children whose last
+     * parent was resolved in the previous layer. If some nodes could not be resolved, the graph contains
+     * cycles which are all reported via {@link #getBuildCycles()}.
      *
      * @param buildNodes nodes that will be sorted in correct build order
      * @return layers of dependencies
      */
     public static BuildLayers topologicalSort(List<ParsedBuildJob> buildNodes) {
-        // node [children]
-        Map<String, Set<String>> childrenMapping = new HashMap<>();
-        // node [parents]
-        Map<String, Set<String>> parentMapping = new HashMap<>();
-
-        // fill both maps with correct data
+        // turn the string ids into int indexes, so we can work with plain arrays
+        final Map<String, Integer> indexById = new HashMap<>(buildNodes.size() * 2);
+        final List<String> ids = new ArrayList<>(buildNodes.size());
         for (ParsedBuildJob buildNode : buildNodes) {
-            // we don't know which are parents of build node (there could be none), but this ensures that
-            // each build node is also added to dependency parent mapping
-            parentMapping.computeIfAbsent(buildNode.getId(), s -> new HashSet<>());
-            Set<String> childsOfBuildNode = childrenMapping.computeIfAbsent(buildNode.getId(), s -> new HashSet<>());
-            childsOfBuildNode.addAll(buildNode.getChildren());
-
-            // create a map of dependency : parent node
-            for (String child : buildNode.getChildren()) {
-                Set<String> parentOfChild = parentMapping.computeIfAbsent(child, s -> new HashSet<>());
-                parentOfChild.add(buildNode.getId());
+            indexOf(buildNode.getId(), indexById, ids);
+        }
+        final int[][] childrenOfNode = new int[buildNodes.size()][];
+        for (int i = 0; i < buildNodes.size(); i++) {
+            Set<String> nodeChildren = buildNodes.get(i).getChildren();
+            childrenOfNode[i] = new int[nodeChildren.size()];
+            int child = 0;
+            for (String childId : nodeChildren) {
+                // children that were not declared as build nodes are indexed after the declared ones
+                childrenOfNode[i][child++] = indexOf(childId, indexById, ids);
             }
         }
 
-        final List<List<String>> layers = new ArrayList<>();
-        final List<String> thisIterationIds = new ArrayList<>();
-        while (parentMapping.size() > 0) {
-            thisIterationIds.clear();
-
-            // in every iteration there should be new nodes that are considered
-            // leafs (as we remove the dependencies as part of the iteration).
-            // If there is a cycle in the graph we won't find a node with 0 dependencies
-            for (Map.Entry<String, Set<String>> entry : parentMapping.entrySet()) {
-                // nodes which have 0 parent nodes (dependencies) are the leaf nodes and should be used
-                // as the next step in build process
-                final boolean isLeafNode = entry.getValue() == null || entry.getValue().isEmpty();
-                if (isLeafNode) {
-                    String leafNode = entry.getKey();
-                    thisIterationIds.add(leafNode);
-                }
+        final int size = ids.size();
+        final int[][] children = Arrays.copyOf(childrenOfNode, size);
+        for (int i = buildNodes.size(); i < size; i++) {
+            children[i] = EMPTY;
+        }
+        final int[] remainingParents = new int[size];
+        for (int[] nodeChildren : children) {
+            for (int child : nodeChildren) {
+                remainingParents[child]++;
             }
+        }
 
-            // we don't have any node that would have 0 dependencies, that means we have a cycle in the graph
-            // (or a bug in our code)
-            //
-            // @FUTURE: rewrite
-            // The reason why cycles are checked in layers and not simply by iterating over every node
-            // is because at first I thought transitive dependencies will mess things up and make the
-            // cycle checker think we have a cycle, but later on I realized that's not the case.
-            // Either there is a cycle in the graph or there isn't - transitive dependencies don't matter.
-            // Given that number of nodes in this graph is not going to be that big (nobody is going to build
-            // 1000 dependencies with this software), I just left the working and debugged code intact.
-            // This code would probably be way simpler with a simple depth first search traversal.
-            //
-            //      A
-            //   /  |  \
-            //  B   |   C
-            //   \  |  /
-            //      D
-            final boolean cycleInGraph = thisIterationIds.size() == 0;
-            if (cycleInGraph) {
-                // find the node with min dependencies and go from there.
-                int minValue = Integer.MAX_VALUE;
-                String parentWithLeastDependencies = "";
-
-                if (layers.isEmpty()) {
-                    // a cycle occurred before we even started resolving the build nodes
-                    // start with the node with the least amount of dependencies (assuming this is the one
-                    // at the top, but it's not guaranteed)
-                    for (Map.Entry<String, Set<String>> entry : parentMapping.entrySet()) {
-                        int numberOfDependencies = entry.getValue().size();
-                        if (numberOfDependencies < minValue) {
-                            parentWithLeastDependencies = entry.getKey();
-                        }
-                    }
-                } else {
-                    // Here we are trying to detect the first build cycle at the top of the graph.
-                    // Without this extra hassle, we could detect a cycle at the bottom of the graph
-                    // that may not even be there (due to transitive dependencies that are automatically
-                    // resolved when building top to bottom).
-                    Map<String, Set<String>> parentChildrenMap = new HashMap<>();
-                    for (ParsedBuildJob node : buildNodes) {
-                        Set<String> children = parentChildrenMap.computeIfAbsent(node.getId(), s -> new HashSet<>());
-                        children.addAll(node.getChildren());
-                    }
-                    int lastLayer = layers.size() - 1;
-                    while (lastLayer >= 0) {
-                        // keep selecting the layers until you find the one that has at least some dependencies
-                        Set<String> lastBuildLayerChildren = new HashSet<>();
-                        List<String> lastBuiltLayer = layers.get(lastLayer);
-                        for (String node : lastBuiltLayer) {
-                            Set<String> parentChilds = parentChildrenMap.get(node);
-                            if (parentChilds != null) {
-                                lastBuildLayerChildren.addAll(parentChilds);
-                            }
-                        }
-
-                        // leaf nodes are the ones at the bottom? or the ones at the top with no other parents
-                        // get parent with least dependencies? Do we really care about that?
-                        int minChildren = Integer.MAX_VALUE;
-                        for (String buildChild : lastBuildLayerChildren) {
-                            Set<String> buildChildParents = parentMapping.get(buildChild);
-                            final boolean buildChildWasCompletelyBuilt = buildChildParents == null;
-                            if (buildChildWasCompletelyBuilt) {
-                                // try another child and try to find the one that was not completely
-                                // built - there is a cycle happening
-                                continue;
-                            }
-                            int numberOfDependencies = buildChildParents.size();
-                            if (numberOfDependencies < minChildren) {
-                                parentWithLeastDependencies = buildChild;
-                            }
-                        }
-
-                        final boolean parentWithChildrenFoundInLayer = !parentWithLeastDependencies.isEmpty();
-                        if (parentWithChildrenFoundInLayer) {
-                            break;
-                        }
-
-                        // backtrack to previous layer and try to find at least one parent with children
-                        // that are still not entirely resolved
-                        lastLayer--;
-                    }
-
-                    // finished looping, but we did not find such parent that would be connected to cycle.
-                    // This should never happen, but handling this case just in case
-                    if ("".equals(parentWithLeastDependencies)) {
-                        throw new IllegalStateException(
-                                "Something is wrong in cycle detection layer, parent with least dependencies was not "
-                                        + "detected");
-                    }
-                }
-
-                // We have a build node at the top of the graph build chain, now we have to detect actual
-                // nodes in the cycle of the graph below our selected node.
-                //
-                // With this method we only get the first cycle in the graph. If there are more they will
-                // have to be detected after the first cycle is resolved and graph is checked again.
-                Set<String> visited = new HashSet<>();
-                Stack<String> recursionStack = new Stack<>();
-                int iterationCount = 0;
-                if (isCyclic(parentMapping, parentWithLeastDependencies, visited, recursionStack, iterationCount)) {
-                    // since we use the depth first search we have to reverse the stack
-                    // in order to get the node at which we started the traversal to be
-                    // present as the first element in the array.
-                    ArrayList<String> buildCycle = new ArrayList<>(recursionStack);
-                    Collections.reverse(buildCycle);
-                    if (!buildCycle.isEmpty()) {
-                        // adding the first element to the last position so we form the closed cycle
-                        buildCycle.add(buildCycle.get(0));
-                    }
-
-                    return new BuildLayers(buildCycle);
-                }
-
-                // not throwing an exception just so we don't blow with unexpected exceptions in production
-                assert false : "We have a cycle in the graph but graph cycle checker did not detect it";
-                System.out.println("We have a cycle in the graph, but our method did not detect it");
-                return new BuildLayers(new ArrayList<>(recursionStack));
+        // layer in which the node will be built, -1 if the node could not be resolved
+        final int[] layerOf = new int[size];
+        Arrays.fill(layerOf, -1);
+        List<Integer> currentLayer = new ArrayList<>();
+        for (int node = 0; node < size; node++) {
+            if (remainingParents[node] == 0) {
+                currentLayer.add(node);
             }
+        }
 
-            List<String> buildLayer = new ArrayList<>();
-            for (String parentNodeId : thisIterationIds) {
-                // add it to current execution layer (and remove it from mapping so we don't
-                // process it once again)
-                buildLayer.add(parentNodeId);
-                parentMapping.remove(parentNodeId);
-
-                // remove the dependency edges of the parent node
-                Set<String> children = childrenMapping.get(parentNodeId);
-                if (children != null) {
-                    for (String child : children) {
-                        Set<String> parentNodesOfChild = parentMapping.get(child);
-                        parentNodesOfChild.remove(parentNodeId);
+        final List<List<String>> layers = new ArrayList<>();
+        int resolvedNodes = 0;
+        while (!currentLayer.isEmpty()) {
+            List<String> buildLayer = new ArrayList<>(currentLayer.size());
+            List<Integer> nextLayer = new ArrayList<>();
+            for (int node : currentLayer) {
+                buildLayer.add(ids.get(node));
+                layerOf[node] = layers.size();
+                for (int child : children[node]) {
+                    remainingParents[child]--;
+                    if (remainingParents[child] == 0) {
+                        nextLayer.add(child);
                     }
                 }
             }
+            resolvedNodes += buildLayer.size();
             layers.add(buildLayer);
+            currentLayer = nextLayer;
+        }
+
+        if (resolvedNodes < size) {
+            // nodes that were not resolved are either part of a cycle or depend on it
+            List<List<String>> cycles = findBuildCycles(ids, children, layerOf);
+            return withCycles(cycles);
         }
 
         // everything is fine, we have a directed acyclic graph
-        // return new BuildLayers(layers);
         return new BuildLayers(layers, buildNodes);
     }
 
+    private static int indexOf(String id, Map<String, Integer> indexById, List<String> ids) {
+        Integer index = indexById.get(id);
+        if (index == null) {
+            index = ids.size();
+            indexById.put(id, index);
+            ids.add(id);
+        }
+        return index;
+    }
+
     /**
-     * Check if there is a cycle in the build cycle graph by using depth first search
+     * Find all the cycles among the nodes that could not be placed in the build layers. Every strongly
+     * connected component (Tarjan's algorithm) that contains more than one node or a node pointing to itself
+     * is reported as one cycle.
+     * <p>
+     * The cycle closest to the top of the graph (the one whose node has a parent in the deepest build
+     * layer) is reported first, since the cycles below it are often just a consequence of the first one.
      *
-     * @return true if there is a cycle in the graph and false if graph is acyclic
+     * @return list of closed cycles, where the first node of the cycle is also its last node
      */
-    private static boolean isCyclic(Map<String, Set<String>> dependencies, String buildNode,
-            Set<String> visited, Stack<String> path, int iteration) {
-        // make sure we don't blow up with infinite cycles. We assume nobody is going to try and build a system
-        // with 10_000 dependencies (unless they are building npm package)
-        iteration++;
-        if (iteration > 10_000) {
-            throw new IllegalStateException(
-                    String.format("Infinite cycle detected, there is a bug in the code when checking %s node cycle",
-                                  buildNode));
+    private static List<List<String>> findBuildCycles(List<String> ids, int[][] children, int[] layerOf) {
+        final int size = ids.size();
+        final int[][] parents = reverseEdges(children);
+
+        // deepest layer of the resolved parent, used for picking the node at which the cycle is entered
+        final int[] deepestResolvedParent = new int[size];
+        Arrays.fill(deepestResolvedParent, -1);
+        for (int node = 0; node < size; node++) {
+            for (int parent : parents[node]) {
+                deepestResolvedParent[node] = Math.max(deepestResolvedParent[node], layerOf[parent]);
+            }
+        }
+        final Comparator<Integer> cycleStart = Comparator.<Integer>comparingInt(node -> deepestResolvedParent[node])
+                .thenComparing(ids::get);
+
+        final List<int[]> components = stronglyConnectedComponents(children, layerOf);
+        final List<Integer> startNodes = new ArrayList<>();
+        final int[] componentOf = new int[size];
+        Arrays.fill(componentOf, -1);
+        for (int i = 0; i < components.size(); i++) {
+            int[] component = components.get(i);
+            int start = component[0];
+            for (int node : component) {
+                componentOf[node] = i;
+                if (cycleStart.compare(node, start) > 0) {
+                    start = node;
+                }
+            }
+            startNodes.add(start);
+        }
+        startNodes.sort(cycleStart.reversed());
+
+        List<List<String>> cycles = new ArrayList<>(startNodes.size());
+        for (int start : startNodes) {
+            cycles.add(findCycle(start, parents, componentOf, ids));
         }
+        return cycles;
+    }
 
-        if (visited.contains(buildNode)) {
-            // node is not added to the recursion stack, because we have to
-            // reverse the stack before connecting the first and last graph node.
-            // Reverse is used since we use depth first search so the bottom
-            // of the cycle will appear as the first node in the stack which we don't want.
-            // Last node in the stack is actually the first node in the graph
-            // that is the node from which we started the traversal
-            return true;
+    private static int[][] reverseEdges(int[][] children) {
+        final int[] numberOfParents = new int[children.length];
+        for (int[] nodeChildren : children) {
+            for (int child : nodeChildren) {
+                numberOfParents[child]++;
+            }
+        }
+        final int[][] parents = new int[children.length][];
+        for (int node = 0; node < children.length; node++) {
+            parents[node] = new int[numberOfParents[node]];
+            numberOfParents[node] = 0;
         }
+        for (int node = 0; node < children.length; node++) {
+            for (int child : children[node]) {
+                parents[child][numberOfParents[child]++] = node;
+            }
+        }
+        return parents;
+    }
 
-        // build node was not part of the recursion stack and was not visited before
-        path.add(buildNode);
-        visited.add(buildNode);
+    /**
+     * Iterative version of Tarjan's strongly connected components algorithm (recursion would overflow the
+     * stack on large graphs). Only the nodes that were not placed in build layers are considered.
+     *
+     * @return components that form a cycle (single node components are returned only if the node is its own
+     * child)
+     */
+    private static List<int[]> stronglyConnectedComponents(int[][] children, int[] layerOf) {
+        final int size = children.length;
+        final int[] discovered = new int[size];
+        final int[] lowLink = new int[size];
+        final boolean[] onStack = new boolean[size];
+        Arrays.fill(discovered, -1);
+
+        final int[] componentStack = new int[size];
+        int componentStackSize = 0;
+        // dfs stack of nodes and the position of the next child edge that has to be visited
+        final int[] dfsNodes = new int[size];
+        final int[] dfsEdges = new int[size];
+        int dfsSize = 0;
+        int counter = 0;
+
+        final List<int[]> components = new ArrayList<>();
+        for (int root = 0; root < size; root++) {
+            if (layerOf[root] != -1 || discovered[root] != -1) {
+                continue;
+            }
 
-        // iterate over all the dependencies (depth first traversal) and check if any of those paths contain
-        // a cycle - it may be better to go breadth first search to detect earlier cycle instead of the one
-        // at the bottom of the graph (in case there are multiple graphs)
-        Set<String> rootNodeDeps = dependencies.get(buildNode);
-        for (String child : rootNodeDeps) {
-            if (isCyclic(dependencies, child, visited, path, iteration)) {
-                return true;
+            discovered[root] = lowLink[root] = counter++;
+            componentStack[componentStackSize++] = root;
+            onStack[root] = true;
+            dfsNodes[dfsSize] = root;
+            dfsEdges[dfsSize] = 0;
+            dfsSize++;
+
+            while (dfsSize > 0) {
+                final int node = dfsNodes[dfsSize - 1];
+                final int edge = dfsEdges[dfsSize - 1];
+                if (edge < children[node].length) {
+                    dfsEdges[dfsSize - 1]++;
+                    int child = children[node][edge];
+                    if (layerOf[child] != -1) {
+                        continue;
+                    }
+                    if (discovered[child] == -1) {
+                        discovered[child] = lowLink[child] = counter++;
+                        componentStack[componentStackSize++] = child;
+                        onStack[child] = true;
+                        dfsNodes[dfsSize] = child;
+                        dfsEdges[dfsSize] = 0;
+                        dfsSize++;
+                    } else if (onStack[child]) {
+                        lowLink[node] = Math.min(lowLink[node], discovered[child]);
+                    }
+                    continue;
+                }
+
+                // all children were visited, pop the node and propagate its low link to the parent
+                dfsSize--;
+                if (dfsSize > 0) {
+                    int parent = dfsNodes[dfsSize - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+
+                if (lowLink[node] == discovered[node]) {
+                    int componentStart = componentStackSize;
+                    do {
+                        componentStart--;
+                        onStack[componentStack[componentStart]] = false;
+                    } while (componentStack[componentStart] != node);
+
+                    int[] component = Arrays.copyOfRange(componentStack, componentStart, componentStackSize);
+                    componentStackSize = componentStart;
+                    if (component.length > 1 || isOwnChild(node, children)) {
+                        components.add(component);
+                    }
+                }
             }
         }
+        return components;
+    }
 
-        // cycle was not found in graph
+    private static boolean isOwnChild(int node, int[][] children) {
+        for (int child : children[node]) {
+            if (child == node) {
+                return true;
+            }
+        }
         return false;
     }
 
+    /**
+     * Find the shortest cycle that goes through the start node by walking the parent edges (breadth first)
+     * within the strongly connected component of the start node.
+     *
+     * @return closed cycle in the build order, e.g: [A, B, C, A]
+     */
+    private static List<String> findCycle(int start, int[][] parents, int[] componentOf, List<String> ids) {
+        final Map<Integer, Integer> previous = new HashMap<>();
+        final Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        previous.put(start, -1);
+
+        int last = -1;
+        search:
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int parent : parents[node]) {
+                if (parent == start) {
+                    last = node;
+                    break search;
+                }
+                if (componentOf[parent] == componentOf[start] && !previous.containsKey(parent)) {
+                    previous.put(parent, node);
+                    queue.add(parent);
+                }
+            }
+        }
+        if (last == -1) {
+            // not throwing an exception just so we don't blow with unexpected exceptions in production
+            assert false : "Strongly connected component should always contain a cycle, node: " + ids.get(start);
+            return Arrays.asList(ids.get(start), ids.get(start));
+        }
+
+        // we walked from the start node up the parent edges, so following the previous nodes from the
+        // last found parent back to the start node gives us the nodes in the build order
+        List<String> cycle = new ArrayList<>();
+        for (int node = last; node != -1; node = previous.get(node)) {
+            cycle.add(ids.get(node));
+        }
+        // adding the first element to the last position so we form the closed cycle
+        cycle.add(cycle.get(0));
+        return cycle;
+    }
+
     public List<List<BuildJob>> getLayers() {
         return this.buildLayers;
     }
@@ -331,17 +396,41 @@ public class BuildLayers {
         return buildCycle;
     }
 
+    /**
+     * @return all the cycles in the dependency graph (empty if there is no cycle)
+     */
+    public List<List<String>> getBuildCycles() {
+        return buildCycles;
+    }
+
     public int getNumberOfBuildNodes() {
-        return this.buildNodes.size();
+        return graph.size();
     }
 
+    /**
+     * @return build job with the given id or null if the job does not exist
+     */
     public BuildJob getBuildNode(String node) {
-        return this.buildNodes.get(node);
+        int index = graph.indexOf(node);
+        if (index == -1) {
+            return null;
+        }
+        return graph.getJob(index);
     }
 
-    public Set<BuildJob> getParents(BuildJob node) {
-        Set<BuildJob> nodes = this.childIdParentMapping.get(node.getId());
-        assert nodes != null : String.format("Parent nodes for build node %s are null", node.getId());
-        return nodes;
+    /**
+     * @return unmodifiable view of the job parents (the parents are not copied)
+     */
+    public List<BuildJob> getParents(BuildJob node) {
+        int index = graph.indexOf(node.getId());
+        assert index >= 0 : String.format("Build node %s is not part of the build layers", node.getId());
+        return graph.parentJobs(index);
+    }
+
+    /**
+     * @return int indexed build graph, where the jobs are indexed in the order of build layers
+     */
+    public BuildGraph getGraph() {
+        return graph;
     }
 }
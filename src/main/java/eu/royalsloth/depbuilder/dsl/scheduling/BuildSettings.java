@@ -37,7 +37,8 @@ public class BuildSettings {
     private Duration maxDuration = DEFAULT_BUILD_DURATION;
     /**
      * Defines how heavy the build process is. In case we know there is a heavy compilation build that is more
-     * expensive than a simple report job.
+     * expensive than a simple report job. The weight is the number of executor slots the job occupies while
+     * it's building.
      **/
     private int weight = 1;
     /**
@@ -131,6 +132,14 @@ public class BuildSettings {
         this.weight = weight;
     }
 
+    /**
+     * @return number of executor slots the job occupies while it's building (every job takes at least one
+     * executor, even if its weight is 0)
+     */
+    public int getExecutorSlots() {
+        return Math.max(1, weight);
+    }
+
     public void addUnknownSetting(UnknownSetting unknownSetting) {
         this.unknownSettings.add(unknownSetting);
     }
@@ -0,0 +1,119 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Offline simulation of the pipeline build. The real {@link Scheduler} is driven by a {@link VirtualClock},
+ * where every job takes exactly its expected duration and always succeeds. The simulation can be used to
+ * find out how long the pipeline build would take with a different number of executors or build throttles,
+ * without building anything.
+ */
+public class BuildSimulator {
+
+    /**
+     * If the simulation doesn't progress for this long (e.g: build throttles never allow any builds), the
+     * simulation is terminated.
+     */
+    private static final Duration MAX_TIME_WITHOUT_PROGRESS = Duration.ofDays(1);
+
+    private final BuildLayers buildLayers;
+    private final SchedulerSettings settings;
+    private final Function<BuildJob, Duration> expectedDuration;
+    private final ZoneId zone;
+
+    public BuildSimulator(BuildLayers buildLayers, SchedulerSettings settings,
+            Function<BuildJob, Duration> expectedDuration) {
+        this(buildLayers, settings, expectedDuration, ZoneId.systemDefault());
+    }
+
+    /**
+     * @param buildLayers      layers of the simulated pipeline. The simulation changes the build status of
+     *                         the jobs, so the layers should not be used for the actual build.
+     * @param settings         scheduler settings that are used in the simulation
+     * @param expectedDuration expected build duration of the job
+     * @param zone             time zone in which the build throttles are evaluated
+     */
+    public BuildSimulator(BuildLayers buildLayers, SchedulerSettings settings,
+            Function<BuildJob, Duration> expectedDuration, ZoneId zone) {
+        this.buildLayers = buildLayers;
+        this.settings = settings;
+        this.expectedDuration = expectedDuration;
+        this.zone = zone;
+    }
+
+    /**
+     * Simulate the build of the whole pipeline that starts at the given time.
+     */
+    public SimulationResult simulate(Instant startTime) {
+        final VirtualClock clock = new VirtualClock(startTime, zone);
+        final Scheduler scheduler = new Scheduler(buildLayers, settings, clock);
+
+        final SchedulePrediction schedule = new SchedulePrediction(startTime);
+        // running builds ordered by their finish time
+        final PriorityQueue<SchedulePrediction.PredictedBuild> running = new PriorityQueue<>(
+                Comparator.comparing((SchedulePrediction.PredictedBuild build) -> build.finish)
+                          .thenComparing(build -> build.job.getId()));
+        int peakParallelBuilds = 0;
+        Duration busyTime = Duration.ZERO;
+        Instant lastProgress = startTime;
+
+        while (scheduler.hasNext()) {
+            ScheduledNode node = scheduler.getNext();
+            ScheduledNode.ScheduledNodeStatus status = node.getStatus();
+            if (status == ScheduledNode.ScheduledNodeStatus.FINISHED
+                    || status == ScheduledNode.ScheduledNodeStatus.ABORT) {
+                break;
+            }
+
+            final Instant now = clock.instant();
+            if (status == ScheduledNode.ScheduledNodeStatus.OK) {
+                BuildJob job = node.getBuildJob();
+                Duration duration = expectedDuration.apply(job);
+                busyTime = busyTime.plus(duration.multipliedBy(job.getBuildSettings().getExecutorSlots()));
+                running.add(new SchedulePrediction.PredictedBuild(job, now, now.plus(duration)));
+                peakParallelBuilds = Math.max(peakParallelBuilds, scheduler.getSlotsInProgress());
+                lastProgress = now;
+                continue;
+            }
+
+            // WAIT: move the virtual clock to the next finished build or the next throttle change,
+            // whichever comes first
+            Optional<Duration> nextThrottle = settings.getTimeUntilNextThrottle(LocalTime.now(clock));
+            Instant throttleChange = nextThrottle.map(now::plus).orElse(Instant.MAX);
+            SchedulePrediction.PredictedBuild nextFinished = running.peek();
+            if (nextFinished == null) {
+                final boolean noProgress = Duration.between(lastProgress, now).compareTo(MAX_TIME_WITHOUT_PROGRESS) > 0;
+                if (!nextThrottle.isPresent() || noProgress) {
+                    // nothing is building and the scheduler can't start a new build
+                    schedule.markIncomplete();
+                    break;
+                }
+                clock.advanceTo(throttleChange);
+                continue;
+            }
+
+            if (throttleChange.isBefore(nextFinished.finish)) {
+                clock.advanceTo(throttleChange);
+                continue;
+            }
+
+            clock.advanceTo(nextFinished.finish);
+            while (!running.isEmpty() && !running.peek().finish.isAfter(clock.instant())) {
+                SchedulePrediction.PredictedBuild finished = running.poll();
+                schedule.addBuild(finished.job, finished.start, finished.finish);
+                scheduler.successBuild(finished.job);
+            }
+            lastProgress = clock.instant();
+        }
+
+        if (!running.isEmpty()) {
+            schedule.markIncomplete();
+        }
+        return new SimulationResult(schedule, buildLayers, settings, peakParallelBuilds, busyTime);
+    }
+}
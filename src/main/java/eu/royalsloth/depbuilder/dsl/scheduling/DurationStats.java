@@ -0,0 +1,100 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Compact statistics of the measured durations. The exponentially weighted moving average (EWMA) is used as
+ * the expected duration, since it adapts to the changes of the job (e.g: more tests were added), while the
+ * last few samples are kept in a ring buffer for calculating the percentiles.
+ */
+public class DurationStats {
+
+    /**
+     * Number of the last samples that are kept for percentile calculation
+     */
+    public static final int HISTORY_SIZE = 20;
+
+    /**
+     * Weight of the newest sample in the moving average
+     */
+    public static final double SMOOTHING_FACTOR = 0.3;
+
+    private final long[] samples = new long[HISTORY_SIZE];
+    private int nextSample = 0;
+    private int numberOfSamples = 0;
+    private double averageMillis = 0;
+
+    public DurationStats() {
+    }
+
+    private DurationStats(DurationStats other) {
+        System.arraycopy(other.samples, 0, this.samples, 0, samples.length);
+        this.nextSample = other.nextSample;
+        this.numberOfSamples = other.numberOfSamples;
+        this.averageMillis = other.averageMillis;
+    }
+
+    /**
+     * @return independent copy of these stats
+     */
+    public DurationStats copy() {
+        return new DurationStats(this);
+    }
+
+    public void add(Duration duration) {
+        long millis = Math.max(0, duration.toMillis());
+        if (numberOfSamples == 0) {
+            averageMillis = millis;
+        } else {
+            averageMillis = SMOOTHING_FACTOR * millis + (1 - SMOOTHING_FACTOR) * averageMillis;
+        }
+
+        samples[nextSample] = millis;
+        nextSample = (nextSample + 1) % samples.length;
+        numberOfSamples++;
+    }
+
+    /**
+     * @return number of all samples that were added (including the ones that no longer fit into history)
+     */
+    public int getNumberOfSamples() {
+        return numberOfSamples;
+    }
+
+    public boolean isEmpty() {
+        return numberOfSamples == 0;
+    }
+
+    /**
+     * @return exponentially weighted moving average of all the added durations
+     */
+    public Duration getAverage() {
+        return Duration.ofMillis(Math.round(averageMillis));
+    }
+
+    /**
+     * Percentile of the last {@link #HISTORY_SIZE} durations (nearest rank method).
+     *
+     * @param percentile percentile in range [0, 100]
+     */
+    public Duration getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException(String.format("Percentile should be in range [0, 100], got: %s", percentile));
+        }
+
+        int size = Math.min(numberOfSamples, samples.length);
+        if (size == 0) {
+            return Duration.ZERO;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * size);
+        return Duration.ofMillis(sorted[Math.max(0, rank - 1)]);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DurationStats(average=%s, samples=%d)", getAverage(), numberOfSamples);
+    }
+}
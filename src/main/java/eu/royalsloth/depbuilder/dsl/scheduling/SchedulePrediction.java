@@ -0,0 +1,101 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Predicted start and finish times of the jobs that are still waiting to be built or are building right
+ * now. The prediction is created by replaying the scheduler state forward with the expected job durations
+ * (see {@link Scheduler#predictSchedule}).
+ */
+public class SchedulePrediction {
+
+    public static class PredictedBuild {
+        public final BuildJob job;
+        public final Instant start;
+        public final Instant finish;
+
+        public PredictedBuild(BuildJob job, Instant start, Instant finish) {
+            this.job = job;
+            this.start = start;
+            this.finish = finish;
+        }
+
+        public Duration getDuration() {
+            return Duration.between(start, finish);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(%s - %s)", job.getId(), start, finish);
+        }
+    }
+
+    private final Instant predictionTime;
+    private final Map<String, PredictedBuild> builds = new LinkedHashMap<>();
+    private Instant finishTime;
+    private boolean complete = true;
+
+    public SchedulePrediction(Instant predictionTime) {
+        this.predictionTime = predictionTime;
+        this.finishTime = predictionTime;
+    }
+
+    void addBuild(BuildJob job, Instant start, Instant finish) {
+        builds.put(job.getId(), new PredictedBuild(job, start, finish));
+        if (finish.isAfter(finishTime)) {
+            finishTime = finish;
+        }
+    }
+
+    /**
+     * Marks the prediction as incomplete (some of the jobs can't be built in the predicted schedule, e.g:
+     * build throttle doesn't allow any build).
+     */
+    void markIncomplete() {
+        this.complete = false;
+    }
+
+    /**
+     * @return predicted build of the job or empty if the job has already finished or won't be built
+     */
+    public Optional<PredictedBuild> getBuild(String jobId) {
+        return Optional.ofNullable(builds.get(jobId));
+    }
+
+    /**
+     * @return predicted builds in the order in which they are predicted to finish
+     */
+    public Collection<PredictedBuild> getBuilds() {
+        return Collections.unmodifiableCollection(builds.values());
+    }
+
+    /**
+     * @return time at which the prediction was made
+     */
+    public Instant getPredictionTime() {
+        return predictionTime;
+    }
+
+    /**
+     * @return predicted time when the last of the jobs will finish building
+     */
+    public Instant getFinishTime() {
+        return finishTime;
+    }
+
+    /**
+     * @return predicted time until all the jobs are built
+     */
+    public Duration getRemainingTime() {
+        return Duration.between(predictionTime, finishTime);
+    }
+
+    /**
+     * @return true if all the remaining jobs were scheduled in the prediction
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+}
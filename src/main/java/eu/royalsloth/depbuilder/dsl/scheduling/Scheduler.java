@@ -7,33 +7,99 @@ import eu.royalsloth.depbuilder.jenkins.actions.PersistBuildInfoAction;
 import hudson.model.Result;
 import hudson.model.Run;
 
-import javax.annotation.CheckForNull;
 import java.io.PrintStream;
-import java.time.Duration;
-import java.time.Instant;
+import java.time.*;
 import java.util.*;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 
 import static eu.royalsloth.depbuilder.dsl.scheduling.ScheduledNode.ScheduledNodeStatus;
 
 public class Scheduler {
 
+    /**
+     * Max time the scheduler waits for the build events before it checks the queued builds again.
+     */
+    public static final Duration MAX_WAITING_TIME = Duration.ofSeconds(10);
+
     protected final Instant startTime;
+    /**
+     * Source of the current time. All the time based decisions of the scheduler (build throttles, waiting
+     * for the builds) are made with this clock.
+     */
+    protected final Clock clock;
     protected final BuildLayers buildLayers;
+    /**
+     * The build state below is changed by the orchestration step and read by the status pages, so it's
+     * only accessed while holding the scheduler monitor.
+     */
     protected final Set<String> finished = new HashSet<>();
     protected final SchedulerSettings settings;
 
     protected boolean buildHasErrors = false;
     protected boolean buildWasAborted = false;
-    private int operatingLayer = 0;
 
-    @CheckForNull
-    private volatile BuildFuture futureBuild;
+    /**
+     * Number of nodes that were handed out by the scheduler and were not finished yet.
+     */
+    private int buildsInProgress = 0;
+
+    /**
+     * Number of executor slots (see {@link BuildSettings#getExecutorSlots()}) taken by the nodes that are in
+     * progress. The parallel build limits are applied to the slots instead of the number of builds.
+     */
+    private int slotsInProgress = 0;
+
+    /**
+     * Builds that were put into the Jenkins queue and were not yet ejected. The list is
+     * read from the UI threads (build status requests), while it's modified by the
+     * build scheduling thread.
+     */
+    private final List<BuildFuture> queuedBuilds = new CopyOnWriteArrayList<>();
+
+    /**
+     * Int indexed build graph, the job index is used as an index in the arrays below.
+     */
+    private final BuildGraph graph;
+
+    /**
+     * Job index: number of parents that have not finished building yet. Once the number drops to 0, the
+     * job is put into the queue of jobs that are ready to build.
+     */
+    private final int[] remainingParents;
+
+    /**
+     * Job index: true if any of the job parents has failed or was aborted
+     */
+    private final boolean[] parentFailed;
+
+    /**
+     * Indexes of the jobs that are ready to build, ordered by the scheduling priority
+     */
+    private PriorityQueue<Integer> readyJobs;
+
+    /**
+     * Number of jobs that can't be built due to their parent errors
+     */
+    private int parentErrors = 0;
+
+    /**
+     * Job index: cost of the longest chain of jobs starting with this job (including the job itself)
+     */
+    private final long[] remainingPathCost;
+    private BuildCostEstimator costEstimator = BuildCostEstimator.WEIGHT;
 
     public Scheduler(BuildLayers buildLayers, SchedulerSettings settings) {
-        this(buildLayers, settings, Instant.now());
+        this(buildLayers, settings, Clock.systemDefaultZone());
+    }
+
+    public Scheduler(BuildLayers buildLayers, SchedulerSettings settings, Clock clock) {
+        this(buildLayers, settings, clock, new ArrayList<>());
+    }
+
+    public Scheduler(BuildLayers buildLayers, SchedulerSettings settings, Clock clock,
+            List<String> startBuildWithNodes) {
+        this(buildLayers, settings, clock, clock.instant(), startBuildWithNodes);
     }
 
     public Scheduler(BuildLayers buildLayers, SchedulerSettings settings, Instant startTime) {
@@ -42,6 +108,12 @@ public class Scheduler {
 
     public Scheduler(BuildLayers buildLayers, SchedulerSettings settings, Instant startTime,
             List<String> startBuildWithNodes) {
+        this(buildLayers, settings, Clock.systemDefaultZone(), startTime, startBuildWithNodes);
+    }
+
+    private Scheduler(BuildLayers buildLayers, SchedulerSettings settings, Clock clock, Instant startTime,
+            List<String> startBuildWithNodes) {
+        this.clock = clock;
         this.startTime = startTime;
         this.settings = settings;
         this.buildLayers = buildLayers;
@@ -50,6 +122,8 @@ public class Scheduler {
                     "Provided build layers contain a cycle: " + buildLayers.getBuildCycle());
         }
 
+        this.graph = buildLayers.getGraph();
+
         // check if the user selected only one part of the graph for building
         final boolean partialGraphBuild = !startBuildWithNodes.isEmpty();
         if (partialGraphBuild) {
@@ -67,148 +141,366 @@ public class Scheduler {
             // find the chosen nodes from which the build process should start
             // and mark all their childs as ready to build (NONE status)
             for (String startingJob : startBuildWithNodes) {
-                BuildJob job = buildLayers.getBuildNode(startingJob);
-                final boolean startingJobWasNotFound = job == null;
+                int job = graph.indexOf(startingJob);
+                final boolean startingJobWasNotFound = job == -1;
                 if (startingJobWasNotFound) {
                     throw new IllegalStateException(String.format("Can't start the partial build, the selected job '%s' does not exist in the build graph", startingJob));
                 }
                 markNodesAsReadyToBuild(job);
             }
         }
+
+        final int numberOfJobs = graph.size();
+        this.remainingPathCost = new long[numberOfJobs];
+        computeRemainingPathCost();
+
+        // count the parents that still have to be built (in case of partial builds,
+        // the parents that are not part of the build are already finished)
+        this.remainingParents = new int[numberOfJobs];
+        this.parentFailed = new boolean[numberOfJobs];
+        for (int job = 0; job < numberOfJobs; job++) {
+            for (int edge = graph.parentsStart(job); edge < graph.parentsEnd(job); edge++) {
+                if (!graph.getJob(graph.parent(edge)).isBuildFinished()) {
+                    remainingParents[job]++;
+                }
+            }
+        }
+
+        this.readyJobs = createReadyQueue();
+        for (int job = 0; job < numberOfJobs; job++) {
+            if (graph.getJob(job).isReadyToBuild() && remainingParents[job] == 0) {
+                readyJobs.add(job);
+            }
+        }
     }
 
-    protected void markNodesAsReadyToBuild(BuildJob job) {
-        job.setBuildStatus(BuildStatus.NONE);
-        // we have to remove such jobs from finished set, otherwise the
-        // scheduler will think there are still nodes to build and won't finish
-        finished.remove(job.getId());
-        for (BuildJob child : job.getChildren()) {
-            child.setBuildStatus(BuildStatus.NONE);
-            finished.remove(child.getId());
-            boolean isLeafNode = child.getChildren().isEmpty();
-            if (isLeafNode) {
-                return;
+    private PriorityQueue<Integer> createReadyQueue() {
+        final int initialCapacity = Math.max(1, graph.size());
+        if (settings.priority == SchedulerSettings.SchedulingPriority.CRITICAL_PATH) {
+            // on equal cost, the job that comes first in the layers wins
+            Comparator<Integer> criticalPathFirst = (lhs, rhs) -> {
+                int byCost = Long.compare(remainingPathCost[rhs], remainingPathCost[lhs]);
+                if (byCost != 0) {
+                    return byCost;
+                }
+                return Integer.compare(lhs, rhs);
+            };
+            return new PriorityQueue<>(initialCapacity, criticalPathFirst);
+        }
+
+        // jobs are built in the order of the build layers
+        return new PriorityQueue<>(initialCapacity);
+    }
+
+    /**
+     * Set the estimator that is used for calculating the critical path of the build, when the {@link
+     * SchedulerSettings.SchedulingPriority#CRITICAL_PATH} priority is used.
+     */
+    public synchronized void setCostEstimator(BuildCostEstimator costEstimator) {
+        this.costEstimator = costEstimator;
+        computeRemainingPathCost();
+
+        // the job costs have changed, the ready jobs have to be reordered
+        PriorityQueue<Integer> reordered = createReadyQueue();
+        reordered.addAll(readyJobs);
+        this.readyJobs = reordered;
+    }
+
+    /**
+     * @return cost of the longest chain of jobs that starts with the given job (the job cost is included)
+     */
+    public synchronized long getRemainingPathCost(BuildJob job) {
+        int index = graph.indexOf(job.getId());
+        if (index < 0) {
+            return 0;
+        }
+        return remainingPathCost[index];
+    }
+
+    private void computeRemainingPathCost() {
+        // children are always in one of the later layers, so by going through the jobs
+        // backwards we already know the cost of all children of the job
+        for (int job = graph.size() - 1; job >= 0; job--) {
+            long maxChildCost = 0;
+            for (int edge = graph.childrenStart(job); edge < graph.childrenEnd(job); edge++) {
+                maxChildCost = Math.max(maxChildCost, remainingPathCost[graph.child(edge)]);
             }
-            markNodesAsReadyToBuild(child);
+            long cost = Math.max(0, costEstimator.estimateCost(graph.getJob(job)));
+            remainingPathCost[job] = cost + maxChildCost;
         }
     }
 
-    public List<BuildFuture> getQueuedBuilds() {
-        BuildFuture build = this.futureBuild;
-        if (build != null) {
-            return Arrays.asList(build);
+    /**
+     * Mark the job with the given index and all its descendants as ready to build. Descendants always have
+     * a bigger index than the job, so they are all visited in a single pass over the following jobs.
+     */
+    protected void markNodesAsReadyToBuild(int job) {
+        final boolean[] readyToBuild = new boolean[graph.size()];
+        readyToBuild[job] = true;
+        for (int descendant = job; descendant < graph.size(); descendant++) {
+            if (!readyToBuild[descendant]) {
+                continue;
+            }
+            BuildJob buildJob = graph.getJob(descendant);
+            buildJob.setBuildStatus(BuildStatus.NONE);
+            // we have to remove such jobs from finished set, otherwise the
+            // scheduler will think there are still nodes to build and won't finish
+            finished.remove(buildJob.getId());
+            for (int edge = graph.childrenStart(descendant); edge < graph.childrenEnd(descendant); edge++) {
+                readyToBuild[graph.child(edge)] = true;
+            }
         }
+    }
 
-        return new ArrayList<>();
+    public List<BuildFuture> getQueuedBuilds() {
+        return new ArrayList<>(queuedBuilds);
     }
 
     public void addQueuedBuild(BuildFuture future) {
-        BuildFuture build = this.futureBuild;
-        if (build == null) {
-            this.futureBuild = future;
-            return;
+        queuedBuilds.add(future);
+    }
+
+    /**
+     * @return number of build nodes that were scheduled for building, but are not finished yet.
+     */
+    public synchronized int getBuildsInProgress() {
+        return buildsInProgress;
+    }
+
+    /**
+     * @return number of executor slots taken by the build nodes that are in progress
+     */
+    public synchronized int getSlotsInProgress() {
+        return slotsInProgress;
+    }
+
+    /**
+     * Check if the job with the given number of executor slots could start building while the other jobs
+     * are taking the given number of slots. The job that is heavier than the parallel build limit is only
+     * started when nothing else is building, otherwise it would never be built.
+     */
+    private static boolean slotsAreAvailable(int slotsInProgress, int jobSlots, int allowedParallelBuilds) {
+        if (slotsInProgress >= allowedParallelBuilds) {
+            return false;
         }
+        return slotsInProgress == 0 || jobSlots <= allowedParallelBuilds - slotsInProgress;
+    }
 
-        // this should never happen
-        this.errorBuild(build.buildJob);
-        this.futureBuild = null;
-        throw new IllegalStateException(String.format("Can't add another build %s while another build %s is building", future.buildJob
-                .getId(), build.buildJob.getId()));
+    private int slotsOf(int job) {
+        return graph.getJob(job).getBuildSettings().getExecutorSlots();
     }
 
     /**
-     * Eject the build if the build has finished building.
+     * Eject all the builds that have finished building or exceeded their max build time. This method does
+     * not block, the builds that are still building stay in the queue and are checked again once one of
+     * them has finished or after the {@link #getWaitingTime()}.
      *
-     * @return true if the build was ejected and false otherwise.
+     * @return true if at least one build was ejected and false otherwise.
      */
     public boolean ejectFinishedBuilds(PrintStream logger, PersistBuildInfoAction persistBuildInfo) {
-        final BuildFuture build = this.futureBuild;
-        if (build == null) {
-            return false;
+        boolean buildsEjected = false;
+        for (BuildFuture build : queuedBuilds) {
+            if (ejectFinishedBuild(build, logger, persistBuildInfo)) {
+                queuedBuilds.remove(build);
+                buildsEjected = true;
+            }
         }
+        return buildsEjected;
+    }
 
-        BuildSettings settings = build.buildJob.getBuildSettings();
-        long maxNodeBuildTime = settings.getMaxDuration().toMillis();
-        long maxProjectBuildTime = this.settings.maxDuration.toMillis();
-        long maxBuildTime = Math.min(maxNodeBuildTime, maxProjectBuildTime);
-        Instant end = startTime.plusMillis(maxBuildTime);
-        long maxWaitingTime = end.toEpochMilli() - Instant.now().toEpochMilli();
-
-        final boolean timeBudgetWasSpent = maxWaitingTime < 0;
-        if (timeBudgetWasSpent) {
+    private boolean ejectFinishedBuild(BuildFuture build, PrintStream logger,
+            PersistBuildInfoAction persistBuildInfo) {
+        if (build.isTimedOut()) {
+            // the build took too long to execute and was interrupted by the build watchdog. The pipeline
+            // is aborted right away, but the build stays in the queue until its executor has stopped,
+            // otherwise it would be persisted while it's still running.
             this.abortBuild(build.buildJob);
-            if (build.getScheduledBuild().isPresent()) {
-                persistBuildInfo.addBuild(build.getScheduledBuild().get());
-            } else {
-                persistBuildInfo.addCancelledBuild(build.buildJob.getId());
+            if (!build.isDone()) {
+                return false;
             }
+            AbortReason reason = createAbortReason(build, persistBuildInfo);
+            String msg = String.format("Project %s: %s, max build time %s exceeded", reason.projectId, reason.result,
+                                       TimeUtils.formatDuration(getMaxBuildTime(build.buildJob)));
+            logger.println(msg);
             return true;
         }
 
-        try {
-            // we still have enough time to build the project
-            build.future.get(maxWaitingTime, TimeUnit.MILLISECONDS);
-            // at this point the project is considered as built. The build could
-            // either finish, was aborted or failed due to some build error.
-            this.futureBuild = null;
-            if (!build.getScheduledBuild().isPresent()) {
-                // this should never happen
-                logger.println(String.format("Project %s: last build is not present", build.buildJob.getId()));
-                persistBuildInfo.addCancelledBuild(build.buildJob.getId());
-                this.errorBuild(build.buildJob);
-                return true;
-            }
-
-            // build exists, process it and log it to the console
-            Run<?, ?> lastBuild = build.getScheduledBuild().get();
-            Result result = lastBuild.getResult();
-            if (result == null) { // this should never happen
-                logger.println(String.format("Project %s: last build result is not present", build.buildJob.getId()));
-                persistBuildInfo.addBuild(lastBuild);
-                this.errorBuild(build.buildJob);
-                return true;
-            }
-
-            final boolean buildHasFailed = result.isWorseThan(Result.SUCCESS);
-            if (buildHasFailed) {
-                this.errorBuild(build.buildJob);
-            } else {
-                this.successBuild(build.buildJob);
-            }
+        if (!build.isDone()) {
+            // still building, check again later
+            return false;
+        }
 
-            String projectLink = JenkinsUtil.createConsoleLink(lastBuild);
-            logger.println(String.format("Project %s: %s", projectLink, result));
-            persistBuildInfo.addBuild(lastBuild);
-            return true;
-        } catch (InterruptedException e) {
-            // the user has interrupted the build process through jenkins UI
-            this.futureBuild = null;
+        // at this point the project is considered as built. The build could
+        // either finish, was aborted or failed due to some build error.
+        if (build.future.isCancelled()) {
+            // the build was cancelled, e.g: the user has removed it from the Jenkins queue
             this.abortBuild(build.buildJob);
 
             AbortReason reason = createAbortReason(build, persistBuildInfo);
-            String msg = String.format("Project %s: %s, due to user action", reason.projectId, reason.result);
+            String msg = String.format("Project %s: %s", reason.projectId, reason.result);
             logger.println(msg);
             return true;
-        } catch (ExecutionException e) {
-            // not sure when this happens
-            this.futureBuild = null;
-            this.abortBuild(build.buildJob);
+        }
 
-            AbortReason reason = createAbortReason(build, persistBuildInfo);
-            String msg = String.format("Project %s: %s", reason.projectId, reason.result);
-            logger.println(msg);
+        if (!build.getScheduledBuild().isPresent()) {
+            // this should never happen
+            logger.println(String.format("Project %s: last build is not present", build.buildJob.getId()));
+            persistBuildInfo.addCancelledBuild(build.buildJob.getId());
+            this.errorBuild(build.buildJob);
             return true;
-        } catch (TimeoutException e) {
-            // the build takes too long to execute, terminate the build
-            this.futureBuild = null;
-            this.abortBuild(build.buildJob);
+        }
 
-            AbortReason reason = createAbortReason(build, persistBuildInfo);
-            String msg = String.format("Project %s: %s, max build time %s exceeded", reason.projectId, reason.result,
-                                       TimeUtils.formatDuration(Duration.ofMillis(maxBuildTime)));
-            logger.println(msg);
+        // build exists, process it and log it to the console
+        Run<?, ?> lastBuild = build.getScheduledBuild().get();
+        Result result = lastBuild.getResult();
+        if (result == null) { // this should never happen
+            logger.println(String.format("Project %s: last build result is not present", build.buildJob.getId()));
+            persistBuildInfo.addBuild(lastBuild);
+            this.errorBuild(build.buildJob);
             return true;
         }
+
+        final boolean buildHasFailed = result.isWorseThan(Result.SUCCESS);
+        if (buildHasFailed) {
+            this.errorBuild(build.buildJob);
+        } else {
+            this.successBuild(build.buildJob);
+        }
+
+        String projectLink = JenkinsUtil.createConsoleLink(lastBuild);
+        logger.println(String.format("Project %s: %s", projectLink, result));
+        persistBuildInfo.addBuild(lastBuild);
+        return true;
+    }
+
+    /**
+     * @return max time the job may build once it has started executing. The job is not allowed to build
+     * longer than the whole build.
+     */
+    public Duration getMaxBuildTime(BuildJob job) {
+        Duration maxNodeBuildTime = job.getBuildSettings().getMaxDuration();
+        Duration maxProjectBuildTime = this.settings.maxDuration;
+        return maxNodeBuildTime.compareTo(maxProjectBuildTime) < 0 ? maxNodeBuildTime : maxProjectBuildTime;
+    }
+
+    /**
+     * @return max time the scheduler should wait for the build events before it checks the queued builds
+     * again: {@link #MAX_WAITING_TIME} or the time until the build throttle changes, whichever is shorter
+     */
+    public Duration getWaitingTime() {
+        Optional<Duration> nextThrottle = settings.getTimeUntilNextThrottle(currentTime());
+        if (nextThrottle.isPresent() && nextThrottle.get().compareTo(MAX_WAITING_TIME) < 0) {
+            return nextThrottle.get();
+        }
+        return MAX_WAITING_TIME;
+    }
+
+    /**
+     * Predict when the remaining jobs will be built by replaying the current scheduler state forward. The
+     * jobs that are building right now are expected to finish after their expected duration (measured from
+     * their start), while the jobs that are waiting for their parents are started as soon as the parents are
+     * predicted to finish and the parallel build limits allow it. The prediction assumes all the remaining
+     * builds will succeed.
+     *
+     * @param now              time from which the prediction is made
+     * @param expectedDuration expected build duration of the job
+     */
+    public synchronized SchedulePrediction predictSchedule(Instant now, Function<BuildJob, Duration> expectedDuration) {
+        final SchedulePrediction prediction = new SchedulePrediction(now);
+        final int[] parentsLeft = remainingParents.clone();
+        final PriorityQueue<Integer> ready = createReadyQueue();
+        ready.addAll(readyJobs);
+
+        // builds that were already started by Jenkins
+        Map<String, Instant> startTimes = new HashMap<>();
+        for (BuildFuture build : queuedBuilds) {
+            build.cause.getBuildStartTime().ifPresent(start -> startTimes.put(build.buildJob.getId(), start));
+        }
+
+        // running builds ordered by their predicted finish time: [finish time in millis, job index]
+        final PriorityQueue<long[]> running = new PriorityQueue<>(Comparator.comparingLong((long[] build) -> build[0])
+                                                                            .thenComparingLong(build -> build[1]));
+        int runningSlots = 0;
+        final Instant[] predictedStart = new Instant[graph.size()];
+        for (int job = 0; job < graph.size(); job++) {
+            BuildJob buildJob = graph.getJob(job);
+            if (buildJob.getBuildStatus() != BuildStatus.IN_PROGRESS) {
+                continue;
+            }
+            Instant start = startTimes.getOrDefault(buildJob.getId(), now);
+            Instant finish = start.plus(expectedDuration.apply(buildJob));
+            if (finish.isBefore(now)) {
+                // the build takes longer than usual, we don't know when it's going to finish
+                finish = now;
+            }
+            predictedStart[job] = start;
+            running.add(new long[]{finish.toEpochMilli(), job});
+            runningSlots += slotsOf(job);
+        }
+
+        Instant time = now;
+        Instant lastStartedBuild = now;
+        while (true) {
+            final int allowedParallelBuilds = settings.getAllowedParallelBuilds(toLocalTime(time));
+            while (!ready.isEmpty() && slotsAreAvailable(runningSlots, slotsOf(ready.peek()), allowedParallelBuilds)) {
+                lastStartedBuild = time;
+                int job = ready.poll();
+                Instant finish = time.plus(expectedDuration.apply(graph.getJob(job)));
+                predictedStart[job] = time;
+                running.add(new long[]{finish.toEpochMilli(), job});
+                runningSlots += slotsOf(job);
+            }
+
+            // the throttle might allow more builds before the next build finishes
+            Optional<Duration> nextThrottle = settings.getTimeUntilNextThrottle(toLocalTime(time));
+            Instant throttleChange = nextThrottle.map(time::plus).orElse(Instant.MAX);
+            if (running.isEmpty()) {
+                if (ready.isEmpty()) {
+                    break;
+                }
+                final boolean throttleNeverAllowsBuilds = Duration.between(lastStartedBuild, time).toDays() >= 1;
+                if (!nextThrottle.isPresent() || allowedParallelBuilds > 0 || throttleNeverAllowsBuilds) {
+                    // nothing is building, but we can't schedule the ready jobs either
+                    prediction.markIncomplete();
+                    break;
+                }
+                time = throttleChange;
+                continue;
+            }
+
+            long[] next = running.peek();
+            Instant finish = Instant.ofEpochMilli(next[0]);
+            if (!ready.isEmpty() && throttleChange.isBefore(finish)) {
+                time = throttleChange;
+                continue;
+            }
+
+            running.poll();
+            time = finish.isAfter(time) ? finish : time;
+            final int finishedJob = (int) next[1];
+            runningSlots -= slotsOf(finishedJob);
+            prediction.addBuild(graph.getJob(finishedJob), predictedStart[finishedJob], finish);
+            for (int edge = graph.childrenStart(finishedJob); edge < graph.childrenEnd(finishedJob); edge++) {
+                int child = graph.child(edge);
+                parentsLeft[child]--;
+                if (parentsLeft[child] == 0 && graph.getJob(child).isReadyToBuild()) {
+                    ready.add(child);
+                }
+            }
+        }
+        return prediction;
+    }
+
+    /**
+     * Predict the schedule of the remaining jobs from the current time of the scheduler clock, see {@link
+     * #predictSchedule(Instant, Function)}.
+     */
+    public SchedulePrediction predictSchedule(Function<BuildJob, Duration> expectedDuration) {
+        return predictSchedule(clock.instant(), expectedDuration);
+    }
+
+    private LocalTime toLocalTime(Instant time) {
+        return LocalDateTime.ofInstant(time, clock.getZone()).toLocalTime();
     }
 
     protected static class AbortReason {
@@ -267,35 +559,19 @@ public class Scheduler {
         this.errorBuild(node.getBuildJob());
     }
 
-    public void finishBuild(BuildJob buildJob, BuildStatus status) {
+    public synchronized void finishBuild(BuildJob buildJob, BuildStatus status) {
+        final boolean alreadyFinished = buildJob.isBuildFinished();
+        if (buildJob.getBuildStatus() == BuildStatus.IN_PROGRESS) {
+            buildsInProgress--;
+            slotsInProgress -= buildJob.getBuildSettings().getExecutorSlots();
+        }
+
         switch (status) {
             case NO_BUILD:
-            case SUCCESS: {
+            case SUCCESS:
                 buildJob.setBuildStatus(status);
                 finished.add(buildJob.getId());
-                // check if all nodes in the build layer are completed, then we can
-                // move to the next step
-
-
-                final List<List<BuildJob>> layers = this.buildLayers.getLayers();
-                if (operatingLayer < layers.size()) {
-                    // check if we can go down one layer in the graph. We can go down
-                    // if all the build nodes in the layer are finished
-                    List<BuildJob> layer = layers.get(operatingLayer);
-                    boolean allNodeBuildFinished = true;
-                    for (BuildJob node : layer) {
-                        if (!node.isBuildFinished()) {
-                            allNodeBuildFinished = false;
-                        }
-                    }
-                    if (allNodeBuildFinished) {
-                        // increase the operating layer by 1 as all the nodes in the layer
-                        // are finished
-                        operatingLayer++;
-                    }
-                }
-            }
-            break;
+                break;
             case ABORT:
                 this.buildWasAborted = true;
                 buildJob.setBuildStatus(status);
@@ -311,9 +587,68 @@ public class Scheduler {
                 String msg = String.format("You can't finish a build for a node %s with status %s", buildJob, status);
                 throw new IllegalStateException(msg);
         }
+
+        if (!alreadyFinished) {
+            // children were already notified if the build was finished before
+            notifyChildren(graph.indexOf(buildJob.getId()));
+        }
+    }
+
+    /**
+     * Update the number of remaining parents of the finished job children and put the children that are
+     * ready to build into the ready queue. The cost of this method is proportional to the number of children
+     * (and the children that can't be built due to parent errors).
+     */
+    private void notifyChildren(int finishedJob) {
+        Deque<Integer> finishedJobs = new ArrayDeque<>();
+        finishedJobs.push(finishedJob);
+        while (!finishedJobs.isEmpty()) {
+            final int jobIndex = finishedJobs.pop();
+            final BuildJob job = graph.getJob(jobIndex);
+            final boolean jobFailed = job.hasErrors() || job.wasAborted();
+            for (int edge = graph.childrenStart(jobIndex); edge < graph.childrenEnd(jobIndex); edge++) {
+                final int childIndex = graph.child(edge);
+                final BuildJob child = graph.getJob(childIndex);
+                remainingParents[childIndex]--;
+                if (jobFailed) {
+                    parentFailed[childIndex] = true;
+                }
+
+                if (!child.isReadyToBuild()) {
+                    // already marked as parent error or not part of the partial build
+                    continue;
+                }
+
+                // check for parent errors depending on the build node settings
+                // if onParentFailure.ABORT is selected, we shouldn't build this node
+                // in case there is any error upstream.
+                //
+                // if onParentFailure.BUILD is selected, the node will be scheduled for
+                // building once all of its parents are finished, even if there were errors upstream
+                //
+                // @FUTURE: we may want to add more fine grained abort mechanisms
+                // (e.g: abort only if the specific parent has failed)
+                final boolean abortOnParentFailure = child.getBuildSettings()
+                                                          .getOnParentFailure() == BuildSettings.ParentFailureMode.ABORT;
+                if (parentFailed[childIndex] && abortOnParentFailure) {
+                    // parents of this node have a build error, this node
+                    // or its children shouldn't be built
+                    child.setBuildStatus(BuildStatus.PARENT_ERROR);
+                    this.buildHasErrors = true;
+                    parentErrors++;
+                    finishedJobs.push(childIndex);
+                    continue;
+                }
+
+                final boolean allParentsFinished = remainingParents[childIndex] == 0;
+                if (allParentsFinished) {
+                    readyJobs.add(childIndex);
+                }
+            }
+        }
     }
 
-    public boolean hasNext() {
+    public synchronized boolean hasNext() {
         if (wasAborted()) {
             // if the user aborted the build (as far as I know that is currently
             // only possible through Jenkins UI or API), there is no point in
@@ -337,29 +672,53 @@ public class Scheduler {
      *
      * @return if any node in the build layers has error and false if it does not.
      */
-    public boolean hasBuildErrors() {
+    public synchronized boolean hasBuildErrors() {
         return this.buildHasErrors;
     }
 
     /**
      * @return true if the build was aborted and false otherwise
      */
-    public boolean wasAborted() {
+    public synchronized boolean wasAborted() {
         return this.buildWasAborted;
     }
 
     /**
      * @return next node used for building
      */
-    public ScheduledNode getNext() {
+    public synchronized ScheduledNode getNext() {
         if (this.buildWasAborted) {
             return ScheduledNode.ABORT_NODE;
         }
 
-        if (this.futureBuild == null) {
-            return getNextNode();
+        // the limit is checked on every call, so the build throttle that changes
+        // in the middle of the build is taken into account right away
+        final int allowedParallelBuilds = settings.getAllowedParallelBuilds(currentTime());
+        final boolean tooManyParallelBuilds = slotsInProgress >= allowedParallelBuilds;
+        if (tooManyParallelBuilds) {
+            // we have to wait for one of the builds to finish (or for the build
+            // throttle to change) before we can schedule another build
+            return ScheduledNode.WAIT_NODE;
         }
-        return ScheduledNode.WAIT_NODE;
+
+        // the heavy job that doesn't fit into the free slots is not skipped by the lighter
+        // jobs, otherwise it could wait forever while the lighter jobs are taking the slots
+        Integer next = readyJobs.peek();
+        if (next != null && !slotsAreAvailable(slotsInProgress, slotsOf(next), allowedParallelBuilds)) {
+            return ScheduledNode.WAIT_NODE;
+        }
+        return getNextNode();
+    }
+
+    /**
+     * @return current time of the day that is used for choosing the build throttle
+     */
+    protected LocalTime currentTime() {
+        return LocalTime.now(clock);
+    }
+
+    public Clock getClock() {
+        return clock;
     }
 
     protected ScheduledNode getNextNode() {
@@ -367,7 +726,6 @@ public class Scheduler {
             return ScheduledNode.FINISHED_NODE;
         }
 
-        final List<List<BuildJob>> layers = buildLayers.getLayers();
         // What we want to achieve is:
         // A   C
         // |   |
@@ -378,59 +736,25 @@ public class Scheduler {
         // [B, D]
         //
         // If build A is slow and build C is fast, we should be able to build D instead of waiting for A.
-        // before we finish building the 1. layer.
-        boolean shouldWaitForParentBuild = false;
-        boolean parentsHaveError = false;
-
-        int currentLayer = operatingLayer;
-        while (currentLayer < layers.size()) {
-            for (BuildJob node : layers.get(currentLayer)) {
-                if (node.isReadyToBuild()) {
-                    // check if node is available, by having all parents resolved
-                    ParentBuildStatus status = checkParentBuildStatus(node);
-                    switch (status) {
-                        case OK:
-                            node.setBuildStatus(BuildStatus.IN_PROGRESS);
-                            return new ScheduledNode(node, ScheduledNodeStatus.OK);
-                        case NOT_BUILT:
-                            // parents of this node were not yet built but they also
-                            // do not have errors, we have to build all the parents
-                            // of this node first, before we can build this node.
-                            shouldWaitForParentBuild = true;
-                            continue;
-                        case ERROR:
-                            // parents of this node have a build error, this node
-                            // or its children shouldn't be built
-                            node.setBuildStatus(BuildStatus.PARENT_ERROR);
-                            this.buildHasErrors = true;
-                            parentsHaveError = true;
-                            continue;
-                        default:
-                            throw new IllegalStateException("Unknown build state: " + status);
-                    }
-                } else {
-                    // node is not ready to be build, check if the node has errors.
-                    // this extra check is necessary, so we can abort the build
-                    BuildStatus status = node.getBuildStatus();
-                    if (status == BuildStatus.PARENT_ERROR) {
-                        parentsHaveError = true;
-                    }
-                }
-            }
-
-            currentLayer++;
+        // before we finish building the 1. layer. The jobs are put into the ready queue as soon as their
+        // parents are built.
+        Integer next = readyJobs.poll();
+        if (next != null) {
+            BuildJob node = graph.getJob(next);
+            node.setBuildStatus(BuildStatus.IN_PROGRESS);
+            buildsInProgress++;
+            slotsInProgress += node.getBuildSettings().getExecutorSlots();
+            return new ScheduledNode(node, ScheduledNodeStatus.OK);
         }
 
-        final boolean buildShouldWait = parentsHaveError && shouldWaitForParentBuild;
-        if (buildShouldWait) {
-            // there are some nodes with an error
-            // and some nodes which are still waiting for the parent build
-            //
-            // we should wait for the next finished build, before scheduling next build node
+        final boolean buildsAreStillRunning = buildsInProgress > 0;
+        if (buildsAreStillRunning) {
+            // we should wait for the next finished build, before scheduling next build node.
+            // The builds that are still running might not be affected by the parent errors
             return ScheduledNode.WAIT_NODE;
         }
 
-        final boolean abortBuild = parentsHaveError;
+        final boolean abortBuild = parentErrors > 0;
         if (abortBuild) {
             // there is no other child that we can build, as all non built children
             // have parents with an error. We should abort the build.
@@ -440,55 +764,4 @@ public class Scheduler {
         // otherwise we can only wait for the next node build to finish
         return ScheduledNode.WAIT_NODE;
     }
-
-    enum ParentBuildStatus {
-        /**
-         * All parent nodes were built successfully
-         */
-        OK,
-        /**
-         * One of the parent nodes were not built
-         */
-        NOT_BUILT,
-        /**
-         * One of the parent nodes has build error
-         */
-        ERROR,
-    }
-
-    private ParentBuildStatus checkParentBuildStatus(BuildJob childNode) {
-        Set<BuildJob> parentNodesOfChild = this.buildLayers.getParents(childNode);
-
-        // check for parent errors depending on the build node settings
-        // if onParentFailure.NO_BUILD is selected, we shouldn't build this node
-        // in case there is any error upstream.
-        //
-        // if onParentFailure.BUILD is selected, this block will be skipped and
-        // the node will be scheduled for building even if there were errors upstream
-        //
-        // @FUTURE: we may want to add more fine grained abort mechanisms
-        // (e.g: abort only if the specific parent has failed)
-        BuildSettings settings = childNode.getBuildSettings();
-        if (settings.getOnParentFailure() == BuildSettings.ParentFailureMode.ABORT) {
-            // check if any of the parents has build errors. In such case we should report
-            // back as build errors, so we can't build the child node.
-            for (BuildJob parentNode : parentNodesOfChild) {
-                if (parentNode.hasErrors() || parentNode.wasAborted()) {
-                    return ParentBuildStatus.ERROR;
-                }
-            }
-        }
-
-        // none of the parent nodes has build errors, check if there are any parents
-        // on which we are waiting for.
-        for (BuildJob parentNode : parentNodesOfChild) {
-            final boolean parentStillHasToBeBuilt = !parentNode.isBuildFinished();
-            if (parentStillHasToBeBuilt) {
-                return ParentBuildStatus.NOT_BUILT;
-            }
-        }
-
-        // All the parents were successfully built and do not have any build errors
-        return ParentBuildStatus.OK;
-    }
 }
@@ -5,6 +5,7 @@ import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Settings container used for managing plugin build scheduler
@@ -14,8 +15,29 @@ public class SchedulerSettings {
     public static final int NO_RESTRICTION = Integer.MAX_VALUE;
 
     public Duration maxDuration = DEFAULT_MAX_BUILD_TIME;
+    /**
+     * Max number of jobs that are building at the same time. The builds are still limited by the number of
+     * free executors on Jenkins.
+     */
+    public int maxParallelBuilds = NO_RESTRICTION;
+    public SchedulingPriority priority = SchedulingPriority.ORDER;
+    public AgentSelection agentSelection = AgentSelection.LEAST_LOADED;
     public List<Throttle> buildThrottle = new ArrayList<>();
 
+    public SchedulerSettings() {
+    }
+
+    /**
+     * Copy the settings, throttles are immutable so only the list of throttles is copied.
+     */
+    public SchedulerSettings(SchedulerSettings settingsToCopy) {
+        this.maxDuration = settingsToCopy.maxDuration;
+        this.maxParallelBuilds = settingsToCopy.maxParallelBuilds;
+        this.priority = settingsToCopy.priority;
+        this.agentSelection = settingsToCopy.agentSelection;
+        this.buildThrottle.addAll(settingsToCopy.buildThrottle);
+    }
+
     public void addThrottle(Throttle... throttles) {
         buildThrottle.addAll(Arrays.asList(throttles));
         throttleSort();
@@ -77,6 +99,100 @@ public class SchedulerSettings {
         return currentThrottle.executors;
     }
 
+    public enum SchedulingPriority {
+        /**
+         * Jobs that are ready to build are built in the order of build layers
+         */
+        ORDER,
+
+        /**
+         * Jobs that are ready to build are ordered by the cost of their longest downstream chain of jobs.
+         * The longest chains are started first.
+         */
+        CRITICAL_PATH;
+
+        public static Optional<SchedulingPriority> parse(String input) {
+            for (SchedulingPriority priority : SchedulingPriority.values()) {
+                if (priority.toString().equals(input)) {
+                    return Optional.of(priority);
+                }
+            }
+            return Optional.empty();
+        }
+
+        public static String allModes() {
+            return Arrays.toString(SchedulingPriority.values());
+        }
+    }
+
+    /**
+     * Determines on which agent the job is built, when the job can be built on more than one agent (agent
+     * setting of the job is set to any).
+     */
+    public enum AgentSelection {
+        /**
+         * Job is built on the agent with the most free executors
+         */
+        LEAST_LOADED,
+
+        /**
+         * Job is built on the agent where it was built the last time (warm workspace), if that agent has
+         * free executors. Otherwise the least loaded agent is used.
+         */
+        LAST_BUILT_ON,
+
+        /**
+         * Job is built on the agent where most of its parents were built (their build outputs and
+         * dependency caches are already there), if that agent has free executors. Otherwise the least loaded
+         * agent is used.
+         */
+        PARENT_LOCALITY;
+
+        public static Optional<AgentSelection> parse(String input) {
+            for (AgentSelection selection : AgentSelection.values()) {
+                if (selection.toString().equals(input)) {
+                    return Optional.of(selection);
+                }
+            }
+            return Optional.empty();
+        }
+
+        public static String allModes() {
+            return Arrays.toString(AgentSelection.values());
+        }
+    }
+
+    /**
+     * Get the time until the number of allowed executors might change (next throttle definition or the
+     * start of the next day, when the build throttling is turned off).
+     *
+     * @return time until the next throttle change or empty optional if the build throttles are not
+     * defined.
+     */
+    public Optional<Duration> getTimeUntilNextThrottle(LocalTime currentTime) {
+        if (buildThrottle.isEmpty()) {
+            return Optional.empty();
+        }
+
+        for (Throttle throttle : buildThrottle) {
+            if (throttle.time.isAfter(currentTime)) {
+                return Optional.of(Duration.between(currentTime, throttle.time));
+            }
+        }
+
+        // the last throttle is valid until the end of the day
+        Duration untilMidnight = Duration.between(currentTime, LocalTime.MAX).plusNanos(1);
+        return Optional.of(untilMidnight);
+    }
+
+    /**
+     * Get the max number of jobs that are allowed to build in parallel at the current time, taking into
+     * account both the maxParallelBuilds setting and the build throttles.
+     */
+    public int getAllowedParallelBuilds(LocalTime currentTime) {
+        return Math.min(maxParallelBuilds, getAllowedExecutors(currentTime));
+    }
+
     public static class Throttle {
         public final LocalTime time;
         public final int executors;
@@ -89,6 +205,9 @@ public class SchedulerSettings {
 
         @Override
         public String toString() {
+            if (executors == NO_RESTRICTION) {
+                return String.format("%s|-1", time);
+            }
             return String.format("%s|%d", time, executors);
         }
     }
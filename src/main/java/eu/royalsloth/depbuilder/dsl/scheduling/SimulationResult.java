@@ -0,0 +1,115 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Result of the simulated pipeline build, see {@link BuildSimulator}.
+ */
+public class SimulationResult {
+
+    private final SchedulePrediction schedule;
+    private final List<String> criticalPath;
+    private final int executors;
+    private final int peakParallelBuilds;
+    private final Duration busyTime;
+
+    SimulationResult(SchedulePrediction schedule, BuildLayers buildLayers, SchedulerSettings settings,
+            int peakParallelBuilds, Duration busyTime) {
+        this.schedule = schedule;
+        this.peakParallelBuilds = peakParallelBuilds;
+        this.busyTime = busyTime;
+        this.criticalPath = findCriticalPath(schedule, buildLayers);
+        final boolean parallelBuildsAreLimited = settings.maxParallelBuilds != SchedulerSettings.NO_RESTRICTION;
+        this.executors = parallelBuildsAreLimited ? settings.maxParallelBuilds : peakParallelBuilds;
+    }
+
+    /**
+     * Critical path is the chain of jobs that ends with the last finished job. From the last job we keep
+     * walking to the parent that has finished last, since that parent is the one that delayed the job.
+     */
+    private static List<String> findCriticalPath(SchedulePrediction schedule, BuildLayers buildLayers) {
+        SchedulePrediction.PredictedBuild last = null;
+        for (SchedulePrediction.PredictedBuild build : schedule.getBuilds()) {
+            if (last == null || build.finish.isAfter(last.finish)) {
+                last = build;
+            }
+        }
+
+        LinkedList<String> path = new LinkedList<>();
+        while (last != null) {
+            path.addFirst(last.job.getId());
+            SchedulePrediction.PredictedBuild lastParent = null;
+            for (BuildJob parent : buildLayers.getParents(last.job)) {
+                Optional<SchedulePrediction.PredictedBuild> parentBuild = schedule.getBuild(parent.getId());
+                if (parentBuild.isPresent() && (lastParent == null || parentBuild.get().finish.isAfter(lastParent.finish))) {
+                    lastParent = parentBuild.get();
+                }
+            }
+            last = lastParent;
+        }
+        return path;
+    }
+
+    /**
+     * @return simulated start and finish times of the jobs
+     */
+    public SchedulePrediction getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @return time from the start of the first job until the last job has finished
+     */
+    public Duration getMakespan() {
+        return schedule.getRemainingTime();
+    }
+
+    /**
+     * @return ids of the jobs on the critical path, in the build order
+     */
+    public List<String> getCriticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * @return number of executors that were available in the simulation (maxParallelBuilds or the max
+     * number of executor slots that were taken at the same time, if the parallel builds are not limited)
+     */
+    public int getExecutors() {
+        return executors;
+    }
+
+    /**
+     * @return max number of executor slots (job weights) that were taken at the same time
+     */
+    public int getPeakParallelBuilds() {
+        return peakParallelBuilds;
+    }
+
+    /**
+     * @return sum of the build durations of all jobs multiplied by their executor slots
+     */
+    public Duration getBusyTime() {
+        return busyTime;
+    }
+
+    /**
+     * @return ratio between the time executors were building the jobs and the time they were available
+     * [0, 1]
+     */
+    public double getExecutorUtilization() {
+        long availableMillis = getMakespan().toMillis() * executors;
+        if (availableMillis <= 0) {
+            return 0;
+        }
+        return Math.min(1.0, (double) busyTime.toMillis() / availableMillis);
+    }
+
+    /**
+     * @return true if all the jobs were built in the simulation
+     */
+    public boolean isComplete() {
+        return schedule.isComplete();
+    }
+}
@@ -0,0 +1,73 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import java.time.*;
+
+/**
+ * Clock that only moves when it's explicitly advanced. When the scheduler is created with this clock, the
+ * time based behaviour (build throttles, timeouts, multi-hour builds) can be tested and simulated in
+ * milliseconds (see {@link BuildSimulator}).
+ */
+public class VirtualClock extends Clock {
+
+    private final ZoneId zone;
+    private volatile Instant now;
+
+    public VirtualClock(Instant start) {
+        this(start, ZoneId.systemDefault());
+    }
+
+    public VirtualClock(Instant start, ZoneId zone) {
+        this.now = start;
+        this.zone = zone;
+    }
+
+    /**
+     * @return clock in the system time zone that starts at the given time of the day
+     */
+    public static VirtualClock atTime(LocalTime time) {
+        ZoneId zone = ZoneId.systemDefault();
+        Instant start = LocalDateTime.of(LocalDate.of(2020, 1, 1), time).atZone(zone).toInstant();
+        return new VirtualClock(start, zone);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @return new clock in the given zone that starts at the current time of this clock. The returned clock
+     * is advanced independently of this clock.
+     */
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new VirtualClock(now, zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return now;
+    }
+
+    public synchronized void advance(Duration duration) {
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException(String.format("Virtual clock can't move backwards, got: %s", duration));
+        }
+        now = now.plus(duration);
+    }
+
+    /**
+     * Move the clock to the given time. Time that is before the current clock time is ignored, since the
+     * clock never moves backwards.
+     */
+    public synchronized void advanceTo(Instant time) {
+        if (time.isAfter(now)) {
+            now = time;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VirtualClock(%s, %s)", now, zone);
+    }
+}
@@ -0,0 +1,286 @@
+package eu.royalsloth.depbuilder.jenkins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildSettings;
+import hudson.Extension;
+import hudson.Platform;
+import hudson.model.*;
+import hudson.model.labels.LabelAtom;
+import hudson.model.listeners.RunListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plugin wide snapshot of the agent state (platform, labels, online state and idle executors) and the
+ * agents on which the jobs were last built, which is used for assigning the jobs to agents while the build
+ * is running. Asking the agents for their platform is a
+ * remote call and walking through all the nodes for every scheduled job is slow on controllers with many
+ * agents, so the state is kept in memory and updated by the computer and build events.
+ * <p>
+ * The number of idle executors is only an estimate (the Jenkins queue makes the final decision on which
+ * executor the job is going to run), but it's good enough for spreading the jobs across the agents. The
+ * running pipeline jobs with weight > 1 are counted as multiple busy executors (see {@link
+ * BuildSettings#getExecutorSlots()}).
+ */
+public class AgentSnapshot {
+
+    private static final AgentSnapshot INSTANCE = new AgentSnapshot();
+
+    /**
+     * Agent name: agent state, where agent name is the name used in the pipeline agent settings
+     */
+    private final Map<String, AgentState> agents = new ConcurrentHashMap<>();
+
+    /**
+     * Job full name: name of the agent on which the last build of the job has started
+     */
+    private final Map<String, String> lastBuiltOn = new ConcurrentHashMap<>();
+    private volatile boolean initialized = false;
+
+    private AgentSnapshot() {
+    }
+
+    public static AgentSnapshot get() {
+        INSTANCE.initialize();
+        return INSTANCE;
+    }
+
+    private void initialize() {
+        if (initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (initialized) {
+                return;
+            }
+            refreshAll();
+        }
+    }
+
+    private synchronized void refreshAll() {
+        Map<String, AgentState> states = new HashMap<>();
+        for (Node node : JenkinsUtil.getAllAgents()) {
+            AgentState state = AgentState.of(node);
+            states.put(state.name, state);
+        }
+        // the snapshot is updated in place, so the readers never see an empty snapshot
+        agents.keySet().retainAll(states.keySet());
+        agents.putAll(states);
+        initialized = true;
+    }
+
+    private void refresh(Computer computer, int finishingSlots) {
+        Node node = computer.getNode();
+        if (node == null) {
+            // agent was removed, the configuration change event will update the snapshot
+            return;
+        }
+        AgentState state = AgentState.of(node);
+        state.idleExecutors.set(Math.min(state.executors, state.idleExecutors.get() + finishingSlots));
+        agents.put(state.name, state);
+    }
+
+    /**
+     * @return number of executor slots the build occupies (weight of the job that was assigned to the agent
+     * by the pipeline build or 1 for all the other builds)
+     */
+    static int executorSlots(Run<?, ?> run) {
+        // actions of the queue item are copied to the build when the build starts
+        AssignToNode assignment = run.getAction(AssignToNode.class);
+        return assignment == null ? 1 : assignment.getExecutorSlots();
+    }
+
+    /**
+     * @return state of all the agents including master
+     */
+    public Collection<AgentState> getAgents() {
+        return Collections.unmodifiableCollection(agents.values());
+    }
+
+    public Optional<AgentState> getAgent(String agentName) {
+        return Optional.ofNullable(agents.get(agentName));
+    }
+
+    /**
+     * Get the agent on which the last build of the job was built. Builds started after the Jenkins startup
+     * are recorded by the run listener, otherwise the last build of the job is checked (once).
+     *
+     * @return agent name or empty optional if the job was never built (or the agent is not known)
+     */
+    public Optional<String> getLastBuiltOn(String jobFullName) {
+        String agentName = lastBuiltOn.get(jobFullName);
+        if (agentName != null) {
+            return Optional.of(agentName);
+        }
+
+        Job<?, ?> job = JenkinsUtil.getJenkins().getItemByFullName(jobFullName, Job.class);
+        Run<?, ?> lastBuild = job == null ? null : job.getLastBuild();
+        if (!(lastBuild instanceof AbstractBuild)) {
+            // other builds (e.g: pipeline builds) don't remember their node
+            return Optional.empty();
+        }
+
+        Node builtOn = ((AbstractBuild<?, ?>) lastBuild).getBuiltOn();
+        if (builtOn == null) {
+            // node was removed in the meantime
+            return Optional.empty();
+        }
+        agentName = JenkinsUtil.getComputerName(builtOn);
+        lastBuiltOn.putIfAbsent(jobFullName, agentName);
+        return Optional.of(agentName);
+    }
+
+    /**
+     * State of one agent at the time of the last event.
+     */
+    public static class AgentState {
+        public final String name;
+        public final Node node;
+        /**
+         * Platform of the agent or null if the platform is not known (agent was never online)
+         */
+        public final Platform platform;
+        public final Set<String> labels;
+        public final boolean online;
+        public final boolean acceptingTasks;
+        public final int executors;
+        private final AtomicInteger idleExecutors;
+
+        private AgentState(String name, Node node, Platform platform, Set<String> labels, boolean online,
+                boolean acceptingTasks, int executors, int idleExecutors) {
+            this.name = name;
+            this.node = node;
+            this.platform = platform;
+            this.labels = labels;
+            this.online = online;
+            this.acceptingTasks = acceptingTasks;
+            this.executors = executors;
+            this.idleExecutors = new AtomicInteger(idleExecutors);
+        }
+
+        private static AgentState of(Node node) {
+            String name = JenkinsUtil.getComputerName(node);
+            Set<String> labels = new HashSet<>();
+            for (LabelAtom label : node.getAssignedLabels()) {
+                labels.add(label.getName());
+            }
+
+            Computer computer = node.toComputer();
+            if (computer == null) {
+                // node without executors
+                return new AgentState(name, node, null, Collections.unmodifiableSet(labels), false, false, 0, 0);
+            }
+
+            // isUnix is cached by Jenkins when the agent connects, so it's not a remote call
+            Boolean isUnix = computer.isUnix();
+            Platform platform = isUnix == null ? null : (isUnix ? Platform.UNIX : Platform.WINDOWS);
+            boolean acceptingTasks = node.isAcceptingTasks() && computer.isAcceptingTasks();
+
+            // heavy builds only take one Jenkins executor, but they are occupying more executor slots
+            int idleExecutors = computer.countIdle();
+            for (Executor executor : computer.getExecutors()) {
+                Queue.Executable executable = executor.getCurrentExecutable();
+                if (executable instanceof Run) {
+                    idleExecutors -= executorSlots((Run<?, ?>) executable) - 1;
+                }
+            }
+            return new AgentState(name, node, platform, Collections.unmodifiableSet(labels), computer.isOnline(),
+                                  acceptingTasks, computer.getNumExecutors(), idleExecutors);
+        }
+
+        public int getIdleExecutors() {
+            return Math.max(0, idleExecutors.get());
+        }
+
+        /**
+         * Reserve the executors for the job that was assigned to this agent, so the jobs that are scheduled
+         * right after it are spread to other agents (the executor will only be taken once the job leaves
+         * the Jenkins queue).
+         */
+        public void reserveExecutors(int executors) {
+            idleExecutors.addAndGet(-executors);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(platform: %s, online: %s, idle: %d/%d)", name, platform, online,
+                                 getIdleExecutors(), executors);
+        }
+    }
+
+    /**
+     * Keeps the agent platform, labels and online state up to date.
+     */
+    @Extension
+    public static class AgentListener extends ComputerListener {
+        /**
+         * Called when the agents were added, removed or reconfigured
+         */
+        @Override
+        public void onConfigurationChange() {
+            INSTANCE.refreshAll();
+        }
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            INSTANCE.refresh(c, 0);
+        }
+
+        @Override
+        public void onOffline(@NonNull Computer c, OfflineCause cause) {
+            INSTANCE.refresh(c, 0);
+        }
+
+        @Override
+        public void onTemporarilyOnline(Computer c) {
+            INSTANCE.refresh(c, 0);
+        }
+
+        @Override
+        public void onTemporarilyOffline(Computer c, OfflineCause cause) {
+            INSTANCE.refresh(c, 0);
+        }
+    }
+
+    /**
+     * Keeps the number of idle executors up to date.
+     */
+    @Extension
+    public static class ExecutorListener extends RunListener<Run<?, ?>> {
+        @Override
+        public void onStarted(Run<?, ?> run, TaskListener listener) {
+            if (run instanceof AbstractBuild) {
+                // pipeline builds are running on the flyweight executor of the master, their
+                // workspaces are wherever their node steps are running, so we don't track them
+                Node builtOn = ((AbstractBuild<?, ?>) run).getBuiltOn();
+                if (builtOn != null) {
+                    INSTANCE.lastBuiltOn.put(run.getParent().getFullName(), JenkinsUtil.getComputerName(builtOn));
+                }
+            }
+            refreshExecutorOwner(run, 0);
+        }
+
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            // the executor is still busy at this point, but it's going to be free in a moment
+            refreshExecutorOwner(run, executorSlots(run));
+        }
+
+        private static void refreshExecutorOwner(Run<?, ?> run, int finishingSlots) {
+            if (!INSTANCE.initialized) {
+                return;
+            }
+            Executor executor = run.getExecutor();
+            if (executor instanceof OneOffExecutor) {
+                // flyweight builds (pipeline orchestration) are not taking the regular executors
+                INSTANCE.refresh(executor.getOwner(), 0);
+            } else if (executor != null) {
+                INSTANCE.refresh(executor.getOwner(), finishingSlots);
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ import eu.royalsloth.depbuilder.dsl.ParsedBuild;
 import eu.royalsloth.depbuilder.dsl.ParsedBuildJob;
 import eu.royalsloth.depbuilder.dsl.scheduling.BuildAgent;
 import eu.royalsloth.depbuilder.dsl.scheduling.BuildAgentType;
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildSettings;
+import eu.royalsloth.depbuilder.dsl.scheduling.SchedulerSettings.AgentSelection;
 import hudson.Platform;
 import hudson.Util;
 import hudson.model.*;
@@ -13,9 +15,7 @@ import hudson.model.labels.LabelAssignmentAction;
 import hudson.model.queue.SubTask;
 import jenkins.model.Jenkins;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -25,18 +25,31 @@ public class AssignToNode extends InvisibleAction implements LabelAssignmentActi
 
     private transient final Node node;
 
+    /**
+     * Number of executor slots the job occupies on the node (see {@link BuildSettings#getExecutorSlots()})
+     */
+    private final int executorSlots;
+
     // we could use node, but I guess it's better to use Label as label represent
     // a group of nodes...
     public AssignToNode(Node node) {
+        this(node, 1);
+    }
+
+    public AssignToNode(Node node, int executorSlots) {
         this.node = node;
+        this.executorSlots = executorSlots;
+    }
+
+    public int getExecutorSlots() {
+        // actions persisted by the older plugin versions don't have the executor slots
+        return Math.max(1, executorSlots);
     }
 
     @Override
     public Label getAssignedLabel(@NonNull SubTask task) {
-        // @FUTURE: this could be useful in case we ever support different
-        // agent assignment strategies.
-        //
-        // Node computer = task.getLastBuiltOn();
+        // agent selection strategies (see SchedulerSettings.AgentSelection) are
+        // already applied when the node was selected
         return node.getSelfLabel();
     }
 
@@ -54,16 +67,52 @@ public class AssignToNode extends InvisibleAction implements LabelAssignmentActi
         return false;
     }
 
-    public static AssignToNode createAction(List<BuildAgent> allPossibleBuildAgents) {
-        // TODO: move jenkins calls outside of this action?
-        final List<Node> buildNodes = JenkinsUtil.getAllAgents();
-
+    /**
+     * @param jobId          full name of the job that is going to be built
+     * @param buildSettings  settings of the job that is going to be built
+     * @param agentSelection strategy for selecting the agent, when the job could be built on any agent
+     * @param parentJobIds   full names of the parent jobs in the pipeline
+     */
+    public static AssignToNode createAction(String jobId, BuildSettings buildSettings,
+            AgentSelection agentSelection, Collection<String> parentJobIds) {
+        final int executorSlots = buildSettings.getExecutorSlots();
+        List<BuildAgent> allPossibleBuildAgents = buildSettings.getAgents();
         if (allPossibleBuildAgents.isEmpty()) {
-            return new AssignAnyNode();
+            // Jenkins load balancer is already preferring the node on which the job was built before
+            return new AssignAnyNode(null, executorSlots);
         }
 
-        Node node = findJenkinsAgent(allPossibleBuildAgents, buildNodes);
-        return new AssignToNode(node);
+        AgentSnapshot snapshot = AgentSnapshot.get();
+        List<String> preferredAgents = preferredAgents(snapshot, agentSelection, jobId, parentJobIds);
+        AgentSnapshot.AgentState agent = findJenkinsAgent(allPossibleBuildAgents, snapshot.getAgents(),
+                                                          preferredAgents, executorSlots);
+        agent.reserveExecutors(executorSlots);
+        return new AssignToNode(agent.node, executorSlots);
+    }
+
+    /**
+     * @return agents ordered by the preference of the chosen selection strategy (most preferred agent first)
+     */
+    private static List<String> preferredAgents(AgentSnapshot snapshot, AgentSelection agentSelection,
+            String jobId, Collection<String> parentJobIds) {
+        switch (agentSelection) {
+            case LAST_BUILT_ON:
+                return snapshot.getLastBuiltOn(jobId).map(Collections::singletonList)
+                               .orElse(Collections.emptyList());
+            case PARENT_LOCALITY:
+                // agents on which most of the parents were built are preferred
+                Map<String, Integer> parentsOnAgent = new HashMap<>();
+                for (String parentId : parentJobIds) {
+                    snapshot.getLastBuiltOn(parentId).ifPresent(agent -> parentsOnAgent.merge(agent, 1, Integer::sum));
+                }
+                List<String> agents = new ArrayList<>(parentsOnAgent.keySet());
+                agents.sort(Comparator.comparing((String agent) -> parentsOnAgent.get(agent)).reversed()
+                                      .thenComparing(agent -> agent));
+                return agents;
+            case LEAST_LOADED:
+            default:
+                return Collections.emptyList();
+        }
     }
 
     /**
@@ -83,9 +132,10 @@ public class AssignToNode extends InvisibleAction implements LabelAssignmentActi
         // when their time comes. Unfortunately this behavior is not documented anywhere
         // and I don't know how it really works. For now we just ignore the nodes that
         // are not currently online, but there may be a better solution.
-        Set<String> onlineComputerNames = JenkinsUtil.getOnlineComputers().stream()
-                                                     .map(JenkinsUtil::getComputerName)
-                                                     .collect(Collectors.toSet());
+        Set<String> onlineComputerNames = AgentSnapshot.get().getAgents().stream()
+                                                       .filter(agent -> agent.online)
+                                                       .map(agent -> agent.name)
+                                                       .collect(Collectors.toSet());
 
         List<ParsedBuildJob> buildJobsWithNoAgents = new ArrayList<>();
         for (ParsedBuildJob job : build.parsedJobs) {
@@ -141,109 +191,111 @@ public class AssignToNode extends InvisibleAction implements LabelAssignmentActi
     }
 
     /**
-     * Find appropriate jenkins agent node, based on the needs of the build job. Right now the job is assigned
-     * to agent with the most free executors.
+     * Find appropriate jenkins agent node, based on the needs of the build job. The job is assigned to the
+     * first preferred agent that has enough free executors (e.g: agent where the job was built before and has
+     * a warm workspace) or to the agent with the most free executors. Heavy jobs (that take more than one
+     * executor slot) are packed to the agent with the fewest free executors that still fit the job, so the
+     * agents with many free executors stay available for other heavy jobs. The agents are selected from the
+     * in memory snapshot of the agent state, so no remote calls are made while the build is running.
      *
-     * @FUTURE: we might want to allow different node assign strategies: - assign to last executor (where the
-     * job was being executed before) - assign to node with the most free executors (spread the load across
-     * cluster)
+     * @param preferredAgents names of the agents ordered by preference, only used when the job can be built on
+     *                        any agent
+     * @param executorSlots   number of executor slots the job occupies
      */
-    public static Node findJenkinsAgent(List<BuildAgent> allPossibleBuildAgents, List<Node> buildNodes) {
+    public static AgentSnapshot.AgentState findJenkinsAgent(List<BuildAgent> allPossibleBuildAgents,
+            Collection<AgentSnapshot.AgentState> agents, List<String> preferredAgents, int executorSlots) {
         if (allPossibleBuildAgents.isEmpty()) {
             throw new IllegalArgumentException("Provided possible list of build agents is empty");
         }
 
         BuildAgent desiredAgent = allPossibleBuildAgents.get(0);
-        // TODO: right now, we are optimizing for the least used node, but we could also prefer
-        // the node on which the project was already built (or node on which the parent of the
-        // project was already built). Check for the lastBuild for builtOn node and prefer that
-        // node?
         if (desiredAgent.isAny()) {
-            // schedule to the computer with the most free executors
-            Node freeNode = null;
-            int maxFreeExecutors = 0;
-            for (Node node : buildNodes) {
-                if (!node.isAcceptingTasks()) {
+            // schedule to the preferred computer or the computer with the most free executors
+            AgentSnapshot.AgentState freeAgent = null;
+            AgentSnapshot.AgentState bestFitAgent = null;
+            AgentSnapshot.AgentState master = null;
+            Map<String, AgentSnapshot.AgentState> availableAgents = new HashMap<>();
+            for (AgentSnapshot.AgentState agent : agents) {
+                if (agent.node instanceof Jenkins) {
+                    master = agent;
+                }
+                if (!agent.online || !agent.acceptingTasks || agent.executors <= 0) {
                     continue;
                 }
 
-                // assign to node with the most free executors
-                Computer buildComputer = node.toComputer();
-                final boolean computerHasNoExecutors = buildComputer == null;
-                if (computerHasNoExecutors) {
+                if (!platformMatches(desiredAgent.agentType, agent.platform)) {
                     continue;
                 }
+                availableAgents.put(agent.name, agent);
+
+                // assign to node with the most free executors (master is preferred
+                // when multiple nodes have the same number of free executors)
+                final int idleExecutors = agent.getIdleExecutors();
+                if (freeAgent == null || idleExecutors > freeAgent.getIdleExecutors()
+                        || (idleExecutors == freeAgent.getIdleExecutors() && agent.node instanceof Jenkins)) {
+                    freeAgent = agent;
+                }
 
-                if (desiredAgent.agentType == BuildAgentType.ANY) {
-                    int idleExecutors = buildComputer.countIdle();
-                    if (idleExecutors >= maxFreeExecutors) {
-                        freeNode = node;
-                        maxFreeExecutors = idleExecutors;
-                    }
-                    continue;
+                // the agent with the fewest free executors that still has enough room for the job
+                if (idleExecutors >= executorSlots
+                        && (bestFitAgent == null || idleExecutors < bestFitAgent.getIdleExecutors())) {
+                    bestFitAgent = agent;
                 }
+            }
 
-                // we want to target specific platform
-                try {
-                    Platform platform = buildComputer.getEnvironment().getPlatform();
-                    if (platform == null) {
-                        // platform for node does not exist, we cannot assign such
-                        // build node to non any agent type that specified a specific
-                        // platform.
-                        continue;
-                    }
-
-                    // computer platform is windows and our agent type is windows,
-                    // assign this node
-                    final boolean platformIsWindows =
-                            platform == Platform.WINDOWS && (desiredAgent.agentType
-                                    == BuildAgentType.WINDOWS);
-                    // TODO: we cannot differentiate between mac or linux computers
-                    // you have to explicitly specify the build agent.
-                    // Might want to open up a feature request on Jenkins
-                    // TODO: decide if we support any:mac feature.
-                    final boolean platformIsUnix =
-                            platform == Platform.UNIX && (desiredAgent.agentType != BuildAgentType.WINDOWS);
-                    if (platformIsWindows || platformIsUnix) {
-                        int idleExecutors = buildComputer.countIdle();
-                        if (idleExecutors >= maxFreeExecutors) {
-                            freeNode = node;
-                            maxFreeExecutors = idleExecutors;
-                        }
-                        continue;
-                    }
-                } catch (Exception e) {
-                    String msg = String.format("Failed to get environment for build computer: %s",
-                                               buildComputer.getName());
-                    System.out.println(msg + "\n" + e);
-                    // we can't do anything about this? Why would we even throw this exception??
-                    continue;
+            for (String preferredAgent : preferredAgents) {
+                AgentSnapshot.AgentState agent = availableAgents.get(preferredAgent);
+                if (agent != null && agent.getIdleExecutors() >= executorSlots) {
+                    // waiting for the busy agent would take longer than building on a cold agent
+                    return agent;
                 }
             }
 
-            // the most appropriate build node was selected
-            if (freeNode == null) {
-                // this should never happen
-                assert !buildNodes.isEmpty() : "Build agents are empty, we have a bug in code";
-                final Node masterNode = buildNodes.get(buildNodes.size() - 1);
-                return masterNode;
+            final boolean heavyJob = executorSlots > 1;
+            if (heavyJob && bestFitAgent != null) {
+                return bestFitAgent;
             }
 
-            return freeNode;
+            // the most appropriate build node was selected (if none of the agents has
+            // enough room for the heavy job, it waits for the agent with the most free executors)
+            if (freeAgent == null) {
+                // this should never happen
+                assert master != null : "Master node is missing in the agent snapshot, we have a bug in code";
+                return master;
+            }
+            return freeAgent;
         }
 
         // the user wants a specific build agent
-        for (Node node : buildNodes) {
-            if (node.getDisplayName().equals(desiredAgent.agentName)) {
-                return node;
+        for (AgentSnapshot.AgentState agent : agents) {
+            if (agent.name.equals(desiredAgent.agentName)) {
+                return agent;
             }
-            throw new IllegalStateException(
-                    String.format("Desired agent %s does not exist in CI process", desiredAgent.agentName));
+        }
+        throw new IllegalStateException(
+                String.format("Desired agent %s does not exist in CI process", desiredAgent.agentName));
+    }
+
+    /**
+     * @param platform platform of the agent or null if the platform is not known
+     */
+    private static boolean platformMatches(BuildAgentType agentType, Platform platform) {
+        if (agentType == BuildAgentType.ANY) {
+            return true;
+        }
+        if (platform == null) {
+            // platform for node does not exist, we cannot assign such build node to
+            // non any agent type that specified a specific platform.
+            return false;
         }
 
-        // this should never happen, but if it does, return master build node
-        Node masterNode = JenkinsUtil.getJenkins();
-        return masterNode;
+        // TODO: we cannot differentiate between mac or linux computers
+        // you have to explicitly specify the build agent.
+        // Might want to open up a feature request on Jenkins
+        // TODO: decide if we support any:mac feature.
+        final boolean platformIsWindows = platform == Platform.WINDOWS && agentType == BuildAgentType.WINDOWS;
+        final boolean platformIsUnix = platform == Platform.UNIX && agentType != BuildAgentType.WINDOWS;
+        return platformIsWindows || platformIsUnix;
     }
 
     public static class AssignAnyNode extends AssignToNode {
@@ -255,6 +307,10 @@ public class AssignToNode extends InvisibleAction implements LabelAssignmentActi
             super(node);
         }
 
+        public AssignAnyNode(Node node, int executorSlots) {
+            super(node, executorSlots);
+        }
+
         @Override
         public Label getAssignedLabel(@NonNull SubTask task) {
             return null;
@@ -0,0 +1,71 @@
+package eu.royalsloth.depbuilder.jenkins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import eu.royalsloth.depbuilder.jenkins.actions.BuildAddedCause;
+import hudson.Extension;
+import hudson.model.Cause;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.QueueListener;
+
+/**
+ * Notifies the DepBuilder build scheduler when one of the jobs that it has scheduled is finished. Without
+ * these listeners the scheduler would have to keep polling the scheduled builds in order to find out
+ * when it can schedule the next job. The start of the job is also reported, as the max build time of
+ * the job is measured from that point on (see {@link BuildWatchdog}).
+ */
+public class BuildFinishedListener {
+
+    private BuildFinishedListener() {
+    }
+
+    /**
+     * Called when a build has left the queue and started executing.
+     */
+    @Extension
+    public static class RunStarted extends RunListener<Run<?, ?>> {
+        @Override
+        public void onStarted(Run<?, ?> run, TaskListener listener) {
+            BuildAddedCause cause = run.getCause(BuildAddedCause.class);
+            if (cause != null) {
+                cause.buildStarted();
+            }
+        }
+    }
+
+    /**
+     * Called when a build has finished building. The build result is known at this point.
+     */
+    @Extension
+    public static class RunCompleted extends RunListener<Run<?, ?>> {
+        @Override
+        public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+            BuildAddedCause cause = run.getCause(BuildAddedCause.class);
+            if (cause != null) {
+                cause.buildFinished();
+            }
+        }
+    }
+
+    /**
+     * Called when the item has left the queue. We only care about the items that were cancelled while
+     * waiting in the queue, as they never turn into a build.
+     */
+    @Extension
+    public static class QueueItemCancelled extends QueueListener {
+        @Override
+        public void onLeft(Queue.LeftItem item) {
+            if (!item.isCancelled()) {
+                return;
+            }
+
+            for (Cause cause : item.getCauses()) {
+                if (cause instanceof BuildAddedCause) {
+                    ((BuildAddedCause) cause).buildFinished();
+                }
+            }
+        }
+    }
+}
@@ -24,4 +24,24 @@ public class BuildFuture {
     public Optional<Run<?, ?>> getScheduledBuild() {
         return cause.getBuild();
     }
+
+    /**
+     * @return true if the scheduled build has finished building or was cancelled. The build listeners
+     * might notify us about the finished build slightly before the future is resolved. Once the build has
+     * started, only the listeners are taken into account, as the future of the cancelled build might be
+     * resolved while the build executor is still stopping.
+     */
+    public boolean isDone() {
+        if (cause.isBuildFinished()) {
+            return true;
+        }
+        return !getScheduledBuild().isPresent() && future.isDone();
+    }
+
+    /**
+     * @return true if the scheduled build has exceeded its max build time and was terminated
+     */
+    public boolean isTimedOut() {
+        return cause.isBuildTimedOut();
+    }
 }
@@ -0,0 +1,132 @@
+package eu.royalsloth.depbuilder.jenkins;
+
+import eu.royalsloth.depbuilder.jenkins.actions.BuildAddedCause;
+import hudson.model.Executor;
+import hudson.model.Result;
+import hudson.model.Run;
+import jenkins.util.Timer;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watchdog that terminates the scheduled builds which exceed their max build time. The max build time is
+ * measured from the moment the build has started executing (the time spent waiting in the queue is not
+ * counted), so the jobs that start late get the same amount of time as the jobs that start right away.
+ * <p>
+ * Every watched build gets its own deadline timer on the shared Jenkins {@link Timer}. When the timer fires,
+ * the build executor is interrupted immediately and the scheduler is notified, so a hung job releases its
+ * executor without waiting for the scheduler to check on it. The deadlines are computed with the same clock
+ * the scheduler is using.
+ */
+public class BuildWatchdog {
+
+    private final ScheduledExecutorService timer;
+    private final Clock clock;
+    private final Map<BuildAddedCause, ScheduledFuture<?>> deadlines = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    public BuildWatchdog(Clock clock) {
+        this(Timer.get(), clock);
+    }
+
+    /**
+     * @param timer executor on which the deadline timers are scheduled
+     * @param clock clock that is used for computing the build deadlines
+     */
+    public BuildWatchdog(ScheduledExecutorService timer, Clock clock) {
+        this.timer = timer;
+        this.clock = clock;
+    }
+
+    /**
+     * Start watching the build with the given cause. Should be called before the build is scheduled, so the
+     * start of the build is not missed.
+     *
+     * @param cause        cause of the build that is about to be scheduled
+     * @param maxBuildTime max time the build may run once it has started executing
+     */
+    public void watch(BuildAddedCause cause, Duration maxBuildTime) {
+        cause.setOnBuildStarted(() -> startDeadline(cause, maxBuildTime));
+        // the deadline timer of the finished build is no longer needed
+        cause.addOnBuildFinished(() -> cancelDeadline(cause));
+        if (cause.getBuildStartTime().isPresent()) {
+            // the build has already started before we registered the callback
+            startDeadline(cause, maxBuildTime);
+        }
+    }
+
+    private void startDeadline(BuildAddedCause cause, Duration maxBuildTime) {
+        if (closed) {
+            return;
+        }
+
+        // the build start callback and the watch call might both try to start the deadline,
+        // only one deadline timer should be started per build
+        deadlines.computeIfAbsent(cause, c -> {
+            Instant now = clock.instant();
+            Instant deadline = c.getBuildStartTime().orElse(now).plus(maxBuildTime);
+            long delay = Math.max(0, deadline.toEpochMilli() - now.toEpochMilli());
+            return timer.schedule(() -> buildTimedOut(c), delay, TimeUnit.MILLISECONDS);
+        });
+
+        if (cause.isBuildFinished()) {
+            // the build has finished while the deadline was started
+            cancelDeadline(cause);
+        }
+    }
+
+    private void cancelDeadline(BuildAddedCause cause) {
+        ScheduledFuture<?> deadline = deadlines.remove(cause);
+        if (deadline != null) {
+            deadline.cancel(false);
+        }
+    }
+
+    private void buildTimedOut(BuildAddedCause cause) {
+        deadlines.remove(cause);
+        if (closed || cause.isBuildFinished()) {
+            return;
+        }
+
+        cause.buildTimedOut();
+        Optional<Run<?, ?>> build = cause.getBuild();
+        if (!build.isPresent()) {
+            return;
+        }
+
+        Run<?, ?> run = build.get();
+        Executor executor = run.getExecutor();
+        if (executor == null) {
+            // pipeline jobs are executed on the one off executors
+            executor = run.getOneOffExecutor();
+        }
+        if (executor == null) {
+            LOGGER.log(Level.WARNING, String.format("Build %s has exceeded its max build time, but its executor was not found", run.getFullDisplayName()));
+            return;
+        }
+        executor.interrupt(Result.ABORTED);
+    }
+
+    /**
+     * Cancel all the deadline timers. Should be called once the build scheduling has finished.
+     */
+    public void close() {
+        this.closed = true;
+        for (ScheduledFuture<?> timeout : deadlines.values()) {
+            timeout.cancel(false);
+        }
+        deadlines.clear();
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BuildWatchdog.class.getName());
+}
@@ -11,12 +11,15 @@ import hudson.Functions;
 import hudson.model.Queue;
 import hudson.model.*;
 import hudson.scm.SCM;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
 import hudson.tasks.BuildStep;
 import hudson.tasks.BuildWrapper;
 import hudson.tasks.Builder;
 import jenkins.model.Jenkins;
 import jenkins.model.ParameterizedJobMixIn;
 import net.sf.json.JSONObject;
+import org.acegisecurity.Authentication;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -24,12 +27,17 @@ import org.kohsuke.stapler.export.Exported;
 import org.kohsuke.stapler.verb.POST;
 
 import javax.annotation.CheckForNull;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -48,6 +56,19 @@ public class DslBuild extends Build<DslProject, DslBuild> {
      */
     private transient volatile BuildExecution buildExecution;
 
+    /**
+     * Structure of the build graph (jobs and their connections), which doesn't change once the pipeline
+     * of this build was persisted. Only the job build status has to be merged into it on every request.
+     */
+    private transient volatile List<ConfigGraphNode> graphStructure;
+
+    /**
+     * Build graph and its json representation, frozen once the build has finished (nothing changes
+     * anymore) and served from memory. The history page is rendering many graphs at once.
+     */
+    private transient volatile ProjectGraph finishedGraph;
+    private transient volatile JSONObject finishedGraphJson;
+
     // BuildPlugin constructors are used via reflection deep within the Jenkins
     public DslBuild(DslProject project) throws IOException {
         // for each DslBuild. the same DslProject instance is being used.
@@ -177,8 +198,17 @@ public class DslBuild extends Build<DslProject, DslBuild> {
      */
     @Exported
     public JSONObject getDslBuild() {
+        JSONObject json = this.finishedGraphJson;
+        if (json != null) {
+            return json;
+        }
+
         ProjectGraph graph = getBuildGraph();
-        return JSONObject.fromObject(graph);
+        json = JSONObject.fromObject(graph);
+        if (graph == this.finishedGraph) {
+            this.finishedGraphJson = json;
+        }
+        return json;
     }
 
     /**
@@ -252,11 +282,8 @@ public class DslBuild extends Build<DslProject, DslBuild> {
 
         // builds that are finished,error or aborted are in this struct
         // builds that are in progress or haven't started are not in this struct
-        List<Run<?, ?>> pastBuilds = action.getBuildInfo();
-        List<JobBuildStatus> outputInfo = new ArrayList<>(pastBuilds.size());
-        for (Run<?, ?> build : pastBuilds) {
-            JobBuildStatus info = JobBuildStatus.from(build);
-            outputInfo.add(info);
+        List<JobBuildStatus> outputInfo = action.getBuildStatus();
+        for (JobBuildStatus info : outputInfo) {
             buildJobNames.add(info.projectName);
         }
 
@@ -264,9 +291,9 @@ public class DslBuild extends Build<DslProject, DslBuild> {
         // added to the list here.
         final boolean theBuildHasFinished = getResult() != null;
         if (this.buildExecution != null) {
-            Optional<Scheduler> scheduler = this.buildExecution.getScheduler();
-            if (scheduler.isPresent()) {
-                List<BuildFuture> scheduledBuilds = scheduler.get().getQueuedBuilds();
+            Optional<ScheduleSnapshot> snapshot = this.buildExecution.getScheduleSnapshot();
+            if (snapshot.isPresent()) {
+                List<BuildFuture> scheduledBuilds = snapshot.get().queuedBuilds;
                 for (BuildFuture buildFuture : scheduledBuilds) {
                     Optional<Run<?, ?>> build = buildFuture.getScheduledBuild();
                     if (!build.isPresent()) {
@@ -341,13 +368,109 @@ public class DslBuild extends Build<DslProject, DslBuild> {
         info.finished = isFinished();
         info.buildStatus = convertBuildResult(getResult());
         info.duration = JenkinsUtil.getBuildDurationString(this);
+        if (!theBuildHasFinished) {
+            addBuildPrediction(info);
+        }
         return info;
     }
 
     /**
-     * Get the structure of the build pipeline (how are jobs connected).
+     * Add the predicted start and finish times of the jobs that are still building or waiting to be built.
+     * The prediction is made from the latest scheduler snapshot (see {@link ScheduleSnapshot}). Jobs that are
+     * waiting to be built are added to the job status as NONE.
+     */
+    private void addBuildPrediction(ProjectBuildStatus info) {
+        if (this.buildExecution == null) {
+            return;
+        }
+        Optional<ScheduleSnapshot> snapshot = this.buildExecution.getScheduleSnapshot();
+        if (!snapshot.isPresent()) {
+            return;
+        }
+
+        // the prediction was made when the snapshot was taken, the remaining time
+        // of the jobs is measured from now on
+        final SchedulePrediction prediction = snapshot.get().prediction;
+        final Instant now = getClock().instant();
+
+        Map<String, JobBuildStatus> statusByName = new HashMap<>(info.jobBuildStatus.size());
+        for (JobBuildStatus status : info.jobBuildStatus) {
+            statusByName.put(status.projectName, status);
+        }
+        for (SchedulePrediction.PredictedBuild build : prediction.getBuilds()) {
+            String projectName = build.job.getId();
+            JobBuildStatus status = statusByName.get(projectName);
+            if (status == null) {
+                // job is waiting for its parents to finish
+                status = new JobBuildStatus();
+                status.projectName = projectName;
+                status.buildStatus = BuildStatus.NONE.toString();
+                info.jobBuildStatus.add(status);
+            } else if (!BuildStatus.IN_PROGRESS.toString().equals(status.buildStatus)) {
+                // the build has finished in the meantime
+                continue;
+            }
+            status.predictedStart = build.start.toEpochMilli();
+            status.predictedFinish = build.finish.toEpochMilli();
+            status.remainingTime = durationToString(Math.max(0, Duration.between(now, build.finish).toMillis()));
+        }
+
+        if (prediction.isComplete()) {
+            info.predictedFinish = prediction.getFinishTime().toEpochMilli();
+            info.remainingTime = durationToString(Math.max(0, Duration.between(now, prediction.getFinishTime()).toMillis()));
+        }
+    }
+
+    /**
+     * State of the scheduler that is served to the build status endpoint. The snapshot is taken on the
+     * orchestration loop after every step (when the scheduler state might have changed), so polling the
+     * build status doesn't have to predict the schedule or lock the scheduler on every request.
+     */
+    private static class ScheduleSnapshot {
+        private final List<BuildFuture> queuedBuilds;
+        private final SchedulePrediction prediction;
+
+        private ScheduleSnapshot(List<BuildFuture> queuedBuilds, SchedulePrediction prediction) {
+            this.queuedBuilds = queuedBuilds;
+            this.prediction = prediction;
+        }
+    }
+
+    /**
+     * Get the structure of the build pipeline (how are jobs connected) with the build status of the jobs.
+     * Once the build has finished, the same graph instance is returned on every call, so it should not be
+     * modified.
      */
     public ProjectGraph getBuildGraph() {
+        ProjectGraph graph = this.finishedGraph;
+        if (graph != null) {
+            return graph;
+        }
+
+        // checked before collecting the build status, otherwise we could freeze the
+        // status of the build that has finished while we were collecting it
+        final boolean buildHasFinished = isFinished();
+        graph = createBuildGraph();
+        if (buildHasFinished) {
+            this.finishedGraph = graph;
+        }
+        return graph;
+    }
+
+    /**
+     * @return structure of the build graph, parsed only once per build
+     */
+    private List<ConfigGraphNode> getGraphStructure(String pipeline) throws ParseException {
+        List<ConfigGraphNode> structure = this.graphStructure;
+        if (structure == null) {
+            List<ParsedBuildJob> parsedNodes = PipelineCache.shared().parseNoVerify(pipeline).getParsedBuild().parsedJobs;
+            structure = Collections.unmodifiableList(DslProject.createSerializedJobs(parsedNodes));
+            this.graphStructure = structure;
+        }
+        return structure;
+    }
+
+    private ProjectGraph createBuildGraph() {
         PersistBuildInfoAction action = getAction(PersistBuildInfoAction.class);
         final boolean actionDoesNotExist = action == null;
         if (actionDoesNotExist) {
@@ -379,8 +502,7 @@ public class DslBuild extends Build<DslProject, DslBuild> {
                 pipeline = "";
             }
 
-            List<ParsedBuildJob> parsedNodes = DslParser.parseBuildNoVerify(pipeline).parsedJobs;
-            List<ConfigGraphNode> graphNodes = DslProject.createSerializedJobs(parsedNodes);
+            List<ConfigGraphNode> graphNodes = getGraphStructure(pipeline);
 
             ProjectBuildStatus projectBuildStatus = getBuildStatus();
             Map<String, JobBuildStatus> jobBuildInfo = new HashMap<>(projectBuildStatus.jobBuildStatus.size());
@@ -397,7 +519,14 @@ public class DslBuild extends Build<DslProject, DslBuild> {
                 job.children = graphNode.children;
 
                 JobBuildStatus buildStatus = jobBuildInfo.get(job.projectName);
-                final boolean buildDoesNotExist = buildStatus == null;
+                if (buildStatus != null) {
+                    job.predictedStart = buildStatus.predictedStart;
+                    job.predictedFinish = buildStatus.predictedFinish;
+                    job.remainingTime = buildStatus.remainingTime;
+                }
+
+                // jobs that are waiting to be built only have the predicted build times
+                final boolean buildDoesNotExist = buildStatus == null || buildStatus.buildNumber < 0;
                 if (buildDoesNotExist) {
                     // if the job pipeline was aborted (or the pipeline is still in progress)
                     // some builds will be missing (it's a normal behavior)
@@ -425,6 +554,8 @@ public class DslBuild extends Build<DslProject, DslBuild> {
             graph.duration = projectBuildStatus.duration;
             graph.status = projectBuildStatus.buildStatus;
             graph.finished = isFinished();
+            graph.predictedFinish = projectBuildStatus.predictedFinish;
+            graph.remainingTime = projectBuildStatus.remainingTime;
             return graph;
         } catch (ParseException e) {
             // there was a syntax error in the pipeline - no build happened
@@ -445,42 +576,55 @@ public class DslBuild extends Build<DslProject, DslBuild> {
      *
      * @param projectName - name of the project for which the pipeline is verified
      * @param pipeline    - pipeline DSL that will be validated
-     * @return parsed pipeline into build nodes
+     * @return parsed pipeline into build nodes (shared with {@link PipelineCache}, should not be modified)
      * @throws ParseException in case of any parse error or setting that does not exist
      */
     public static ParsedBuild verifyPipeline(String projectName,
             String pipeline) throws ParseException, BuildCycleException {
-        Set<String> agentNames = JenkinsUtil.getAllAgents()
-                                            .stream()
-                                            .map(agent -> JenkinsUtil.getComputerName(agent))
-                                            .collect(Collectors.toSet());
+        return verifyCachedPipeline(projectName, pipeline).getParsedBuild();
+    }
+
+    /**
+     * Same as {@link #verifyPipeline(String, String)}, but returns the cached pipeline with its build layers,
+     * so the pipeline doesn't have to be sorted again before the build.
+     */
+    public static PipelineCache.CachedPipeline verifyCachedPipeline(String projectName,
+            String pipeline) throws ParseException, BuildCycleException {
+        JenkinsIndex index = JenkinsIndex.get();
+        // known agents are modified by the verifier, so we have to copy them
+        Set<String> agentNames = new HashSet<>(index.getAgentNames());
 
         // The user might not know how the plugin works, but they shouldn't be starting the build with
         // the DslProject as that may cause cyclic build problems (DslBuild starts DslBuild
         // which triggers another DslBuild until stack overflow happens). To avoid this
         // problem we filter out the job names of this project.
-        Set<String> jobsOnJenkins = JenkinsUtil.getBuildJobs();
-        Set<String> allowedJobs = jobsOnJenkins.stream().filter(job -> !projectName.equals(job))
-                                               .collect(Collectors.toSet());
+        Set<String> allowedJobs = index.getJobNamesExcept(projectName);
 
         SettingsVerifier settingsVerifier = new SettingsVerifier(agentNames, allowedJobs);
-        ParsedBuild build = DslParser.parseBuild(pipeline, settingsVerifier);
-        List<ParsedBuildJob> buildJobs = build.parsedJobs;
-        BuildLayers layers = BuildLayers.topologicalSort(buildJobs);
+        PipelineCache.CachedPipeline build = PipelineCache.shared().parse(pipeline, settingsVerifier);
+        BuildLayers layers = build.getBuildLayers();
         if (layers.hasCycle()) {
+            List<List<String>> cycles = layers.getBuildCycles();
+            if (cycles.size() == 1) {
+                throw new BuildCycleException(
+                        "Provided graph has a cycle: " + String.join(" ➞ ", layers.getBuildCycle()));
+            }
+            String allCycles = cycles.stream()
+                                     .map(cycle -> String.join(" ➞ ", cycle))
+                                     .collect(Collectors.joining(", "));
             throw new BuildCycleException(
-                    "Provided graph has a cycle: " + String.join(" ➞ ", layers.getBuildCycle()));
+                    String.format("Provided graph has %d cycles: %s", cycles.size(), allCycles));
         }
 
         return build;
     }
 
     public static Scheduler schedulerFactory(PrintStream logger, BuildLayers layers,
-            SchedulerSettings settings, Instant startTime, List<String> partialBuilds) {
+            SchedulerSettings settings, Clock clock, List<String> partialBuilds) {
         logger.println();
         if (PluginVersion.isCommunity()) {
             logger.println("Building with DepBuilder Community plugin, v: " + PluginVersion.version);
-            return new Scheduler(layers, settings, startTime, partialBuilds);
+            return new Scheduler(layers, settings, clock, partialBuilds);
         } else {
             // @PRO: scheduler with more features
             //
@@ -489,10 +633,17 @@ public class DslBuild extends Build<DslProject, DslBuild> {
             logger.println("You are using the Community DepBuilder plugin with a valid Pro version.\n"
                                    + "If you would like to use Pro features, please download the Pro"
                                    + "plugin version.");
-            return new Scheduler(layers, settings, startTime, partialBuilds);
+            return new Scheduler(layers, settings, clock, partialBuilds);
         }
     }
 
+    /**
+     * @return clock that is used for measuring the build duration and by the build scheduler
+     */
+    protected Clock getClock() {
+        return Clock.systemDefaultZone();
+    }
+
     @Override
     public void run() {
         // by default the run method calls new BuildExecution() within the extended BuildClass
@@ -508,6 +659,8 @@ public class DslBuild extends Build<DslProject, DslBuild> {
 
         private final Pattern PROHIBITED_DOUBLE_DOT = Pattern.compile(".*[\\\\/]\\.\\.[\\\\/].*");
         private volatile Scheduler scheduler;
+        private volatile ScheduleSnapshot scheduleSnapshot;
+        private final BuildWatchdog watchdog = new BuildWatchdog(getClock());
 
         /**
          * Some plugins might depend on this instance castable to Runner, so we need to use deprecated class
@@ -520,6 +673,20 @@ public class DslBuild extends Build<DslProject, DslBuild> {
             return Optional.ofNullable(this.scheduler);
         }
 
+        private Optional<ScheduleSnapshot> getScheduleSnapshot() {
+            return Optional.ofNullable(this.scheduleSnapshot);
+        }
+
+        /**
+         * Take the snapshot of the scheduler state for the build status endpoint. Called on the orchestration
+         * loop whenever the scheduler state might have changed.
+         */
+        private void updateScheduleSnapshot() {
+            Function<BuildJob, Duration> expectedDuration = getProject().getDurationHistory().durationPredictor();
+            SchedulePrediction prediction = scheduler.predictSchedule(expectedDuration);
+            this.scheduleSnapshot = new ScheduleSnapshot(scheduler.getQueuedBuilds(), prediction);
+        }
+
         @Override
         protected Result doRun(@NonNull BuildListener listener) throws Exception {
             final Node masterNode = JenkinsUtil.getJenkins();
@@ -530,9 +697,12 @@ public class DslBuild extends Build<DslProject, DslBuild> {
                                                               getProject().getName()));
             }
 
+            // the project is a flyweight task and is normally running on a one-off executor
+            // that doesn't take any of the regular executors (see DslProject)
+            final boolean runsOnOneOffExecutor = Executor.currentExecutor() instanceof OneOffExecutor;
             final boolean projectIsBuiltOnMaster = projectBuildAgent.getSelfLabel().equals(
                     masterNode.getSelfLabel());
-            if (projectIsBuiltOnMaster) {
+            if (projectIsBuiltOnMaster && !runsOnOneOffExecutor) {
                 // this avoids the problem of infinite build. If the user has only one master
                 // node executor and the project is running on such executor the child projects
                 // will never be built and we have to inform the user of this problem
@@ -557,7 +727,8 @@ public class DslBuild extends Build<DslProject, DslBuild> {
                 partialBuilds = partialBuildAction.graphJobsToBuild;
             }
             final DslProject project = getProject();
-            final Instant buildStart = Instant.now();
+            final Clock clock = getClock();
+            final Instant buildStart = clock.instant();
 
             // @FUTURE: we don't want to build if there are any problems with the
             // build script, however the question is how to handle
@@ -582,134 +753,26 @@ public class DslBuild extends Build<DslProject, DslBuild> {
             // this verification test, that specific build would simply wait until
             // the online agent appears. If it never appears then the build would
             // be terminated by our scheduler.
-            ParsedBuild verifiedBuild = verifyPipeline(project.getDisplayName(), pipeline);
+            PipelineCache.CachedPipeline cachedPipeline = verifyCachedPipeline(project.getDisplayName(), pipeline);
+            ParsedBuild verifiedBuild = cachedPipeline.getParsedBuild();
             AssignToNode.allJobsShouldHaveOnlineAgent(verifiedBuild);
 
-            BuildLayers layers = BuildLayers.topologicalSort(verifiedBuild.parsedJobs);
-            this.scheduler = schedulerFactory(listener.getLogger(), layers, verifiedBuild.schedulerSettings, buildStart, partialBuilds);
-            final Duration maxProjectBuildDuration = verifiedBuild.schedulerSettings.maxDuration;
-
-            // main scheduler loop that keeps checking if the
-            while (scheduler.hasNext()) {
-                ScheduledNode node = scheduler.getNext();
-                LOGGER.log(Level.FINE, String.format("Building projects, scheduler state: %s", node.getStatus()));
-                if (node.getStatus() == ScheduledNode.ScheduledNodeStatus.FINISHED) {
-                    // all dependencies were built
-                    break;
-                }
-
-                if (node.getStatus() == ScheduledNode.ScheduledNodeStatus.ABORT) {
-                    // It's a bit confusing that the scheduler is returning abort
-                    // but in this case it means terminate the build due to errors
-                    // in the build.
-                    //
-                    // The build could either stop due to build errors or
-                    // timing out (aborted build). We have to distinguish between the
-                    // two in order to display the right light/color in the UI.
-                    listener.getLogger().println();
-                    if (scheduler.wasAborted()) {
-                        return Result.ABORTED;
-                    }
-
-                    if (scheduler.hasBuildErrors()) {
-                        return Result.FAILURE;
-                    }
-
-                    // we don't know exactly what went wrong, (maybe it's a programming bug)
-                    // so we are returning aborted state
-                    return Result.ABORTED;
-                }
-
-                if (node.getStatus() == ScheduledNode.ScheduledNodeStatus.WAIT) {
-                    final boolean buildDurationIsSet = !maxProjectBuildDuration.isNegative();
-                    if (buildDurationIsSet) {
-                        Duration buildDuration = Duration.between(buildStart, Instant.now());
-                        final boolean buildDurationExceeded =
-                                maxProjectBuildDuration.compareTo(buildDuration) < 0;
-                        if (buildDurationExceeded) {
-                            listener.getLogger().println();
-                            listener.getLogger()
-                                    .println(String.format("Max build duration %s exceeded, terminating build", maxProjectBuildDuration));
-                            return Result.ABORTED;
-                        }
-                    }
-
-                    // when we have no other projects to schedule due to waiting for previous
-                    // project to build, we try to remove the finished builds in order to be able
-                    // to schedule new nodes
-                    boolean buildsEjected = scheduler.ejectFinishedBuilds(listener.getLogger(), persistBuildInfo);
-                    if (buildsEjected) {
-                        // at least one build was removed, we can try to schedule a new
-                        // build right away (without waiting for 1 second)
-                        continue;
-                    }
-
-                    // no builds were ejected, wait for a while and try again
-                    try {
-                        Thread.sleep(1_000);
-                    } catch (InterruptedException e) {
-                        // The user has canceled the build via the UI while this thread
-                        // was sleeping. If any build has finished in the meantime, eject it.
-                        // All other builds should be terminated and their status persisted.
-                        scheduler.ejectFinishedBuilds(listener.getLogger(), persistBuildInfo);
-                        for (BuildFuture future : scheduler.getQueuedBuilds()) {
-                            Optional<Run<?, ?>> run = future.getScheduledBuild();
-                            future.future.cancel(true);
-                            if (run.isPresent()) {
-                                persistBuildInfo.addBuild(run.get());
-                            } else {
-                                persistBuildInfo.addCancelledBuild(future.buildJob.getId());
-                            }
-                        }
-
-                        listener.getLogger().println();
-                        return Result.ABORTED;
-                    }
-
-                    // after sleep, build was not interrupted, continue with the build
-                    continue;
-                }
-
-                // if this point is reached, we have a new build to schedule
-                BuildJob buildJob = node.getBuildJob();
-                final String buildId = buildJob.getId();
-
-                // assign node to a specific build agent as defined per settings block.
-                // Build agents might be missing, in such case it's irrelevant on which
-                // node the build will be scheduled and we can use the default jenkins behavior
-                List<BuildAgent> buildAgents = buildJob.getBuildSettings().getAgents();
-                AssignToNode assignToNodeAction = AssignToNode.createAction(buildAgents);
-
-                // if the job no longer exists, this will throw an exception. The only reason why
-                // that might happen in the middle of the build is if somebody deleted the job
-                // while the build is running. Since we can't predict how to handle such case,
-                // it's better to just throw an exception and fail the build right away.
-                final Job<?, ?> jenkinsJob = JenkinsUtil.getJob(getProject(), buildId);
-                final Cause cause = new Cause.UpstreamCause((Run) getBuild());
-                int quietPeriod = ((ParameterizedJobMixIn.ParameterizedJob) jenkinsJob).getQuietPeriod();
-                // instead of AbstractProject.resolveForCli(), a ParameterizedJobMixIn is used for scheduling the
-                // build, as otherwise we cannot run "pipeline" jobs through our plugin as pipeline job does
-                // not extend the AbstractProject class.
-                final BuildAddedCause buildAddedCause = new BuildAddedCause();
-                final CauseAction causeAction = new CauseAction(cause, buildAddedCause);
-                final Queue.Item item = ParameterizedJobMixIn.scheduleBuild2(jenkinsJob, quietPeriod,
-                                                                             causeAction, assignToNodeAction);
-
-                final boolean queueRefusedTheItem = item == null;
-                if (queueRefusedTheItem) {
-                    // job was refused for scheduling for whatever reason, see scheduleBuild2 documentation
-                    scheduler.errorBuild(buildJob);
-                    LOGGER.log(Level.INFO, String.format("Project %s: REFUSED", buildId));
-                    continue;
-                }
-
-                // the jenkins api does not allow to register callback when the job is finished building,
-                // so we have to do this manually. The necessary parts are put into the queue, which
-                // is being iterated and finished jobs ejected every time the scheduler determines it can't
-                // scheduler new jobs.
-                BuildFuture buildInFuture = new BuildFuture(buildJob, item.getFuture(), buildAddedCause);
-                scheduler.addQueuedBuild(buildInFuture);
+            // build layers with fresh build jobs, the pipeline was already sorted when it was verified
+            BuildLayers layers = cachedPipeline.createBuildLayers();
+            this.scheduler = schedulerFactory(listener.getLogger(), layers, verifiedBuild.schedulerSettings, clock, partialBuilds);
+            // critical path is calculated from the durations of the previous builds (if there are any)
+            scheduler.setCostEstimator(project.getDurationHistory().durationEstimator());
+
+            // the scheduling decisions are made on the shared orchestration loop, this thread is
+            // only putting the jobs into the queue and writing the build log until all the jobs
+            // are built (or the user aborts the build)
+            PipelineOrchestration orchestration = new PipelineOrchestration(listener, persistBuildInfo, layers,
+                                                                             verifiedBuild, buildStart, clock);
+            Result schedulingResult = orchestration.run();
+            if (schedulingResult.isWorseThan(Result.SUCCESS)) {
+                return schedulingResult;
             }
+
             // add an empty line at the end of the report
             listener.getLogger().println();
 
@@ -783,6 +846,280 @@ public class DslBuild extends Build<DslProject, DslBuild> {
             return r;
         }
 
+        /**
+         * Scheduling state of one pipeline build that is stepped on the shared {@link OrchestrationLoop}.
+         * Every step hands out the jobs that are ready to build, until the scheduler has to wait for the
+         * running jobs to finish. The step only makes the scheduling decisions, the jobs are put into the
+         * Jenkins queue and the build log is written by the build thread.
+         */
+        private class PipelineOrchestration extends OrchestrationLoop.Orchestration {
+            private final BuildListener listener;
+            private final PersistBuildInfoAction persistBuildInfo;
+            private final BuildLayers layers;
+            private final ParsedBuild verifiedBuild;
+            private final Instant buildStart;
+            private final Clock clock;
+            private final Duration maxProjectBuildDuration;
+            /**
+             * Steps are running on the loop thread, but they should have the permissions of the build
+             */
+            private final Authentication authentication;
+            /**
+             * Build log messages of the step, they are written to the build log by the build thread
+             */
+            private final ByteArrayOutputStream logBuffer = new ByteArrayOutputStream();
+            private final PrintStream log;
+            /**
+             * Result of the pipeline build that is being terminated, the result is reported once all the
+             * terminated builds have stopped. Null while the build is not being terminated.
+             */
+            private Result terminationResult;
+
+            private PipelineOrchestration(BuildListener listener, PersistBuildInfoAction persistBuildInfo,
+                    BuildLayers layers, ParsedBuild verifiedBuild, Instant buildStart,
+                    Clock clock) throws UnsupportedEncodingException {
+                super(OrchestrationLoop.shared());
+                this.listener = listener;
+                this.persistBuildInfo = persistBuildInfo;
+                this.layers = layers;
+                this.verifiedBuild = verifiedBuild;
+                this.buildStart = buildStart;
+                this.clock = clock;
+                this.maxProjectBuildDuration = verifiedBuild.schedulerSettings.maxDuration;
+                this.authentication = Jenkins.getAuthentication();
+                this.log = new PrintStream(logBuffer, true, StandardCharsets.UTF_8.name());
+            }
+
+            @Override
+            protected Optional<Result> step() throws Exception {
+                try (ACLContext ignored = ACL.as(authentication)) {
+                    return scheduleReadyJobs();
+                } finally {
+                    flushLog();
+                    updateScheduleSnapshot();
+                }
+            }
+
+            private void flushLog() {
+                if (logBuffer.size() == 0) {
+                    return;
+                }
+                final String text = new String(logBuffer.toByteArray(), StandardCharsets.UTF_8);
+                logBuffer.reset();
+                runOnBuildThread(() -> listener.getLogger().print(text));
+            }
+
+            private Optional<Result> scheduleReadyJobs() throws Exception {
+                if (terminationResult != null) {
+                    return awaitTerminatedBuilds();
+                }
+
+                while (scheduler.hasNext()) {
+                    ScheduledNode node = scheduler.getNext();
+                    LOGGER.log(Level.FINE, String.format("Building projects, scheduler state: %s", node.getStatus()));
+                    if (node.getStatus() == ScheduledNode.ScheduledNodeStatus.FINISHED) {
+                        // all dependencies were built
+                        return Optional.of(Result.SUCCESS);
+                    }
+
+                    if (node.getStatus() == ScheduledNode.ScheduledNodeStatus.ABORT) {
+                        // It's a bit confusing that the scheduler is returning abort
+                        // but in this case it means terminate the build due to errors
+                        // in the build. Aborted (or timed out) builds are handled once
+                        // the scheduler stops returning the nodes (see below).
+                        log.println();
+                        if (scheduler.hasBuildErrors()) {
+                            return Optional.of(Result.FAILURE);
+                        }
+
+                        // we don't know exactly what went wrong, (maybe it's a programming bug)
+                        // so we are returning aborted state
+                        return Optional.of(Result.ABORTED);
+                    }
+
+                    if (node.getStatus() == ScheduledNode.ScheduledNodeStatus.WAIT) {
+                        final boolean buildDurationIsSet = !maxProjectBuildDuration.isNegative();
+                        if (buildDurationIsSet) {
+                            Duration buildDuration = Duration.between(buildStart, clock.instant());
+                            final boolean buildDurationExceeded =
+                                    maxProjectBuildDuration.compareTo(buildDuration) < 0;
+                            if (buildDurationExceeded) {
+                                log.println();
+                                log.println(String.format("Max build duration %s exceeded, terminating build", maxProjectBuildDuration));
+                                return terminate(Result.ABORTED);
+                            }
+                        }
+
+                        // when we have no other projects to schedule due to waiting for previous
+                        // project to build, we try to remove the finished builds in order to be able
+                        // to schedule new nodes
+                        boolean buildsEjected = scheduler.ejectFinishedBuilds(log, persistBuildInfo);
+                        if (buildsEjected) {
+                            // at least one build was removed, we can try to schedule a new
+                            // build right away
+                            continue;
+                        }
+
+                        // no builds were ejected, wait until one of the builds finishes
+                        // (see BuildFinishedListener) or exceeds its max build time (see BuildWatchdog).
+                        // The orchestration loop makes the next step once it's woken up.
+                        return Optional.empty();
+                    }
+
+                    // if this point is reached, we have a new build to schedule. The scheduler counts
+                    // the job as building, while the build thread is putting it into the Jenkins queue.
+                    final BuildJob buildJob = node.getBuildJob();
+                    runOnBuildThreadAndWakeUp(() -> scheduleBuild(buildJob));
+                }
+
+                if (scheduler.wasAborted()) {
+                    // the scheduler stops handing out the jobs as soon as one of the builds was
+                    // aborted (e.g: cancelled or timed out), the builds that are still running
+                    // in parallel have to be terminated
+                    log.println();
+                    log.println("Build was aborted, terminating the builds that are still running");
+                    return terminate(Result.ABORTED);
+                }
+                return Optional.of(Result.SUCCESS);
+            }
+
+            /**
+             * Put the job into the Jenkins queue. Called on the build thread, the orchestration is stepped
+             * again once the job was scheduled (or refused by the queue).
+             */
+            private void scheduleBuild(BuildJob buildJob) {
+                final String buildId = buildJob.getId();
+                if (isStopped()) {
+                    // the pipeline build was aborted before the job was put into the queue
+                    persistBuildInfo.addCancelledBuild(buildId);
+                    return;
+                }
+
+                // assign node to a specific build agent as defined per settings block.
+                // Build agents might be missing, in such case it's irrelevant on which
+                // node the build will be scheduled and we can use the default jenkins behavior
+                List<String> parentIds = layers.getParents(buildJob).stream().map(BuildJob::getId)
+                                               .collect(Collectors.toList());
+                AssignToNode assignToNodeAction = AssignToNode.createAction(buildId, buildJob.getBuildSettings(),
+                                                                            verifiedBuild.schedulerSettings.agentSelection,
+                                                                            parentIds);
+
+                // if the job no longer exists, this will throw an exception. The only reason why
+                // that might happen in the middle of the build is if somebody deleted the job
+                // while the build is running. Since we can't predict how to handle such case,
+                // it's better to just throw an exception and fail the build right away.
+                final Job<?, ?> jenkinsJob = JenkinsUtil.getJob(getProject(), buildId);
+                final Cause cause = new Cause.UpstreamCause((Run) getBuild());
+                int quietPeriod = ((ParameterizedJobMixIn.ParameterizedJob) jenkinsJob).getQuietPeriod();
+                // instead of AbstractProject.resolveForCli(), a ParameterizedJobMixIn is used for scheduling the
+                // build, as otherwise we cannot run "pipeline" jobs through our plugin as pipeline job does
+                // not extend the AbstractProject class.
+                final BuildAddedCause buildAddedCause = new BuildAddedCause(clock);
+                buildAddedCause.addOnBuildFinished(this::wakeUp);
+                // the max build time of the job is measured from the moment the job starts executing
+                watchdog.watch(buildAddedCause, scheduler.getMaxBuildTime(buildJob));
+                final CauseAction causeAction = new CauseAction(cause, buildAddedCause);
+                final Queue.Item item = ParameterizedJobMixIn.scheduleBuild2(jenkinsJob, quietPeriod,
+                                                                             causeAction, assignToNodeAction);
+
+                final boolean queueRefusedTheItem = item == null;
+                if (queueRefusedTheItem) {
+                    // job was refused for scheduling for whatever reason, see scheduleBuild2 documentation
+                    scheduler.errorBuild(buildJob);
+                    LOGGER.log(Level.INFO, String.format("Project %s: REFUSED", buildId));
+                    return;
+                }
+
+                // the jenkins api does not allow to register callback on the scheduled item, so the
+                // BuildFinishedListener notifies the scheduler via build cause when the job is finished.
+                // The necessary parts are put into the queue, which is being iterated and finished jobs
+                // ejected every time the scheduler determines it can't schedule new jobs. Multiple builds
+                // may be in the queue at the same time, the scheduler keeps handing out independent
+                // jobs until maxParallelBuilds is reached.
+                BuildFuture buildInFuture = new BuildFuture(buildJob, item.getFuture(), buildAddedCause);
+                scheduler.addQueuedBuild(buildInFuture);
+            }
+
+            /**
+             * Cancel all the builds that are still building or waiting in the queue. The pipeline build
+             * finishes with the given result once all the cancelled builds have stopped.
+             */
+            private Optional<Result> terminate(Result result) {
+                terminationResult = result;
+                // the builds are cancelled on the build thread, after the builds that are
+                // still being scheduled by the build thread were put into the queue
+                runOnBuildThreadAndWakeUp(() -> {
+                    for (BuildFuture build : scheduler.getQueuedBuilds()) {
+                        build.future.cancel(true);
+                    }
+                });
+                return awaitTerminatedBuilds();
+            }
+
+            /**
+             * The terminated builds are ejected (and persisted) once their executors have stopped, so their
+             * final result is stored. Until then the orchestration waits for the builds to finish.
+             */
+            private Optional<Result> awaitTerminatedBuilds() {
+                scheduler.ejectFinishedBuilds(log, persistBuildInfo);
+                if (!hasPendingWork() && scheduler.getQueuedBuilds().isEmpty()) {
+                    return Optional.of(terminationResult);
+                }
+                return Optional.empty();
+            }
+
+            @Override
+            protected Duration getWaitingTime() {
+                return scheduler.getWaitingTime();
+            }
+
+            @Override
+            protected Result cancel() {
+                // the user has canceled the build via the UI while the build was waiting,
+                // this is called on the build thread once the orchestration has stopped
+                cancelQueuedBuilds(listener, persistBuildInfo);
+                listener.getLogger().println();
+                return Result.ABORTED;
+            }
+        }
+
+        /**
+         * Terminate all the builds that are still building or waiting in the queue. If any build has
+         * finished in the meantime, it's ejected first. The status of all the builds is persisted.
+         * <p>
+         * Used when the pipeline build itself was aborted and can't wait for the cancelled builds to
+         * stop, the result of the builds that are still stopping is resolved once they have finished
+         * (see {@link PersistBuildInfoAction#getBuildStatus()}).
+         */
+        private void cancelQueuedBuilds(BuildListener listener, PersistBuildInfoAction persistBuildInfo) {
+            scheduler.ejectFinishedBuilds(listener.getLogger(), persistBuildInfo);
+            for (BuildFuture future : scheduler.getQueuedBuilds()) {
+                Optional<Run<?, ?>> run = future.getScheduledBuild();
+                future.future.cancel(true);
+                if (run.isPresent()) {
+                    persistBuildInfo.addBuild(run.get());
+                } else {
+                    persistBuildInfo.addCancelledBuild(future.buildJob.getId());
+                }
+            }
+        }
+
+        /**
+         * Store the durations of the builds that were triggered by this build into the project duration
+         * history, so the next builds can use them for estimating the job durations.
+         */
+        private void recordBuildDurations() {
+            PersistBuildInfoAction persistBuildInfo = getAction(PersistBuildInfoAction.class);
+            if (persistBuildInfo == null) {
+                return;
+            }
+            try {
+                getProject().recordBuildDurations(persistBuildInfo.getBuildInfo());
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to record the job build durations", e);
+            }
+        }
+
         /**
          * Get the pipeline string based on the project setting (SCM or direct string)
          *
@@ -846,6 +1183,9 @@ public class DslBuild extends Build<DslProject, DslBuild> {
 
         @Override
         public void cleanUp(@NonNull BuildListener listener) throws Exception {
+            // the scheduling has finished, the deadlines of the jobs are no longer relevant
+            watchdog.close();
+            recordBuildDurations();
             // at this point it's too late to mark the build as a failure, so ignore return value.
             try {
                 performAllBuildSteps(listener, project.getPublishersList(), false);
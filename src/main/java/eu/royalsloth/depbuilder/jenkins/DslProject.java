@@ -4,10 +4,19 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import eu.royalsloth.depbuilder.dsl.DslParser;
 import eu.royalsloth.depbuilder.dsl.ParseException;
 import eu.royalsloth.depbuilder.dsl.ParsedBuildJob;
+import eu.royalsloth.depbuilder.dsl.PipelineCache;
 import eu.royalsloth.depbuilder.dsl.scheduling.BuildCycleException;
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildDurationHistory;
 import eu.royalsloth.depbuilder.dsl.scheduling.BuildLayers;
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildSimulator;
+import eu.royalsloth.depbuilder.dsl.scheduling.SchedulePrediction;
+import eu.royalsloth.depbuilder.dsl.scheduling.SchedulerSettings;
+import eu.royalsloth.depbuilder.dsl.scheduling.SimulationResult;
+import eu.royalsloth.depbuilder.jenkins.actions.BuildAddedCause;
+import eu.royalsloth.depbuilder.jenkins.actions.PersistBuildInfoAction;
 import eu.royalsloth.depbuilder.jenkins.api.ConfigGraphNode;
 import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.*;
 import hudson.util.*;
 import jenkins.model.Jenkins;
@@ -22,15 +31,26 @@ import org.kohsuke.stapler.verb.POST;
 
 import javax.annotation.CheckForNull;
 import javax.servlet.ServletException;
+import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Optional;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
- * This class creates a custom project in the jenkins new project view
+ * This class creates a custom project in the jenkins new project view.
+ * <p>
+ * The project is a {@link Queue.FlyweightTask}, so its builds are running on a one-off executor of the
+ * master node (the same way as the Pipeline builds are running), instead of taking one of the regular
+ * executors. The build is only orchestrating the jobs and is mostly waiting for them to finish, so it
+ * should not take the executor from the jobs that are doing the real work.
  */
-public class DslProject extends Project<DslProject, DslBuild> implements TopLevelItem {
+public class DslProject extends Project<DslProject, DslBuild> implements TopLevelItem, Queue.FlyweightTask {
 
     public DslProject(ItemGroup parent, String name) {
         super(parent, name);
@@ -124,6 +144,112 @@ public class DslProject extends Project<DslProject, DslBuild> implements TopLeve
         return false;
     }
 
+    /**
+     * History of the job durations that were built by this project, lazily loaded from {@link
+     * #DURATION_HISTORY_FILE}. The history is not guarded by the project monitor, which is also used by the
+     * Jenkins core (e.g: config submission), so a slow history write never blocks the project.
+     */
+    @CheckForNull
+    private transient volatile DurationHistoryHolder durationHistory = null;
+
+    private static final AtomicReferenceFieldUpdater<DslProject, DurationHistoryHolder> DURATION_HISTORY =
+            AtomicReferenceFieldUpdater.newUpdater(DslProject.class, DurationHistoryHolder.class, "durationHistory");
+
+    private static final class DurationHistoryHolder {
+        private final BuildDurationHistory history;
+        /**
+         * Orders the history writes, so an older snapshot of the history never overwrites a newer one
+         */
+        private final Object writeLock = new Object();
+
+        private DurationHistoryHolder(BuildDurationHistory history) {
+            this.history = history;
+        }
+    }
+
+    /**
+     * Name of the file in the project root directory where the job duration history is stored
+     */
+    public static final String DURATION_HISTORY_FILE = "depbuilder-durations.xml";
+
+    /**
+     * @return history of the job durations that were built by this project
+     */
+    public BuildDurationHistory getDurationHistory() {
+        return getDurationHistoryHolder().history;
+    }
+
+    private DurationHistoryHolder getDurationHistoryHolder() {
+        DurationHistoryHolder holder = durationHistory;
+        if (holder != null) {
+            return holder;
+        }
+
+        // concurrent callers might both read the file, but only the first loaded history is used
+        DURATION_HISTORY.compareAndSet(this, null, new DurationHistoryHolder(readDurationHistory()));
+        return durationHistory;
+    }
+
+    private BuildDurationHistory readDurationHistory() {
+        XmlFile file = getDurationHistoryFile();
+        if (file.exists()) {
+            try {
+                return (BuildDurationHistory) file.read();
+            } catch (IOException | ClassCastException e) {
+                LOGGER.log(Level.WARNING, String.format("Failed to read the job duration history of %s, starting with empty history", getFullName()), e);
+            }
+        }
+        return new BuildDurationHistory();
+    }
+
+    /**
+     * Record the queue wait and execution durations of the finished job builds and store them in the
+     * duration history. Only the builds that have finished successfully (or unstable) are recorded, since the
+     * failed and aborted builds usually end before the job is done and would skew the estimation.
+     */
+    public void recordBuildDurations(Collection<Run<?, ?>> builds) {
+        DurationHistoryHolder holder = getDurationHistoryHolder();
+        BuildDurationHistory history = holder.history;
+        boolean historyChanged = false;
+        for (Run<?, ?> build : builds) {
+            Result result = build.getResult();
+            if (build.isBuilding() || result == null || result.isWorseThan(Result.UNSTABLE)) {
+                continue;
+            }
+
+            String jobId = build.getParent().getFullName();
+            history.recordExecution(jobId, Duration.ofMillis(build.getDuration()));
+            BuildAddedCause cause = build.getCause(BuildAddedCause.class);
+            if (cause != null && cause.getQueuedTime().isPresent()) {
+                // both times are measured with the scheduler clock, if the build start was recorded
+                long queuedMillis = cause.getQueuedTime().get().toEpochMilli();
+                long startMillis = cause.getBuildStartTime().map(Instant::toEpochMilli)
+                                        .orElse(build.getStartTimeInMillis());
+                long queueWait = Math.max(0, startMillis - queuedMillis);
+                history.recordQueueWait(jobId, Duration.ofMillis(queueWait));
+            }
+            historyChanged = true;
+        }
+
+        if (!historyChanged) {
+            return;
+        }
+        synchronized (holder.writeLock) {
+            // the snapshot is written to disk, so the readers of the history are not
+            // blocked while the file is being written
+            BuildDurationHistory snapshot = history.copy();
+            try {
+                getDurationHistoryFile().write(snapshot);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Failed to store the job duration history of %s", getFullName()), e);
+            }
+        }
+    }
+
+    private XmlFile getDurationHistoryFile() {
+        return new XmlFile(new File(getRootDir(), DURATION_HISTORY_FILE));
+    }
+
     /**
      * Temporary pipeline which is set when the user updates the pipeline through UI the build graph should
      * update as well, but we don't want to store their decision until the user presses the apply/save
@@ -252,9 +378,9 @@ public class DslProject extends Project<DslProject, DslBuild> implements TopLeve
         }
 
         try {
-            List<ParsedBuildJob> parsedNodes = DslParser.parseBuildNoVerify(pipelineStr).parsedJobs;
-            List<ConfigGraphNode> jobs = createSerializedJobs(parsedNodes);
-            BuildLayers layers = BuildLayers.topologicalSort(parsedNodes);
+            PipelineCache.CachedPipeline cachedPipeline = PipelineCache.shared().parseNoVerify(pipelineStr);
+            List<ConfigGraphNode> jobs = createSerializedJobs(cachedPipeline.getParsedBuild().parsedJobs);
+            BuildLayers layers = cachedPipeline.getBuildLayers();
 
             JSONObject o = new JSONObject();
             o.put("build", jobs);
@@ -267,16 +393,95 @@ public class DslProject extends Project<DslProject, DslBuild> implements TopLeve
         }
     }
 
-    public static List<ConfigGraphNode> createSerializedJobs(List<ParsedBuildJob> parsedNodes) {
-        // get uris for every job on jenkins, so we can link to projects on frontend
-        Iterable<Job> jenkinsJobs = JenkinsUtil.getJenkins().allItems(Job.class);
-        Map<String, String> uris = new HashMap<>();
-        for (Job j : jenkinsJobs) {
-            // @FUTURE: getAbsoluteUrl represents a potential problem with reverse proxies.
-            uris.put(j.getFullName(), j.getAbsoluteUrl());
+    /**
+     * What-if simulation of the pipeline build. The saved pipeline (or the pipeline of the last build for
+     * SCM input type) is simulated with the expected job durations from the duration history, without
+     * building anything.
+     * <p>
+     * Example: POST /jenkins/job/[projectName]/simulate?executors=4&buildThrottle=[08:00|2, 18:00|-1]
+     * <p>
+     * The simulation is expensive for large pipelines, so it's only available via POST requests (with the
+     * crumb), which can't be triggered by other sites.
+     *
+     * @param executors     number of available executors (-1 for unlimited), pipeline settings are used if
+     *                      not provided
+     * @param buildThrottle build throttle in the same format as in the pipeline settings, pipeline settings
+     *                      are used if not provided
+     */
+    @POST
+    public void doSimulate(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String executors,
+            @QueryParameter String buildThrottle) throws IOException {
+        checkPermission(Item.READ);
+        rsp.setContentType("application/json");
+        try {
+            String pipelineStr = this.pipeline;
+            if (getScriptInputType() == ScriptInputType.SCM) {
+                DslBuild lastBuild = getLastBuild();
+                PersistBuildInfoAction action = lastBuild == null ? null : lastBuild.getAction(PersistBuildInfoAction.class);
+                if (action == null) {
+                    throw new IllegalArgumentException("Pipeline from SCM is only known after the project was built");
+                }
+                pipelineStr = action.getPipeline();
+            }
+
+            PipelineCache.CachedPipeline cachedPipeline = PipelineCache.shared().parseNoVerify(pipelineStr);
+            if (cachedPipeline.getBuildLayers().hasCycle()) {
+                throw new IllegalArgumentException(String.format("Pipeline has a cycle: %s", String.join(" -> ", cachedPipeline.getBuildLayers().getBuildCycle())));
+            }
+
+            // cached settings are shared, so we have to copy them before applying the user overrides
+            BuildLayers layers = cachedPipeline.createBuildLayers();
+            SchedulerSettings settings = new SchedulerSettings(cachedPipeline.getParsedBuild().schedulerSettings);
+            if (executors != null && !executors.trim().isEmpty()) {
+                int numOfExecutors = Integer.parseInt(executors.trim());
+                if (numOfExecutors == -1) {
+                    settings.maxParallelBuilds = SchedulerSettings.NO_RESTRICTION;
+                } else if (numOfExecutors <= 0) {
+                    throw new IllegalArgumentException(String.format("Number of executors should be > 0 or -1 for unlimited, got: %d", numOfExecutors));
+                } else {
+                    settings.maxParallelBuilds = numOfExecutors;
+                }
+            }
+            if (PluginVersion.isPro() && buildThrottle != null && !buildThrottle.trim().isEmpty()) {
+                settings.setThrottles(DslParser.parseBuildThrottle(buildThrottle));
+            }
+
+            BuildSimulator simulator = new BuildSimulator(layers, settings, getDurationHistory().durationPredictor());
+            SimulationResult result = simulator.simulate(Instant.now());
+
+            List<JSONObject> builds = new ArrayList<>();
+            for (SchedulePrediction.PredictedBuild build : result.getSchedule().getBuilds()) {
+                JSONObject b = new JSONObject();
+                b.put("id", build.job.getId());
+                b.put("start", build.start.toEpochMilli());
+                b.put("finish", build.finish.toEpochMilli());
+                builds.add(b);
+            }
+
+            JSONObject o = new JSONObject();
+            o.put("makespan", result.getMakespan().toMillis());
+            o.put("makespanString", DslBuild.durationToString(result.getMakespan().toMillis()));
+            o.put("criticalPath", result.getCriticalPath());
+            o.put("executors", result.getExecutors());
+            o.put("peakParallelBuilds", result.getPeakParallelBuilds());
+            o.put("executorUtilization", result.getExecutorUtilization());
+            o.put("complete", result.isComplete());
+            o.put("builds", builds);
+            rsp.getWriter().write(o.toString());
+        } catch (ParseException | IllegalArgumentException e) {
+            rsp.setStatus(400);
+            JSONObject o = new JSONObject();
+            o.put("error", e.getMessage());
+            rsp.getWriter().write(o.toString());
         }
+    }
+
+    public static List<ConfigGraphNode> createSerializedJobs(List<ParsedBuildJob> parsedNodes) {
+        // get uris of the pipeline jobs, so we can link to projects on frontend
+        JenkinsIndex index = JenkinsIndex.get();
         return parsedNodes.stream().map(node -> {
-            String uri = uris.getOrDefault(node.getId(), "");
+            String uri = index.getJobUrl(node.getId());
             return new ConfigGraphNode(node, uri);
         }).collect(Collectors.toList());
     }
@@ -456,4 +661,6 @@ public class DslProject extends Project<DslProject, DslBuild> implements TopLeve
             return model;
         }
     }
+
+    private static final Logger LOGGER = Logger.getLogger(DslProject.class.getName());
 }
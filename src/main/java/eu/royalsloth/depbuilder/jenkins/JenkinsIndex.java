@@ -0,0 +1,216 @@
+package eu.royalsloth.depbuilder.jenkins;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.model.*;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import hudson.slaves.ComputerListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Plugin wide index of the job full names, job urls and agent names. Rendering the pipeline graph and
+ * verifying the pipeline only needs a few lookups per pipeline job, while walking through all the items on
+ * Jenkins is expensive on controllers with tens of thousands of jobs.
+ * <p>
+ * The index is filled on the first use and kept up to date with the item and computer listeners. All the
+ * updates of the index are synchronized, so the incremental updates can't interleave with the reindexing
+ * (e.g: a job created while the index is rebuilt is not dropped from the index).
+ */
+public class JenkinsIndex {
+
+    private static final JenkinsIndex INSTANCE = new JenkinsIndex();
+
+    /**
+     * Job full name: job url relative to the Jenkins root url (e.g: job/myFolder/job/A/)
+     */
+    private final Map<String, String> jobUrls = new ConcurrentHashMap<>();
+    private volatile Set<String> agentNames = Collections.emptySet();
+    private volatile boolean initialized = false;
+
+    private JenkinsIndex() {
+    }
+
+    public static JenkinsIndex get() {
+        INSTANCE.initialize();
+        return INSTANCE;
+    }
+
+    private void initialize() {
+        if (initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (initialized) {
+                return;
+            }
+            reindex();
+        }
+    }
+
+    private synchronized void reindex() {
+        reindexJobs();
+        reindexAgents();
+        initialized = true;
+    }
+
+    private synchronized void reindexJobs() {
+        // the index is shared by all the users, so we have to see all the jobs
+        try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+            Map<String, String> urls = new HashMap<>();
+            for (Job<?, ?> job : JenkinsUtil.getJenkins().allItems(Job.class)) {
+                urls.put(job.getFullName(), job.getUrl());
+            }
+            // the index is updated in place, so the readers never see an empty index
+            jobUrls.keySet().retainAll(urls.keySet());
+            jobUrls.putAll(urls);
+        }
+    }
+
+    private synchronized void reindexAgents() {
+        Set<String> names = new HashSet<>();
+        for (Node agent : JenkinsUtil.getAllAgents()) {
+            names.add(JenkinsUtil.getComputerName(agent));
+        }
+        this.agentNames = Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * @return full names of all the jobs on Jenkins (read only view of the index)
+     */
+    public Set<String> getJobNames() {
+        return Collections.unmodifiableSet(jobUrls.keySet());
+    }
+
+    /**
+     * @return full names of all the jobs on Jenkins without the excluded job (read only view of the index)
+     */
+    public Set<String> getJobNamesExcept(String excludedJob) {
+        final Set<String> jobNames = jobUrls.keySet();
+        return new AbstractSet<String>() {
+            @Override
+            public boolean contains(Object o) {
+                return !excludedJob.equals(o) && jobNames.contains(o);
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return jobNames.stream().filter(job -> !excludedJob.equals(job)).iterator();
+            }
+
+            @Override
+            public int size() {
+                return jobNames.contains(excludedJob) ? jobNames.size() - 1 : jobNames.size();
+            }
+        };
+    }
+
+    /**
+     * @return names of all the agents including master
+     */
+    public Set<String> getAgentNames() {
+        return agentNames;
+    }
+
+    /**
+     * @return absolute url of the job or empty string if the job does not exist
+     */
+    public String getJobUrl(String jobFullName) {
+        String url = jobUrls.get(jobFullName);
+        if (url == null) {
+            return "";
+        }
+        // @FUTURE: absolute url represents a potential problem with reverse proxies.
+        String rootUrl = JenkinsUtil.getJenkins().getRootUrl();
+        return rootUrl == null ? url : rootUrl + url;
+    }
+
+    private synchronized void addJobs(Item item) {
+        for (Job<?, ?> job : jobsOf(item)) {
+            jobUrls.put(job.getFullName(), job.getUrl());
+        }
+    }
+
+    private synchronized void removeJobs(String fullName) {
+        // jobs within the removed folder are removed as well
+        String folderPrefix = fullName + "/";
+        jobUrls.keySet().removeIf(job -> job.equals(fullName) || job.startsWith(folderPrefix));
+    }
+
+    private synchronized void moveJob(Item item, String oldFullName, String newFullName) {
+        jobUrls.remove(oldFullName);
+        if (item instanceof Job) {
+            jobUrls.put(newFullName, item.getUrl());
+        }
+    }
+
+    private static List<Job> jobsOf(Item item) {
+        if (item instanceof Job) {
+            return Collections.singletonList((Job) item);
+        }
+        if (item instanceof ItemGroup) {
+            try (ACLContext ignored = ACL.as(ACL.SYSTEM)) {
+                return Items.getAllItems((ItemGroup<?>) item, Job.class);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Keeps the jobs in the index up to date.
+     */
+    @Extension
+    public static class JobListener extends ItemListener {
+        /**
+         * Called when all the items were loaded on Jenkins startup
+         */
+        @Override
+        public void onLoaded() {
+            INSTANCE.reindex();
+        }
+
+        @Override
+        public void onCreated(Item item) {
+            INSTANCE.addJobs(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            INSTANCE.removeJobs(item.getFullName());
+        }
+
+        /**
+         * Called for renamed and moved items and all their children
+         */
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            INSTANCE.moveJob(item, oldFullName, newFullName);
+        }
+    }
+
+    /**
+     * Keeps the agents in the index up to date.
+     */
+    @Extension
+    public static class AgentListener extends ComputerListener {
+        /**
+         * Called when the agents were added, removed or renamed
+         */
+        @Override
+        public void onConfigurationChange() {
+            INSTANCE.reindexAgents();
+        }
+
+        @Override
+        public void onOnline(Computer c, @NonNull TaskListener listener) {
+            // agents that were provisioned by the clouds are not always reported as a configuration change
+            String name = JenkinsUtil.getComputerName(c);
+            if (!INSTANCE.agentNames.contains(name)) {
+                INSTANCE.reindexAgents();
+            }
+        }
+    }
+}
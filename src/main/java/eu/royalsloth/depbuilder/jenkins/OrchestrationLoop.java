@@ -0,0 +1,368 @@
+package eu.royalsloth.depbuilder.jenkins;
+
+import hudson.init.Terminator;
+import hudson.model.Result;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared event loop that makes the scheduling decisions of all the running pipeline builds. Every pipeline
+ * build is represented by its own {@link Orchestration} state machine, which is stepped on the loop thread
+ * whenever one of its jobs has finished (or timed out) and at least every {@link
+ * eu.royalsloth.depbuilder.dsl.scheduling.Scheduler#MAX_WAITING_TIME}. Many concurrent pipeline builds are
+ * therefore scheduled by a single thread, instead of every build thread polling its own scheduler.
+ * <p>
+ * Steps of the same orchestration are never running concurrently. The steps should not block, since all
+ * the pipeline builds are sharing the same thread. The blocking Jenkins calls (scheduling the jobs, writing
+ * the build log) are handed out to the build thread of the orchestration (see {@link
+ * Orchestration#runOnBuildThread(Runnable)}).
+ */
+public class OrchestrationLoop {
+
+    /**
+     * Created on the first pipeline build and stopped when Jenkins is shutting down
+     */
+    private static OrchestrationLoop shared;
+
+    private final ScheduledExecutorService loop;
+
+    public OrchestrationLoop(ScheduledExecutorService loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * @return loop shared by all the pipeline builds on this Jenkins instance
+     */
+    public static synchronized OrchestrationLoop shared() {
+        if (shared == null) {
+            shared = new OrchestrationLoop(createSharedExecutor());
+        }
+        return shared;
+    }
+
+    /**
+     * Stop the shared loop when Jenkins is shutting down. The orchestrations that are still running are
+     * cancelled on their build threads.
+     */
+    @Terminator
+    public static void stopShared() throws InterruptedException {
+        OrchestrationLoop loop;
+        synchronized (OrchestrationLoop.class) {
+            loop = shared;
+            shared = null;
+        }
+        if (loop != null) {
+            loop.stop();
+        }
+    }
+
+    private static ScheduledExecutorService createSharedExecutor() {
+        ThreadFactory threadFactory = new NamingThreadFactory(new DaemonThreadFactory(), "DepBuilder orchestration");
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, threadFactory);
+        // wake up timers are cancelled on every step, they shouldn't pile up in the queue
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        // the loop thread is only kept alive while the pipeline builds are running
+        executor.setKeepAliveTime(1, TimeUnit.MINUTES);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Stop accepting new steps and wait until the steps that are already running have finished.
+     */
+    public void stop() throws InterruptedException {
+        loop.shutdown();
+        loop.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * State machine of one pipeline build that is stepped on the orchestration loop.
+     */
+    public abstract static class Orchestration {
+        /**
+         * Blocking work that is executed on the build thread
+         */
+        private static class Work {
+            private final Runnable task;
+            private final boolean wakeUpAfter;
+
+            private Work(Runnable task, boolean wakeUpAfter) {
+                this.task = task;
+                this.wakeUpAfter = wakeUpAfter;
+            }
+        }
+
+        /**
+         * Marks the end of the work queue, the orchestration has finished
+         */
+        private static final Work FINISHED = new Work(() -> {
+        }, false);
+        /**
+         * Marks the end of the work queue, the loop was stopped before the orchestration has finished
+         */
+        private static final Work LOOP_STOPPED = new Work(() -> {
+        }, false);
+
+        private final OrchestrationLoop orchestrationLoop;
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private final AtomicBoolean stepPending = new AtomicBoolean(false);
+        /**
+         * Blocking work handed out by the steps, executed in order by the build thread
+         */
+        private final BlockingQueue<Work> buildThreadWork = new LinkedBlockingQueue<>();
+        /**
+         * Number of handed out work items that step the orchestration once they are done
+         */
+        private final AtomicInteger pendingWork = new AtomicInteger();
+
+        /**
+         * Timer that steps the orchestration when no event arrives in time, only accessed on the loop thread
+         */
+        private ScheduledFuture<?> wakeUpTimer;
+
+        protected Orchestration(OrchestrationLoop orchestrationLoop) {
+            this.orchestrationLoop = orchestrationLoop;
+        }
+
+        /**
+         * Make the scheduling decisions until the build has to wait for the next event. Always called on the
+         * loop thread.
+         *
+         * @return result of the orchestration once it has finished or empty optional if it has to wait
+         */
+        protected abstract Optional<Result> step() throws Exception;
+
+        /**
+         * @return max time until the next step, even if no event arrives in the meantime
+         */
+        protected abstract Duration getWaitingTime();
+
+        /**
+         * Terminate the orchestration, because the build was aborted by the user (or Jenkins is shutting
+         * down). Called on the build thread once the orchestration is no longer stepped on the loop and all
+         * the work that was handed out to the build thread was done.
+         *
+         * @return result of the cancelled orchestration
+         */
+        protected abstract Result cancel() throws Exception;
+
+        /**
+         * Hand out the blocking work to the build thread. The work is executed in the same order as it was
+         * handed out, the work of the last step is executed before the result of the orchestration is
+         * returned. Should be called from the step.
+         */
+        protected void runOnBuildThread(Runnable work) {
+            buildThreadWork.add(new Work(work, false));
+        }
+
+        /**
+         * Same as {@link #runOnBuildThread(Runnable)}, but the orchestration is stepped again once the work is
+         * done (e.g: the outcome of the work affects the scheduling decisions).
+         */
+        protected void runOnBuildThreadAndWakeUp(Runnable work) {
+            pendingWork.incrementAndGet();
+            buildThreadWork.add(new Work(work, true));
+        }
+
+        /**
+         * @return true if some of the work that was handed out with {@link #runOnBuildThreadAndWakeUp(Runnable)}
+         * is not done yet
+         */
+        protected boolean hasPendingWork() {
+            return pendingWork.get() > 0;
+        }
+
+        /**
+         * @return true if the orchestration was stopped before it has finished (the build was aborted)
+         */
+        protected boolean isStopped() {
+            return result.isCancelled();
+        }
+
+        /**
+         * Step the orchestration on the loop as soon as possible. Can be called from any thread, multiple
+         * wake ups that arrive before the step is made are merged into one step.
+         */
+        public void wakeUp() {
+            if (stepPending.compareAndSet(false, true)) {
+                try {
+                    orchestrationLoop.loop.execute(this::runStep);
+                } catch (RejectedExecutionException e) {
+                    loopStopped();
+                }
+            }
+        }
+
+        private void loopStopped() {
+            // the build thread cancels the orchestration
+            buildThreadWork.add(LOOP_STOPPED);
+        }
+
+        private void runStep() {
+            stepPending.set(false);
+            if (result.isDone()) {
+                return;
+            }
+
+            cancelWakeUpTimer();
+            Optional<Result> finished;
+            try {
+                finished = step();
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                buildThreadWork.add(FINISHED);
+                return;
+            }
+
+            if (finished.isPresent()) {
+                result.complete(finished.get());
+                buildThreadWork.add(FINISHED);
+                return;
+            }
+
+            try {
+                long waitingTime = Math.max(0, getWaitingTime().toMillis());
+                wakeUpTimer = orchestrationLoop.loop.schedule(this::wakeUp, waitingTime, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                loopStopped();
+            }
+        }
+
+        private void cancelWakeUpTimer() {
+            if (wakeUpTimer != null) {
+                wakeUpTimer.cancel(false);
+                wakeUpTimer = null;
+            }
+        }
+
+        /**
+         * Start the orchestration and execute the work it hands out on the calling (build) thread until the
+         * orchestration has finished. If the calling thread is interrupted, the orchestration is stopped and
+         * cancelled on the calling thread and the result of the cancellation is returned.
+         *
+         * @throws Exception exception thrown by the orchestration step or the work it has handed out
+         */
+        public Result run() throws Exception {
+            wakeUp();
+            try {
+                Work work;
+                while ((work = buildThreadWork.take()) != FINISHED) {
+                    if (work == LOOP_STOPPED) {
+                        return stopAndCancel();
+                    }
+                    runWork(work);
+                }
+                return getResult();
+            } catch (InterruptedException e) {
+                // the user has aborted the build while it was waiting
+                return stopAndCancel();
+            }
+        }
+
+        private void runWork(Work work) {
+            try {
+                work.task.run();
+            } catch (RuntimeException | Error e) {
+                // the work has failed, the build is not going to wait for the orchestration
+                stop();
+                throw e;
+            } finally {
+                if (work.wakeUpAfter) {
+                    pendingWork.decrementAndGet();
+                }
+            }
+            if (work.wakeUpAfter) {
+                wakeUp();
+            }
+        }
+
+        /**
+         * Stop the orchestration, execute the work that was handed out before it was stopped and cancel it.
+         */
+        private Result stopAndCancel() throws Exception {
+            boolean stopped = stop();
+            Work work;
+            while ((work = buildThreadWork.poll()) != null) {
+                if (work != FINISHED && work != LOOP_STOPPED) {
+                    runWork(work);
+                }
+            }
+            if (!stopped) {
+                // the orchestration has finished in the meantime
+                return getResult();
+            }
+            return cancel();
+        }
+
+        /**
+         * Stop stepping the orchestration. The step that is running right now is finished first, so the
+         * orchestration is never stepped and cancelled at the same time.
+         *
+         * @return true if the orchestration was stopped and false if it has already finished
+         */
+        private boolean stop() {
+            FutureTask<Boolean> stop = new FutureTask<>(() -> {
+                cancelWakeUpTimer();
+                return result.cancel(false);
+            });
+            try {
+                orchestrationLoop.loop.execute(stop);
+            } catch (RejectedExecutionException e) {
+                // the loop is shutting down, wait until the last step has finished
+                awaitLoopTermination();
+                return result.cancel(false);
+            }
+            return waitUninterruptibly(stop);
+        }
+
+        private void awaitLoopTermination() {
+            try {
+                orchestrationLoop.loop.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private Result getResult() throws Exception {
+            try {
+                return result.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+        private static boolean waitUninterruptibly(Future<Boolean> future) {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return future.get();
+                    } catch (InterruptedException e) {
+                        // the user might click the abort button more than once
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Failed to stop the orchestration", e.getCause());
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -4,7 +4,11 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.model.Cause;
 import hudson.model.Run;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Custom cause that is used in order to get the build callback just before the project/job is added into the
@@ -16,7 +20,33 @@ import java.util.Optional;
  */
 public class BuildAddedCause extends Cause {
 
+    // the clock is not persisted, the cause that was loaded from the disk falls back to the system clock
+    private final transient Clock clock;
     private transient volatile Run<?, ?> build;
+    private transient volatile boolean buildFinished;
+    // both the scheduler and the build watchdog are listening for the end of the build
+    private final transient List<Runnable> onBuildFinished = new CopyOnWriteArrayList<>();
+    private transient volatile Instant queuedTime;
+    private transient volatile Instant buildStartTime;
+    private transient volatile Runnable onBuildStarted;
+    private transient volatile boolean buildTimedOut;
+
+    public BuildAddedCause() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock clock that is used for measuring the queued and build start time. Should be the same
+     *              clock the build scheduler is using.
+     */
+    public BuildAddedCause(Clock clock) {
+        this.clock = clock;
+        this.queuedTime = clock.instant();
+    }
+
+    private Instant now() {
+        return clock == null ? Instant.now() : clock.instant();
+    }
 
     @Override
     public String getShortDescription() {
@@ -34,4 +64,90 @@ public class BuildAddedCause extends Cause {
     public Optional<Run<?, ?>> getBuild() {
         return Optional.ofNullable(build);
     }
+
+    /**
+     * @return time when the cause was created (just before the build was put into the queue). Empty if the
+     * cause was loaded from the disk.
+     */
+    public Optional<Instant> getQueuedTime() {
+        return Optional.ofNullable(queuedTime);
+    }
+
+    /**
+     * Register a callback that is called once the build has started executing. The callback is called from
+     * the Jenkins thread that is executing the build, so it should return quickly.
+     */
+    public void setOnBuildStarted(Runnable onBuildStarted) {
+        this.onBuildStarted = onBuildStarted;
+    }
+
+    /**
+     * Called by {@link eu.royalsloth.depbuilder.jenkins.BuildFinishedListener} when the build with this cause
+     * has left the queue and started executing.
+     */
+    public void buildStarted() {
+        this.buildStartTime = now();
+        Runnable callback = this.onBuildStarted;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    /**
+     * @return time when the build has started executing or empty if the build is still waiting in the queue
+     */
+    public Optional<Instant> getBuildStartTime() {
+        return Optional.ofNullable(buildStartTime);
+    }
+
+    /**
+     * Called by {@link eu.royalsloth.depbuilder.jenkins.BuildWatchdog} when the build has exceeded its max
+     * build time. The build finished callback is called, so the scheduler can release the build right away.
+     */
+    public void buildTimedOut() {
+        this.buildTimedOut = true;
+        notifyBuildFinished();
+    }
+
+    /**
+     * @return true if the build was terminated, because it has exceeded its max build time
+     */
+    public boolean isBuildTimedOut() {
+        return buildTimedOut;
+    }
+
+    /**
+     * Register a callback that is called once the build has completed or was removed from the queue.
+     * The callback is called from the Jenkins thread that has finished the build, so it should return
+     * quickly.
+     */
+    public void addOnBuildFinished(Runnable onBuildFinished) {
+        this.onBuildFinished.add(onBuildFinished);
+    }
+
+    /**
+     * Called by {@link eu.royalsloth.depbuilder.jenkins.BuildFinishedListener} when the build with this cause
+     * has completed or was cancelled while waiting in the queue.
+     */
+    public void buildFinished() {
+        this.buildFinished = true;
+        notifyBuildFinished();
+    }
+
+    private void notifyBuildFinished() {
+        if (onBuildFinished == null) {
+            // the cause was loaded from the disk, nobody is listening
+            return;
+        }
+        for (Runnable callback : onBuildFinished) {
+            callback.run();
+        }
+    }
+
+    /**
+     * @return true if the build has completed (the build result is known) or it was cancelled in the queue.
+     */
+    public boolean isBuildFinished() {
+        return buildFinished;
+    }
 }
@@ -5,9 +5,27 @@ import com.thoughtworks.xstream.annotations.XStreamAlias;
 /**
  * Simple DTO that is used for storing build data into project build.xml file. XStreamAlias is used to avoid
  * persisting full class path name for every element in the build.
+ * <p>
+ * Besides the reference to the build, the result of the finished build is stored as well, so we can show
+ * the build status without loading the referenced build from disk. References that were persisted by the
+ * older plugin versions (or builds that were still running when they were added) don't have the result.
  */
 @XStreamAlias("RSBuildReference")
 class BuildReference {
     public String projectName;
     public int buildNumber;
+
+    /**
+     * Result of the finished build or null if the build result is not known
+     */
+    public volatile String result;
+    public long durationMillis;
+    /**
+     * Relative build uri (e.g: job/foo/32/)
+     */
+    public String buildUri;
+
+    public boolean hasResult() {
+        return result != null;
+    }
 }
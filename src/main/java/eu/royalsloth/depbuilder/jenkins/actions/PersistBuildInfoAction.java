@@ -1,8 +1,11 @@
 package eu.royalsloth.depbuilder.jenkins.actions;
 
+import eu.royalsloth.depbuilder.jenkins.DslBuild;
 import eu.royalsloth.depbuilder.jenkins.JenkinsUtil;
+import eu.royalsloth.depbuilder.jenkins.api.JobBuildStatus;
 import hudson.model.Action;
 import hudson.model.InvisibleAction;
+import hudson.model.Result;
 import hudson.model.Run;
 
 import java.util.*;
@@ -50,9 +53,25 @@ public class PersistBuildInfoAction extends InvisibleAction implements Action {
         BuildReference ref = new BuildReference();
         ref.projectName = build.getParent().getFullName();
         ref.buildNumber = build.getNumber();
+        storeResult(ref, build);
         buildReferences.add(ref);
     }
 
+    /**
+     * Store the result of the build into the reference, if the build has already finished (builds that
+     * were cancelled while building might still be running when they are added).
+     */
+    private static void storeResult(BuildReference ref, Run<?, ?> build) {
+        Result result = build.getResult();
+        if (build.isBuilding() || result == null) {
+            return;
+        }
+        ref.durationMillis = build.getDuration();
+        ref.buildUri = build.getUrl();
+        // result is stored last, since it marks the reference as complete
+        ref.result = result.toString();
+    }
+
     /**
      * Add a build that was cancelled during the build or while it staid in the queue. Such builds are later
      * shown in the UI as canceled build.
@@ -65,6 +84,44 @@ public class PersistBuildInfoAction extends InvisibleAction implements Action {
         return this.cancelledBuilds;
     }
 
+    /**
+     * Get the build status of the referenced builds. The status is served from the data stored in this
+     * action, the referenced builds are only loaded if their result was not stored (references persisted
+     * by the older plugin versions), which avoids loading hundreds of builds from disk when the user
+     * is looking at the old builds.
+     */
+    public List<JobBuildStatus> getBuildStatus() {
+        List<JobBuildStatus> statuses = new ArrayList<>(buildReferences.size());
+        for (BuildReference ref : buildReferences) {
+            if (!ref.hasResult()) {
+                Optional<Run<?, ?>> build = JenkinsUtil.getBuild(ref.projectName, ref.buildNumber);
+                if (!build.isPresent()) {
+                    // referenced build no longer exists in the history
+                    continue;
+                }
+                storeResult(ref, build.get());
+                if (!ref.hasResult()) {
+                    // build is still running
+                    statuses.add(JobBuildStatus.from(build.get()));
+                    continue;
+                }
+            }
+
+            JobBuildStatus status = new JobBuildStatus();
+            status.projectName = ref.projectName;
+            status.buildNumber = ref.buildNumber;
+            status.buildStatus = DslBuild.convertBuildResult(Result.fromString(ref.result));
+            status.duration = DslBuild.durationToString(ref.durationMillis);
+            status.buildUri = ref.buildUri == null ? "" : ref.buildUri;
+            statuses.add(status);
+        }
+        return statuses;
+    }
+
+    /**
+     * Load the referenced builds from disk (expensive for the builds that are not in memory), prefer
+     * {@link #getBuildStatus()} if you only need the build status.
+     */
     public List<Run<?, ?>> getBuildInfo() {
         // If the user selected a very small number of projects to persist
         // it is possible that the referenced build no longer exists in the
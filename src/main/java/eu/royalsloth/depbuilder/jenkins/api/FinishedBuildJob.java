@@ -24,6 +24,11 @@ public class FinishedBuildJob {
     public String buildStatus;
     public String buildDuration;
 
+    // predicted build times of the pending job (epoch milliseconds), -1 if not available
+    public long predictedStart = -1;
+    public long predictedFinish = -1;
+    public String remainingTime = "";
+
     public FinishedBuildJob() {
     }
 }
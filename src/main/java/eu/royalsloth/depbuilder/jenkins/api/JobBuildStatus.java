@@ -21,6 +21,15 @@ public class JobBuildStatus {
     public String buildUri = "";
     public String duration = DslBuild.durationToString(0);
 
+    // predicted times of the jobs that are still building or waiting to be built (epoch
+    // milliseconds), -1 if the job has finished or the prediction is not available
+    public long predictedStart = -1;
+    public long predictedFinish = -1;
+    /**
+     * Predicted time until the job finishes building (empty if the prediction is not available)
+     */
+    public String remainingTime = "";
+
     /**
      * Parse all the relevant data from the Jenkins build info class
      */
@@ -18,4 +18,11 @@ public class ProjectBuildStatus {
     public String buildStatus = BuildStatus.NONE.toString();
     public String duration = DslBuild.durationToString(0);
     public boolean finished = true;
+
+    /**
+     * Predicted time when the whole pipeline will finish building (epoch milliseconds), -1 if the build has
+     * finished or the prediction is not available
+     */
+    public long predictedFinish = -1;
+    public String remainingTime = "";
 }
@@ -15,5 +15,9 @@ public class ProjectGraph {
     public String status = "";
     public boolean finished = false;
 
+    // predicted pipeline finish time (epoch milliseconds), -1 if not available
+    public long predictedFinish = -1;
+    public String remainingTime = "";
+
     public String error;
 }
@@ -167,6 +167,11 @@ interface FinishedBuildJob {
     buildNumber: number
     buildStatus: BuildStatus
     buildDuration : string
+
+    // predicted build times of the pending jobs (epoch millis, -1 if not available)
+    predictedStart: number
+    predictedFinish: number
+    remainingTime: string
 }
 
 /**
@@ -186,6 +191,11 @@ interface ProjectBuildStatus {
      * True if the project has finished building
      */
     finished: boolean
+    /**
+     * Predicted finish time of the whole project (epoch millis, -1 if not available)
+     */
+    predictedFinish: number
+    remainingTime: string
 }
 
 /**
@@ -200,6 +210,11 @@ interface JobBuildInfo {
      * Relative build uri, that looks like: job/foo/32 (without the trailing slash)
      */
     buildUri: string
+
+    // predicted build times of the pending job (epoch millis, -1 if not available)
+    predictedStart: number
+    predictedFinish: number
+    remainingTime: string
 }
 
 function createIcon(buildStatus: BuildStatus) : string {
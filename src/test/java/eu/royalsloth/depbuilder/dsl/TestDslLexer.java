@@ -6,7 +6,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import static eu.royalsloth.depbuilder.dsl.DslLexer.Tokenizer;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class TestDslLexer {
 
@@ -110,4 +110,80 @@ class TestDslLexer {
         Token newline2 = new Token(TokenType.SEMICOLON, "\\n", 45);
         assertEquals(Arrays.asList(newline1, A, arrow, B, newline2), tokens, "Wrong tokens parsed");
     }
+
+    @Test
+    public void toTokens_multilineComment() {
+        String input = "A /* B -> C\n */ -> D";
+        List<Token> tokens = new Tokenizer(input).toTokens();
+        Token A = new Token(TokenType.IDENTIFIER, "A", 0);
+        Token arrow = new Token(TokenType.RIGHT_ARROW, "->", 16);
+        Token D = new Token(TokenType.IDENTIFIER, "D", 19);
+        assertEquals(Arrays.asList(A, arrow, D), tokens, "Wrong tokens parsed");
+    }
+
+    ///////////////////////////
+    // Spans and lookahead
+    ///////////////////////////
+    @Test
+    public void nextSpan() {
+        Tokenizer tokenizer = new Tokenizer("job-1 -> \"my job\"");
+        assertEquals(TokenType.IDENTIFIER, tokenizer.nextSpan());
+        assertEquals(0, tokenizer.getSpanStart());
+        assertEquals(5, tokenizer.getSpanEnd());
+        assertTrue(tokenizer.spanTextEquals("job-1"), "Span text should equal the identifier");
+        assertFalse(tokenizer.spanTextEquals("job-2"), "Span text should not equal a different identifier");
+
+        assertEquals(TokenType.RIGHT_ARROW, tokenizer.nextSpan());
+        assertEquals("->", tokenizer.getSpanText());
+        assertEquals(TokenType.STRING, tokenizer.nextSpan());
+        assertEquals("my job", tokenizer.getSpanText());
+        assertEquals(TokenType.EOF, tokenizer.nextSpan());
+    }
+
+    @Test
+    public void peekNextToken_isReturnedByGetNextToken() {
+        Tokenizer tokenizer = new Tokenizer("A -> B\nC");
+        Token peeked = tokenizer.peekNextToken();
+        assertSame(peeked, tokenizer.peekNextToken());
+        assertEquals(0, tokenizer.position, "Peeking should not move the tokenizer");
+        assertSame(peeked, tokenizer.getNextToken());
+        assertEquals(1, tokenizer.position, "Tokenizer should move past the peeked token");
+
+        assertEquals(TokenType.RIGHT_ARROW, tokenizer.getNextToken().type);
+        assertEquals(new Token(TokenType.IDENTIFIER, "B", 5), tokenizer.getNextToken());
+        assertEquals(TokenType.SEMICOLON, tokenizer.peekNextToken().type);
+        assertEquals(1, tokenizer.getLine(), "Peeking the newline should not change the line");
+        assertEquals(TokenType.SEMICOLON, tokenizer.getNextToken().type);
+        assertEquals(2, tokenizer.getLine(), "Newline token should move to the next line");
+    }
+
+    @Test
+    public void peekNextToken_bufferIsDiscardedBySpanLexing() {
+        Tokenizer tokenizer = new Tokenizer("A -> B");
+        tokenizer.getNextToken();
+        assertEquals(TokenType.RIGHT_ARROW, tokenizer.peekNextToken().type);
+
+        // the peeked token was not consumed, span lexing starts where the token was peeked from
+        assertEquals(TokenType.RIGHT_ARROW, tokenizer.nextSpan());
+        assertEquals(new Token(TokenType.IDENTIFIER, "B", 5), tokenizer.peekNextToken());
+        assertEquals(new Token(TokenType.IDENTIFIER, "B", 5), tokenizer.getNextToken());
+        assertEquals(TokenType.EOF, tokenizer.getNextToken().type);
+    }
+
+    @Test
+    public void getNextNonSemicolonToken() {
+        Tokenizer tokenizer = new Tokenizer("A;\n;\n  B");
+        tokenizer.getNextToken();
+        assertEquals(TokenType.SEMICOLON, tokenizer.peekNextToken().type);
+        assertEquals(new Token(TokenType.IDENTIFIER, "B", 7), tokenizer.getNextNonSemicolonToken());
+        assertEquals(3, tokenizer.getLine(), "Skipped newlines should be counted");
+        assertEquals(TokenType.EOF, tokenizer.getNextNonSemicolonToken().type);
+    }
+
+    @Test
+    public void tokenText_isLazy() {
+        Token token = Token.span("A -> B", TokenType.IDENTIFIER, 5, 6);
+        assertEquals("B", token.getText());
+        assertSame(token.getText(), token.getText(), "Token text should only be created once");
+    }
 }
@@ -1,11 +1,15 @@
 package eu.royalsloth.depbuilder.dsl;
 
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildAgent;
 import eu.royalsloth.depbuilder.dsl.scheduling.BuildLayers;
 import eu.royalsloth.depbuilder.dsl.scheduling.BuildSettings;
 import eu.royalsloth.depbuilder.dsl.scheduling.SchedulerSettings;
+import eu.royalsloth.depbuilder.jenkins.PluginVersion;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
 import java.time.Duration;
+import java.time.LocalTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -17,6 +21,11 @@ public class TestDslParser {
 
     private static final SettingsVerifier settingsVerifier = new SettingsVerifier();
 
+    @AfterEach
+    public void resetPluginVersion() {
+        PluginVersion.setCommunity();
+    }
+
     @Test
     public void oneLineComment() throws ParseException {
         String input = "///////// A -> B\n"
@@ -302,6 +311,50 @@ public class TestDslParser {
         assertEquals(Arrays.asList(), childrenC, "C has wrong children");
     }
 
+    @Test
+    public void multipleSettingsTest_onlyBlockFieldsAreUpdated() throws ParseException {
+        String input = "A { weight: 3; agent: [agent1] }\n"
+                + "A, B { weight: 2; onParentFailure: BUILD }\n"
+                + "A -> B";
+        List<ParsedBuildJob> buildNodes = DslParser.parseBuildNoVerify(input).parsedJobs;
+        BuildSettings settingsA = buildNodes.get(0).getBuildSettings();
+        assertEquals(2, settingsA.getWeight(), "Wrong weight parsed for setting A");
+        assertEquals(Arrays.asList("agent1"), settingsA.getAgentNames(), "Agent of A should not change");
+        assertEquals(ParentFailureMode.BUILD, settingsA.getOnParentFailure(), "Wrong parent failure for A");
+
+        BuildSettings settingsB = buildNodes.get(1).getBuildSettings();
+        assertEquals(2, settingsB.getWeight(), "Wrong weight parsed for setting B");
+        assertEquals(Collections.emptyList(), settingsB.getAgentNames(), "B should have default agents");
+        assertEquals(ParentFailureMode.BUILD, settingsB.getOnParentFailure(), "Wrong parent failure for B");
+    }
+
+    @Test
+    public void multipleSettingsTest_manyTargets() throws ParseException {
+        final int numberOfJobs = 1_000;
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < numberOfJobs; i++) {
+            input.append(i == 0 ? "" : ", ").append("job").append(i);
+        }
+        input.append(" {\n")
+             .append("name: \"shared name\"\n")
+             .append("agent: [agent1, agent2]\n")
+             .append("maxDuration: 00:30\n")
+             .append("}\n");
+        input.append("job0 -> job1");
+
+        List<ParsedBuildJob> buildNodes = DslParser.parseBuildNoVerify(input.toString()).parsedJobs;
+        assertEquals(numberOfJobs, buildNodes.size(), "Wrong number of build nodes");
+        Set<List<BuildAgent>> agentLists = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ParsedBuildJob job : buildNodes) {
+            BuildSettings settings = job.getBuildSettings();
+            assertEquals("shared name", settings.getDisplayName(), "Wrong name for " + job.getId());
+            assertEquals(Arrays.asList("agent1", "agent2"), settings.getAgentNames(), "Wrong agents for " + job.getId());
+            assertEquals(Duration.ofMinutes(30), settings.getMaxDuration(), "Wrong max duration for " + job.getId());
+            agentLists.add(settings.getAgents());
+        }
+        assertEquals(numberOfJobs, agentLists.size(), "Every job should have its own list of agents");
+    }
+
     @Test
     public void testAllSettingsBlock() throws Exception {
         // block A should inherit weight properties from global configuration
@@ -419,7 +472,7 @@ public class TestDslParser {
     }
 
     ///////////////////////
-    // Scheduler settings - community version
+    // Scheduler settings
     ///////////////////////
     @Test
     public void parseSchedulerSettings() throws ParseException {
@@ -433,6 +486,128 @@ public class TestDslParser {
         assertEquals(new ArrayList<>(), settings.buildThrottle, "Build throttle is not supported in community version");
     }
 
+    @Test
+    public void parseSchedulerSettings_pro() throws ParseException {
+        String input = "_BUILD {\n"
+                + "maxDuration: 12:15\n"
+                + "buildThrottle: [12:00|5]\n"
+                + "}";
+        PluginVersion.setPro();
+        SchedulerSettings settings = DslParser.parseBuildNoVerify(input).schedulerSettings;
+        assertEquals(Duration.ofHours(12).plusMinutes(15), settings.maxDuration, "Wrong max build time");
+        assertEquals("[12:00|5]", settings.buildThrottle.toString(), "Wrong build throttle");
+    }
+
+    @Test
+    public void parseBuildThrottle() throws ParseException {
+        PluginVersion.setPro();
+        String input = "_BUILD {\n"
+                + "buildThrottle: [20:00|-1, 12:15|3,\n"
+                + "\"16:30\"|12]\n"
+                + "maxDuration: 1:00\n"
+                + "}";
+        SchedulerSettings settings = DslParser.parseBuildNoVerify(input).schedulerSettings;
+        assertEquals("[12:15|3, 16:30|12, 20:00|-1]", settings.buildThrottle.toString(), "Throttles should be sorted by time");
+        assertEquals(SchedulerSettings.NO_RESTRICTION, settings.getAllowedExecutors(LocalTime.of(21, 0)));
+        assertEquals(Duration.ofHours(1), settings.maxDuration);
+
+        settings = DslParser.parseBuildNoVerify("_BUILD { buildThrottle: [] }").schedulerSettings;
+        assertTrue(settings.buildThrottle.isEmpty());
+    }
+
+    @Test
+    public void parseBuildThrottle_invalid() {
+        PluginVersion.setPro();
+        ParseException ex = assertThrows(ParseException.class, () -> {
+            DslParser.parseBuildNoVerify("_BUILD {\nbuildThrottle: [12:00 5]\n}");
+        });
+        assertEquals("Line(2): buildThrottle value expected hh:mm|limit, got '5' instead of '|'", ex.getMessage());
+
+        ex = assertThrows(ParseException.class, () -> {
+            DslParser.parseBuildNoVerify("_BUILD {\nbuildThrottle: [12:00|5 13:00|2]\n}");
+        });
+        assertEquals("Line(2): buildThrottle field expected ',' or ']', got '13'", ex.getMessage());
+
+        ex = assertThrows(ParseException.class, () -> {
+            DslParser.parseBuildNoVerify("_BUILD {\nbuildThrottle: [12:00|0]\n}");
+        });
+        assertEquals("Line(2): invalid buildThrottle value, expected number > 0 or -1, got: '0'", ex.getMessage());
+
+        ex = assertThrows(ParseException.class, () -> {
+            DslParser.parseBuildNoVerify("_BUILD {\nbuildThrottle: [12:00|1\n}");
+        });
+        assertEquals("Line(3): buildThrottle field expected hh:mm|limit or ']', got '}'. Did you forget the closing ']'?", ex.getMessage());
+    }
+
+    @Test
+    public void parseStandaloneBuildThrottle() throws ParseException {
+        List<SchedulerSettings.Throttle> throttles = DslParser.parseBuildThrottle("[08:00|2, 18:00|-1]");
+        assertEquals(2, throttles.size());
+        assertEquals(LocalTime.of(8, 0), throttles.get(0).time);
+        assertEquals(2, throttles.get(0).executors);
+        assertEquals(SchedulerSettings.NO_RESTRICTION, throttles.get(1).executors);
+
+        ParseException ex = assertThrows(ParseException.class, () -> DslParser.parseBuildThrottle("[08:00|2] 5"));
+        assertEquals("Line(1): buildThrottle expected end of input, got '5'", ex.getMessage());
+    }
+
+    @Test
+    public void parseMaxParallelBuilds() throws ParseException {
+        String input = "_BUILD {\n"
+                + "maxParallelBuilds: 4\n"
+                + "}";
+        SchedulerSettings settings = DslParser.parseBuildNoVerify(input).schedulerSettings;
+        assertEquals(4, settings.maxParallelBuilds);
+
+        input = "_BUILD { maxParallelBuilds: -1 }";
+        settings = DslParser.parseBuildNoVerify(input).schedulerSettings;
+        assertEquals(SchedulerSettings.NO_RESTRICTION, settings.maxParallelBuilds);
+
+        settings = DslParser.parseBuildNoVerify("A -> B").schedulerSettings;
+        assertEquals(SchedulerSettings.NO_RESTRICTION, settings.maxParallelBuilds, "Builds should not be limited by default");
+    }
+
+    @Test
+    public void parseMaxParallelBuilds_invalidValue() {
+        ParseException ex = assertThrows(ParseException.class, () -> {
+            DslParser.parseBuildNoVerify("_BUILD {\nmaxParallelBuilds: 0\n}");
+        });
+        assertEquals("Line(2): invalid maxParallelBuilds value, expected number > 0 or -1, got: '0'", ex.getMessage());
+
+        ex = assertThrows(ParseException.class, () -> {
+            DslParser.parseBuildNoVerify("_BUILD {\nmaxParallelBuilds: -2\n}");
+        });
+        assertEquals("Line(2): invalid maxParallelBuilds value, expected number > 0 or -1, got: '-2'", ex.getMessage());
+    }
+
+    @Test
+    public void parseSchedulingPriority() throws ParseException {
+        SchedulerSettings settings = DslParser.parseBuildNoVerify("A -> B").schedulerSettings;
+        assertEquals(SchedulerSettings.SchedulingPriority.ORDER, settings.priority);
+
+        settings = DslParser.parseBuildNoVerify("_BUILD {\npriority: CRITICAL_PATH\n}").schedulerSettings;
+        assertEquals(SchedulerSettings.SchedulingPriority.CRITICAL_PATH, settings.priority);
+
+        ParseException ex = assertThrows(ParseException.class, () -> {
+            DslParser.parseBuildNoVerify("_BUILD {\npriority: FASTEST\n}");
+        });
+        assertEquals("Line(2): unknown priority. Expected priority: [ORDER, CRITICAL_PATH], got: 'FASTEST'", ex.getMessage());
+    }
+
+    @Test
+    public void parseAgentSelection() throws ParseException {
+        SchedulerSettings settings = DslParser.parseBuildNoVerify("A -> B").schedulerSettings;
+        assertEquals(SchedulerSettings.AgentSelection.LEAST_LOADED, settings.agentSelection);
+
+        settings = DslParser.parseBuildNoVerify("_BUILD {\nagentSelection: PARENT_LOCALITY\n}").schedulerSettings;
+        assertEquals(SchedulerSettings.AgentSelection.PARENT_LOCALITY, settings.agentSelection);
+
+        ParseException ex = assertThrows(ParseException.class, () -> {
+            DslParser.parseBuildNoVerify("_BUILD {\nagentSelection: RANDOM\n}");
+        });
+        assertEquals("Line(2): unknown agent selection. Expected agent selection: [LEAST_LOADED, LAST_BUILT_ON, PARENT_LOCALITY], got: 'RANDOM'", ex.getMessage());
+    }
+
     @Test
     public void unknownSettingsField() {
         String pipeline = "A {\n"
@@ -3,6 +3,7 @@ package eu.royalsloth.depbuilder.dsl;
 import eu.royalsloth.depbuilder.dsl.scheduling.BuildLayers;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -238,4 +239,50 @@ class TestParsedBuildJob {
         List<String> cycle = layers.getBuildCycle();
         assertEquals(Arrays.asList("A", "C", "D", "A"), cycle, "Wrong cycle detected");
     }
+
+    @Test
+    public void topologicalSort_allCyclesReported() throws Exception {
+        /*
+             A
+           /   \
+          B     C
+          ||    ||
+          D     E
+         */
+        List<ParsedBuildJob> nodes = parseBuildNodes("A -> B -> D -> B; A -> C -> E -> C;");
+        BuildLayers layers = BuildLayers.topologicalSort(nodes);
+        assertTrue(layers.hasCycle(), "Build cycle was not detected");
+        List<List<String>> expected = Arrays.asList(Arrays.asList("E", "C", "E"), Arrays.asList("D", "B", "D"));
+        assertEquals(expected, layers.getBuildCycles(), "Wrong build cycles detected");
+        assertEquals(expected.get(0), layers.getBuildCycle(), "First cycle should be the main build cycle");
+    }
+
+    @Test
+    public void topologicalSort_longChain() {
+        final int numberOfNodes = 20_000;
+        List<ParsedBuildJob> nodes = new ArrayList<>(numberOfNodes);
+        for (int i = 0; i < numberOfNodes; i++) {
+            List<String> children = i + 1 < numberOfNodes ? Arrays.asList("N" + (i + 1)) : Arrays.asList();
+            nodes.add(new ParsedBuildJob("N" + i, children));
+        }
+
+        BuildLayers layers = BuildLayers.topologicalSort(nodes);
+        assertFalse(layers.hasCycle(), "Detected cycle where there should be none");
+        assertEquals(numberOfNodes, layers.getOrderedBuildLayers().size(), "Wrong number of build layers");
+        assertEquals(Arrays.asList("N" + (numberOfNodes - 1)), layers.getOrderedBuildLayers().get(numberOfNodes - 1));
+    }
+
+    @Test
+    public void topologicalSort_longCycle() {
+        final int numberOfNodes = 20_000;
+        List<ParsedBuildJob> nodes = new ArrayList<>(numberOfNodes);
+        for (int i = 0; i < numberOfNodes; i++) {
+            nodes.add(new ParsedBuildJob("N" + i, Arrays.asList("N" + ((i + 1) % numberOfNodes))));
+        }
+
+        BuildLayers layers = BuildLayers.topologicalSort(nodes);
+        assertTrue(layers.hasCycle(), "Build cycle was not detected");
+        assertEquals(1, layers.getBuildCycles().size(), "Wrong number of cycles detected");
+        assertEquals(numberOfNodes + 1, layers.getBuildCycle().size(), "Cycle should contain all the nodes");
+    }
 }
@@ -0,0 +1,121 @@
+package eu.royalsloth.depbuilder.dsl;
+
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildJob;
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildLayers;
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TestPipelineCache {
+
+    @Test
+    public void contentHash() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                     PipelineCache.contentHash(""), "Wrong SHA-256 hash of empty pipeline");
+        assertNotEquals(PipelineCache.contentHash("A -> B"), PipelineCache.contentHash("A -> C"),
+                        "Different pipelines should have different hash");
+    }
+
+    @Test
+    public void samePipelineIsParsedOnce() throws ParseException {
+        PipelineCache cache = new PipelineCache(4);
+        PipelineCache.CachedPipeline first = cache.parseNoVerify("A -> B");
+        PipelineCache.CachedPipeline second = cache.parseNoVerify(new String("A -> B"));
+        assertSame(first, second, "Same pipeline text should be served from cache");
+        assertEquals(1, cache.size(), "Wrong cache size");
+
+        PipelineCache.CachedPipeline other = cache.parseNoVerify("A -> C");
+        assertNotSame(first, other, "Different pipeline should be parsed again");
+        assertEquals(2, cache.size(), "Wrong cache size");
+    }
+
+    @Test
+    public void leastRecentlyUsedPipelineIsEvicted() throws ParseException {
+        PipelineCache cache = new PipelineCache(2);
+        PipelineCache.CachedPipeline a = cache.parseNoVerify("A");
+        PipelineCache.CachedPipeline b = cache.parseNoVerify("B");
+        // A is now used more recently than B
+        cache.parseNoVerify("A");
+        cache.parseNoVerify("C");
+
+        assertEquals(2, cache.size(), "Cache should not grow over its capacity");
+        assertSame(a, cache.parseNoVerify("A"), "Recently used pipeline should stay in cache");
+        assertNotSame(b, cache.parseNoVerify("B"), "Least recently used pipeline should be evicted");
+    }
+
+    @Test
+    public void parseErrorsAreNotCached() {
+        PipelineCache cache = new PipelineCache(4);
+        assertThrows(ParseException.class, () -> cache.parseNoVerify("A -> "));
+        assertEquals(0, cache.size(), "Invalid pipeline should not be cached");
+    }
+
+    @Test
+    public void verifiedPipelineIsVerifiedAgainWhenJobsChange() throws ParseException {
+        PipelineCache cache = new PipelineCache(4);
+        String pipeline = "A { agent: [agent1] }\nA -> B";
+        SettingsVerifier verifier = new SettingsVerifier(new HashSet<>(Arrays.asList("agent1")),
+                                                         new HashSet<>(Arrays.asList("A", "B")));
+        PipelineCache.CachedPipeline verified = cache.parse(pipeline, verifier);
+        assertSame(verified, cache.parse(pipeline, verifier), "Verified pipeline should be served from cache");
+
+        // unverified parse can reuse the verified result, but not the other way around
+        cache.clear();
+        PipelineCache.CachedPipeline notVerified = cache.parseNoVerify(pipeline);
+        assertNotSame(notVerified, cache.parse(pipeline, verifier), "Pipeline should be verified before use");
+
+        verifier.setBuildNodes("A");
+        assertThrows(ParseException.class, () -> cache.parse(pipeline, verifier),
+                     "Removed job should be detected even if the pipeline is cached");
+    }
+
+    @Test
+    public void verifiedPipelineIsVerifiedAgainWhenAgentsChange() throws ParseException {
+        PipelineCache cache = new PipelineCache(4);
+        String pipeline = "A { agent: [agent1, agent2] }\nA -> B";
+        SettingsVerifier verifier = new SettingsVerifier(new HashSet<>(Arrays.asList("agent1")),
+                                                         new HashSet<>(Arrays.asList("A", "B", "C")));
+        PipelineCache.CachedPipeline verified = cache.parse(pipeline, verifier);
+        assertEquals(Arrays.asList("agent1"), verified.getParsedBuild().parsedJobs.get(0).getBuildSettings().getAgentNames(),
+                     "Unknown agent should be dropped");
+
+        // adding a job that is not part of the pipeline doesn't matter
+        verifier.setBuildNodes("A", "B", "C", "D");
+        assertSame(verified, cache.parse(pipeline, verifier), "Verified pipeline should be served from cache");
+
+        verifier.setKnownAgents(new HashSet<>(Arrays.asList("agent1", "agent2")));
+        PipelineCache.CachedPipeline reverified = cache.parse(pipeline, verifier);
+        assertNotSame(verified, reverified, "Pipeline should be verified again when agents change");
+        assertEquals(Arrays.asList("agent1", "agent2"), reverified.getParsedBuild().parsedJobs.get(0).getBuildSettings().getAgentNames(),
+                     "New agent should be used");
+    }
+
+    @Test
+    public void createBuildLayers_freshBuildJobs() throws ParseException {
+        PipelineCache cache = new PipelineCache(4);
+        PipelineCache.CachedPipeline cached = cache.parseNoVerify("A -> B\nA -> C\nB -> D\nC -> D");
+
+        BuildLayers first = cached.createBuildLayers();
+        BuildLayers second = cached.createBuildLayers();
+        assertEquals(cached.getBuildLayers().getOrderedBuildLayers(), first.getOrderedBuildLayers(), "Wrong build layers");
+        assertEquals(first.getOrderedBuildLayers(), second.getOrderedBuildLayers(), "Wrong build layers");
+
+        BuildJob jobA = first.getBuildNode("A");
+        assertNotSame(jobA, second.getBuildNode("A"), "Every build should have its own build jobs");
+        jobA.setBuildStatus(BuildStatus.SUCCESS);
+        assertNotEquals(BuildStatus.SUCCESS, second.getBuildNode("A").getBuildStatus(),
+                        "Build status should not leak between the builds");
+    }
+
+    @Test
+    public void createBuildLayers_cycle() throws ParseException {
+        PipelineCache cache = new PipelineCache(4);
+        PipelineCache.CachedPipeline cached = cache.parseNoVerify("A -> B\nB -> A");
+        assertTrue(cached.createBuildLayers().hasCycle(), "Cycle should be reported");
+        assertEquals(Arrays.asList("A", "B", "A"), cached.getBuildLayers().getBuildCycle(), "Wrong cycle");
+    }
+}
@@ -0,0 +1,89 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBuildDurationHistory {
+
+    @Test
+    public void movingAverage() {
+        DurationStats stats = new DurationStats();
+        assertTrue(stats.isEmpty(), "Stats without samples should be empty");
+
+        stats.add(Duration.ofSeconds(100));
+        assertEquals(Duration.ofSeconds(100), stats.getAverage(), "First sample should be the average");
+
+        stats.add(Duration.ofSeconds(200));
+        // 0.3 * 200 + 0.7 * 100
+        assertEquals(Duration.ofSeconds(130), stats.getAverage(), "Wrong moving average");
+        assertEquals(2, stats.getNumberOfSamples());
+    }
+
+    @Test
+    public void percentileOfLastSamples() {
+        DurationStats stats = new DurationStats();
+        for (int i = 1; i <= 100; i++) {
+            stats.add(Duration.ofSeconds(i));
+        }
+
+        // only the last 20 samples are kept: 81..100
+        assertEquals(Duration.ofSeconds(81), stats.getPercentile(0));
+        assertEquals(Duration.ofSeconds(90), stats.getPercentile(50));
+        assertEquals(Duration.ofSeconds(99), stats.getPercentile(95));
+        assertEquals(Duration.ofSeconds(100), stats.getPercentile(100));
+        assertThrows(IllegalArgumentException.class, () -> stats.getPercentile(101));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        BuildDurationHistory history = new BuildDurationHistory();
+        history.recordExecution("A", Duration.ofSeconds(10));
+        history.recordQueueWait("A", Duration.ofSeconds(2));
+
+        BuildDurationHistory copy = history.copy();
+        history.recordExecution("A", Duration.ofSeconds(110));
+        history.recordExecution("B", Duration.ofSeconds(5));
+
+        assertEquals(Optional.of(Duration.ofSeconds(10)), copy.getExpectedDuration("A"), "Copy should not change");
+        assertEquals(Optional.of(Duration.ofSeconds(2)), copy.getExpectedQueueWait("A"));
+        assertEquals(Optional.empty(), copy.getExpectedDuration("B"));
+        assertEquals(Optional.of(Duration.ofSeconds(40)), history.getExpectedDuration("A"));
+    }
+
+    @Test
+    public void expectedDuration() {
+        BuildDurationHistory history = new BuildDurationHistory();
+        assertEquals(Optional.empty(), history.getExpectedDuration("A"), "Unknown job should not have duration");
+
+        history.recordQueueWait("A", Duration.ofSeconds(5));
+        assertEquals(Optional.empty(), history.getExpectedDuration("A"), "Execution of job was never recorded");
+        assertEquals(Optional.of(Duration.ofSeconds(5)), history.getExpectedQueueWait("A"));
+
+        history.recordExecution("A", Duration.ofMinutes(3));
+        assertEquals(Optional.of(Duration.ofMinutes(3)), history.getExpectedDuration("A"));
+        assertEquals(Optional.of(Duration.ofMinutes(3)), history.getDurationPercentile("A", 95));
+    }
+
+    @Test
+    public void durationEstimator() {
+        BuildDurationHistory history = new BuildDurationHistory();
+        BuildJob unknown = new BuildJob("X");
+        unknown.getBuildSettings().setWeight(3);
+        assertEquals(3, history.durationEstimator().estimateCost(unknown),
+                     "Job weight should be used when there is no history");
+
+        history.recordExecution("A", Duration.ofSeconds(10));
+        history.recordExecution("B", Duration.ofSeconds(30));
+        BuildJob heavy = new BuildJob("B");
+        heavy.getBuildSettings().setWeight(2);
+
+        BuildCostEstimator estimator = history.durationEstimator();
+        assertEquals(10, estimator.estimateCost(new BuildJob("A")));
+        assertEquals(30, estimator.estimateCost(heavy), "Measured job duration should not be multiplied by its weight");
+        assertEquals(20, estimator.estimateCost(unknown), "Unknown job should take as long as an average job");
+    }
+}
@@ -0,0 +1,102 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import eu.royalsloth.depbuilder.dsl.DslParser;
+import eu.royalsloth.depbuilder.dsl.ParseException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBuildGraph {
+
+    @Test
+    public void graphEdges() throws ParseException {
+        /*
+              A
+            /   \\
+           B     C
+            \\   /
+              D
+         */
+        BuildGraph graph = createGraph("A -> B -> D; A -> C -> D");
+        assertEquals(4, graph.size());
+
+        int a = graph.indexOf("A");
+        int b = graph.indexOf("B");
+        int c = graph.indexOf("C");
+        int d = graph.indexOf("D");
+        assertEquals(-1, graph.indexOf("X"));
+        assertEquals("D", graph.getJob(d).getId());
+
+        assertEquals(sorted(b, c), sorted(graph.getChildren(a)));
+        assertEquals(sorted(d), sorted(graph.getChildren(b)));
+        assertEquals(0, graph.numberOfChildren(d));
+
+        assertEquals(0, graph.numberOfParents(a));
+        assertEquals(sorted(a), sorted(graph.getParents(c)));
+        assertEquals(sorted(b, c), sorted(graph.getParents(d)));
+    }
+
+    @Test
+    public void jobsAreIndexedInBuildOrder() throws ParseException {
+        BuildGraph graph = createGraph("A -> B -> C -> D; E -> C; F");
+        for (int job = 0; job < graph.size(); job++) {
+            for (int edge = graph.parentsStart(job); edge < graph.parentsEnd(job); edge++) {
+                assertTrue(graph.parent(edge) < job, "Parent should have a smaller index than its child");
+            }
+            for (int edge = graph.childrenStart(job); edge < graph.childrenEnd(job); edge++) {
+                assertTrue(graph.child(edge) > job, "Child should have a bigger index than its parent");
+            }
+        }
+    }
+
+    @Test
+    public void parentsFromGraph() throws ParseException {
+        BuildLayers layers = BuildLayers.topologicalSort(DslParser.parseBuildNoVerify("A -> C; B -> C").parsedJobs);
+        BuildJob c = layers.getBuildNode("C");
+        List<String> parents = new ArrayList<>();
+        for (BuildJob parent : layers.getParents(c)) {
+            parents.add(parent.getId());
+        }
+        parents.sort(String::compareTo);
+        assertEquals(Arrays.asList("A", "B"), parents);
+    }
+
+    @Test
+    public void parentsAreUnmodifiableView() throws ParseException {
+        BuildLayers layers = BuildLayers.topologicalSort(DslParser.parseBuildNoVerify("A -> C; B -> C").parsedJobs);
+        List<BuildJob> parents = layers.getParents(layers.getBuildNode("C"));
+        assertEquals(2, parents.size());
+        assertThrows(UnsupportedOperationException.class, () -> parents.add(layers.getBuildNode("A")));
+        assertTrue(layers.getParents(layers.getBuildNode("A")).isEmpty(), "Root job should not have parents");
+    }
+
+    @Test
+    public void layersAreViewsOfGraphJobs() throws ParseException {
+        BuildLayers layers = BuildLayers.topologicalSort(DslParser.parseBuildNoVerify("A -> B -> C; D").parsedJobs);
+        BuildGraph graph = layers.getGraph();
+        int index = 0;
+        for (List<BuildJob> layer : layers.getLayers()) {
+            for (BuildJob job : layer) {
+                assertSame(graph.getJob(index++), job, "Layers should contain the graph jobs in the build order");
+            }
+        }
+        assertEquals(graph.size(), index);
+    }
+
+    private static BuildGraph createGraph(String input) throws ParseException {
+        return BuildLayers.topologicalSort(DslParser.parseBuildNoVerify(input).parsedJobs).getGraph();
+    }
+
+    private static List<Integer> sorted(int... values) {
+        List<Integer> list = new ArrayList<>();
+        for (int value : values) {
+            list.add(value);
+        }
+        list.sort(Integer::compareTo);
+        return list;
+    }
+}
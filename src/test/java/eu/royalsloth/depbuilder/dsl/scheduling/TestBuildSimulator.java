@@ -0,0 +1,93 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import eu.royalsloth.depbuilder.dsl.DslParser;
+import eu.royalsloth.depbuilder.dsl.ParseException;
+import eu.royalsloth.depbuilder.dsl.ParsedBuild;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBuildSimulator {
+
+    /*
+         A
+        / \
+       B   C
+        \ /
+         D
+     */
+    private static final String DIAMOND = "A -> B -> D; A -> C -> D";
+
+    private static final Instant START = Instant.parse("2020-01-01T10:00:00Z");
+
+    @Test
+    public void simulateUnlimitedExecutors() throws ParseException {
+        SimulationResult result = simulate(DIAMOND, new SchedulerSettings());
+        assertTrue(result.isComplete(), "All jobs should be built");
+        assertEquals(Duration.ofMinutes(45), result.getMakespan(), "Wrong makespan");
+        assertEquals(Arrays.asList("A", "B", "D"), result.getCriticalPath(), "Wrong critical path");
+        assertEquals(2, result.getPeakParallelBuilds());
+        assertEquals(2, result.getExecutors());
+        assertEquals(Duration.ofMinutes(55), result.getBusyTime());
+        assertEquals(55.0 / 90, result.getExecutorUtilization(), 0.0001);
+
+        SchedulePrediction.PredictedBuild d = result.getSchedule().getBuild("D").get();
+        assertEquals(START.plus(Duration.ofMinutes(40)), d.start, "D should start after B has finished");
+    }
+
+    @Test
+    public void simulateOneExecutor() throws ParseException {
+        SchedulerSettings settings = new SchedulerSettings();
+        settings.maxParallelBuilds = 1;
+        SimulationResult result = simulate(DIAMOND, settings);
+        assertEquals(Duration.ofMinutes(55), result.getMakespan(), "Jobs should be built one by one");
+        assertEquals(1, result.getExecutors());
+        assertEquals(1.0, result.getExecutorUtilization(), 0.0001);
+    }
+
+    @Test
+    public void simulateBuildThrottle() throws ParseException {
+        // only one job is allowed to build until noon
+        SchedulerSettings settings = new SchedulerSettings();
+        settings.addThrottle(new SchedulerSettings.Throttle(LocalTime.of(0, 0), 1),
+                             new SchedulerSettings.Throttle(LocalTime.of(12, 0), SchedulerSettings.NO_RESTRICTION));
+        ParsedBuild build = DslParser.parseBuildNoVerify("A; B; C");
+        BuildLayers layers = BuildLayers.topologicalSort(build.parsedJobs);
+        BuildSimulator simulator = new BuildSimulator(layers, settings, job -> Duration.ofMinutes(20), ZoneOffset.UTC);
+        Instant start = Instant.parse("2020-01-01T11:50:00Z");
+
+        SimulationResult result = simulator.simulate(start);
+        assertTrue(result.isComplete(), "All jobs should be built");
+        assertEquals(Duration.ofMinutes(30), result.getMakespan(), "Jobs should start once the throttle changes");
+        assertEquals(start.plus(Duration.ofMinutes(10)), result.getSchedule().getBuild("C").get().start);
+    }
+
+    @Test
+    public void simulationDoesNotFinishWithoutExecutors() throws ParseException {
+        SchedulerSettings settings = new SchedulerSettings();
+        settings.addThrottle(new SchedulerSettings.Throttle(LocalTime.of(0, 0), 0));
+        SimulationResult result = simulate(DIAMOND, settings);
+        assertFalse(result.isComplete(), "Jobs can't be built without executors");
+    }
+
+    private static SimulationResult simulate(String pipeline, SchedulerSettings settings) throws ParseException {
+        ParsedBuild build = DslParser.parseBuildNoVerify(pipeline);
+        BuildLayers layers = BuildLayers.topologicalSort(build.parsedJobs);
+        Map<String, Duration> durations = new HashMap<>();
+        durations.put("A", Duration.ofMinutes(10));
+        durations.put("B", Duration.ofMinutes(30));
+        durations.put("C", Duration.ofMinutes(10));
+        durations.put("D", Duration.ofMinutes(5));
+        Function<BuildJob, Duration> expectedDuration = job -> durations.get(job.getId());
+        return new BuildSimulator(layers, settings, expectedDuration, ZoneOffset.UTC).simulate(START);
+    }
+}
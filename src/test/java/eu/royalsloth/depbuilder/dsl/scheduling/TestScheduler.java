@@ -2,17 +2,26 @@ package eu.royalsloth.depbuilder.dsl.scheduling;
 
 import eu.royalsloth.depbuilder.dsl.DslParser;
 import eu.royalsloth.depbuilder.dsl.ParseException;
+import eu.royalsloth.depbuilder.dsl.ParsedBuild;
 import eu.royalsloth.depbuilder.dsl.ParsedBuildJob;
+import eu.royalsloth.depbuilder.jenkins.PluginVersion;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Arrays;
-import java.util.List;
+import java.time.LocalTime;
+import java.util.*;
 
 import static eu.royalsloth.depbuilder.dsl.scheduling.ScheduledNode.ScheduledNodeStatus;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TestScheduler {
+    @AfterEach
+    public void resetPluginVersion() {
+        PluginVersion.setCommunity();
+    }
+
     @Test
     public void testScheduler() throws ParseException {
         /*
@@ -313,11 +322,310 @@ public class TestScheduler {
         assertEquals(ScheduledNodeStatus.FINISHED, finished.getStatus());
     }
 
-    private Scheduler createScheduler(String input) throws ParseException {
-        List<ParsedBuildJob> nodes = DslParser.parseBuildNoVerify(input).parsedJobs;
+    @Test
+    public void parallelBuildsAreLimited() throws Exception {
+        /*
+            A  B  C
+             \ | /
+               D
+         */
+        List<ParsedBuildJob> nodes = DslParser.parseBuildNoVerify("A -> D; B -> D; C -> D").parsedJobs;
         BuildLayers layers = BuildLayers.topologicalSort(nodes);
-        SchedulerSettings defaultSettings = new SchedulerSettings();
-        return new Scheduler(layers, defaultSettings);
+        SchedulerSettings settings = new SchedulerSettings();
+        settings.maxParallelBuilds = 2;
+        Scheduler scheduler = new Scheduler(layers, settings);
+
+        ScheduledNode nodeA = scheduler.getNext();
+        assertEquals("A", nodeA.getBuildJob().getId());
+        ScheduledNode nodeB = scheduler.getNext();
+        assertEquals("B", nodeB.getBuildJob().getId());
+        assertEquals(2, scheduler.getBuildsInProgress());
+
+        // C is ready to build, but we already have 2 builds running
+        ScheduledNode waitNode = scheduler.getNext();
+        assertEquals(ScheduledNodeStatus.WAIT, waitNode.getStatus());
+
+        scheduler.successBuild(nodeB);
+        ScheduledNode nodeC = scheduler.getNext();
+        assertEquals("C", nodeC.getBuildJob().getId());
+
+        scheduler.successBuild(nodeA);
+        waitNode = scheduler.getNext();
+        assertEquals(ScheduledNodeStatus.WAIT, waitNode.getStatus(), "D should wait for C");
+
+        scheduler.successBuild(nodeC);
+        ScheduledNode nodeD = scheduler.getNext();
+        assertEquals("D", nodeD.getBuildJob().getId());
+        scheduler.successBuild(nodeD);
+
+        assertEquals(0, scheduler.getBuildsInProgress());
+        assertEquals(ScheduledNodeStatus.FINISHED, scheduler.getNext().getStatus());
+    }
+
+    @Test
+    public void weightIsCountedAsExecutorSlots() throws Exception {
+        String input = "_BUILD { maxParallelBuilds: 4 }\n"
+                + "A, B { weight: 3 }\n"
+                + "A; B; C; D";
+        Scheduler scheduler = createScheduler(input);
+
+        ScheduledNode nodeA = scheduler.getNext();
+        assertEquals("A", nodeA.getBuildJob().getId());
+        assertEquals(3, scheduler.getSlotsInProgress());
+
+        // B doesn't fit into the remaining slot and the lighter jobs should not skip it
+        assertEquals(ScheduledNodeStatus.WAIT, scheduler.getNext().getStatus(), "Heavy job B should wait for free slots");
+
+        scheduler.successBuild(nodeA);
+        ScheduledNode nodeB = scheduler.getNext();
+        assertEquals("B", nodeB.getBuildJob().getId());
+        ScheduledNode nodeC = scheduler.getNext();
+        assertEquals("C", nodeC.getBuildJob().getId());
+        assertEquals(4, scheduler.getSlotsInProgress());
+        assertEquals(2, scheduler.getBuildsInProgress());
+        assertEquals(ScheduledNodeStatus.WAIT, scheduler.getNext().getStatus(), "All slots should be taken");
+
+        scheduler.successBuild(nodeB);
+        scheduler.successBuild(nodeC);
+        assertEquals(0, scheduler.getSlotsInProgress());
+        assertEquals("D", scheduler.getNext().getBuildJob().getId());
+    }
+
+    @Test
+    public void jobHeavierThanLimitIsBuiltAlone() throws Exception {
+        String input = "_BUILD { maxParallelBuilds: 2 }\n"
+                + "A { weight: 5 }\n"
+                + "A; B";
+        Scheduler scheduler = createScheduler(input);
+
+        ScheduledNode nodeA = scheduler.getNext();
+        assertEquals("A", nodeA.getBuildJob().getId(), "Job heavier than the limit should be built when nothing else is building");
+        assertEquals(ScheduledNodeStatus.WAIT, scheduler.getNext().getStatus());
+
+        scheduler.successBuild(nodeA);
+        assertEquals("B", scheduler.getNext().getBuildJob().getId());
+    }
+
+    @Test
+    public void parentErrorWaitsForRunningBuilds() throws Exception {
+        /*
+           A(x)  C (slow)
+           |
+           B
+         */
+        Scheduler scheduler = createScheduler("A -> B; C");
+        ScheduledNode nodeA = scheduler.getNext();
+        assertEquals("A", nodeA.getBuildJob().getId());
+        ScheduledNode nodeC = scheduler.getNext();
+        assertEquals("C", nodeC.getBuildJob().getId());
+
+        // B can't be built, but we should not abort while C is still building
+        scheduler.errorBuild(nodeA);
+        assertEquals(ScheduledNodeStatus.WAIT, scheduler.getNext().getStatus());
+
+        scheduler.successBuild(nodeC);
+        assertEquals(ScheduledNodeStatus.ABORT, scheduler.getNext().getStatus());
+        assertTrue(scheduler.hasBuildErrors());
+    }
+
+    @Test
+    public void criticalPathPriority() throws Exception {
+        /*
+            A  C
+            |  |
+            B  D
+               |
+               E
+         */
+        String input = "_BUILD { priority: CRITICAL_PATH }\n"
+                + "A -> B; C -> D -> E";
+        Scheduler scheduler = createScheduler(input);
+        assertEquals(3, scheduler.getRemainingPathCost(scheduler.buildLayers.getBuildNode("C")));
+
+        // C starts the longest chain of jobs and should be built first
+        ScheduledNode nodeC = scheduler.getNext();
+        assertEquals("C", nodeC.getBuildJob().getId());
+        ScheduledNode nodeA = scheduler.getNext();
+        assertEquals("A", nodeA.getBuildJob().getId());
+
+        scheduler.successBuild(nodeA);
+        scheduler.successBuild(nodeC);
+        ScheduledNode nodeD = scheduler.getNext();
+        assertEquals("D", nodeD.getBuildJob().getId(), "D chain is longer than B chain");
+    }
+
+    @Test
+    public void criticalPathPriority_weight() throws Exception {
+        String input = "_BUILD { priority: CRITICAL_PATH }\n"
+                + "A { weight: 5 }\n"
+                + "A -> B; C -> D -> E";
+        Scheduler scheduler = createScheduler(input);
+        assertEquals(6, scheduler.getRemainingPathCost(scheduler.buildLayers.getBuildNode("A")));
+        assertEquals("A", scheduler.getNext().getBuildJob().getId());
+        assertEquals("C", scheduler.getNext().getBuildJob().getId());
+
+        // the cost estimator can override the weights
+        scheduler = createScheduler(input);
+        scheduler.setCostEstimator(job -> job.getId().equals("E") ? 100 : 1);
+        assertEquals(102, scheduler.getRemainingPathCost(scheduler.buildLayers.getBuildNode("C")));
+        assertEquals("C", scheduler.getNext().getBuildJob().getId());
+    }
+
+    @Test
+    public void buildThrottleLimitsParallelBuilds() throws Exception {
+        PluginVersion.setPro();
+        ParsedBuild build = DslParser.parseBuildNoVerify("_BUILD { buildThrottle: [08:00|1, 20:00|-1] }\n"
+                                                                 + "A -> D; B -> D; C -> D");
+        BuildLayers layers = BuildLayers.topologicalSort(build.parsedJobs);
+        VirtualClock clock = VirtualClock.atTime(LocalTime.of(12, 0));
+        Scheduler scheduler = new Scheduler(layers, build.schedulerSettings, clock);
+
+        ScheduledNode nodeA = scheduler.getNext();
+        assertEquals("A", nodeA.getBuildJob().getId());
+        assertEquals(ScheduledNodeStatus.WAIT, scheduler.getNext().getStatus(), "Only 1 build is allowed at noon");
+
+        // throttle has changed in the middle of the build
+        clock.advance(Duration.ofHours(8).plusMinutes(30));
+        assertEquals("B", scheduler.getNext().getBuildJob().getId());
+        assertEquals("C", scheduler.getNext().getBuildJob().getId());
+    }
+
+    @Test
+    public void waitingTimeEndsWhenBuildThrottleChanges() throws Exception {
+        PluginVersion.setPro();
+        ParsedBuild build = DslParser.parseBuildNoVerify("_BUILD { buildThrottle: [08:00|1, 20:00|-1] }\n"
+                                                                 + "A -> D; B -> D; C -> D");
+        BuildLayers layers = BuildLayers.topologicalSort(build.parsedJobs);
+        VirtualClock clock = VirtualClock.atTime(LocalTime.of(12, 0));
+        Scheduler scheduler = new Scheduler(layers, build.schedulerSettings, clock);
+        assertEquals(Scheduler.MAX_WAITING_TIME, scheduler.getWaitingTime());
+
+        // the scheduler should check the queued builds again as soon as the throttle allows another build
+        clock.advance(Duration.ofHours(8).minusSeconds(3));
+        assertEquals(Duration.ofSeconds(3), scheduler.getWaitingTime());
+    }
+
+    @Test
+    public void parentErrorPropagatesDownstream() throws Exception {
+        /*
+            A(x)
+            |
+            B
+            |
+            C
+            |
+            D (onParentFailure: BUILD)
+         */
+        String input = "D { onParentFailure: BUILD }\n"
+                + "A -> B -> C -> D";
+        Scheduler scheduler = createScheduler(input);
+        ScheduledNode nodeA = scheduler.getNext();
+        assertEquals("A", nodeA.getBuildJob().getId());
+        scheduler.errorBuild(nodeA);
+
+        // B and C can't be built, but D should be built regardless of parent errors
+        ScheduledNode nodeD = scheduler.getNext();
+        assertEquals("D", nodeD.getBuildJob().getId());
+        assertEquals(BuildStatus.PARENT_ERROR, scheduler.buildLayers.getBuildNode("B").getBuildStatus());
+        assertEquals(BuildStatus.PARENT_ERROR, scheduler.buildLayers.getBuildNode("C").getBuildStatus());
+        scheduler.successBuild(nodeD);
+
+        assertEquals(ScheduledNodeStatus.ABORT, scheduler.getNext().getStatus());
+        assertTrue(scheduler.hasBuildErrors());
+    }
+
+    @Test
+    public void wideGraphIsScheduledInLayerOrder() throws Exception {
+        // A -> X0 ... A -> X999, every X is also a parent of B
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            input.append(String.format("A -> X%d -> B;", i));
+        }
+        Scheduler scheduler = createScheduler(input.toString());
+        ScheduledNode nodeA = scheduler.getNext();
+        assertEquals("A", nodeA.getBuildJob().getId());
+        scheduler.successBuild(nodeA);
+
+        List<BuildJob> secondLayer = scheduler.buildLayers.getLayers().get(1);
+        assertEquals(1000, secondLayer.size());
+        for (BuildJob expected : secondLayer) {
+            ScheduledNode node = scheduler.getNext();
+            assertEquals(expected.getId(), node.getBuildJob().getId());
+        }
+
+        // B has to wait for all X nodes
+        assertEquals(ScheduledNodeStatus.WAIT, scheduler.getNext().getStatus());
+        for (BuildJob job : secondLayer) {
+            scheduler.successBuild(job);
+        }
+        assertEquals("B", scheduler.getNext().getBuildJob().getId());
+    }
+
+    @Test
+    public void predictSchedule() throws Exception {
+        /*
+             A
+            / \
+           B   C
+               |
+               D
+         */
+        String input = "_BUILD {\n"
+                + "maxParallelBuilds: 1\n"
+                + "}\n"
+                + "A -> B; A -> C -> D";
+        Scheduler scheduler = createScheduler(input);
+        Map<String, Duration> durations = new HashMap<>();
+        durations.put("A", Duration.ofMinutes(10));
+        durations.put("B", Duration.ofMinutes(5));
+        durations.put("C", Duration.ofMinutes(20));
+        durations.put("D", Duration.ofMinutes(1));
+
+        // A is building, the rest of the jobs have to wait for it
+        assertEquals("A", scheduler.getNext().getBuildJob().getId());
+        Instant now = Instant.parse("2020-01-01T10:00:00Z");
+        SchedulePrediction prediction = scheduler.predictSchedule(now, job -> durations.get(job.getId()));
+        assertTrue(prediction.isComplete(), "All jobs should be predicted");
+        assertPrediction(prediction, "A", now, 0, 10);
+        assertPrediction(prediction, "B", now, 10, 15);
+        assertPrediction(prediction, "C", now, 15, 35);
+        assertPrediction(prediction, "D", now, 35, 36);
+        assertEquals(Duration.ofMinutes(36), prediction.getRemainingTime());
+
+        // prediction should not change the scheduler state
+        assertEquals(ScheduledNodeStatus.WAIT, scheduler.getNext().getStatus());
+        scheduler.successBuild(scheduler.buildLayers.getBuildNode("A"));
+        prediction = scheduler.predictSchedule(now, job -> durations.get(job.getId()));
+        assertFalse(prediction.getBuild("A").isPresent(), "Finished job should not be predicted");
+        assertPrediction(prediction, "B", now, 0, 5);
+        assertPrediction(prediction, "D", now, 25, 26);
+        assertEquals("B", scheduler.getNext().getBuildJob().getId());
+    }
+
+    @Test
+    public void predictSchedule_parallelBuilds() throws Exception {
+        Scheduler scheduler = createScheduler("A -> B; A -> C -> D");
+        Instant now = Instant.parse("2020-01-01T10:00:00Z");
+        SchedulePrediction prediction = scheduler.predictSchedule(now, job -> Duration.ofMinutes(10));
+        assertPrediction(prediction, "A", now, 0, 10);
+        assertPrediction(prediction, "B", now, 10, 20);
+        assertPrediction(prediction, "C", now, 10, 20);
+        assertPrediction(prediction, "D", now, 20, 30);
+        assertEquals(now.plus(Duration.ofMinutes(30)), prediction.getFinishTime());
+    }
+
+    private static void assertPrediction(SchedulePrediction prediction, String job, Instant now,
+            long startMinutes, long finishMinutes) {
+        Optional<SchedulePrediction.PredictedBuild> build = prediction.getBuild(job);
+        assertTrue(build.isPresent(), "Missing prediction for job " + job);
+        assertEquals(now.plus(Duration.ofMinutes(startMinutes)), build.get().start, "Wrong start of job " + job);
+        assertEquals(now.plus(Duration.ofMinutes(finishMinutes)), build.get().finish, "Wrong finish of job " + job);
+    }
+
+    private Scheduler createScheduler(String input) throws ParseException {
+        ParsedBuild build = DslParser.parseBuildNoVerify(input);
+        BuildLayers layers = BuildLayers.topologicalSort(build.parsedJobs);
+        return new Scheduler(layers, build.schedulerSettings);
     }
 
     private Scheduler createScheduler(String input, List<String> startNodes) throws ParseException {
@@ -2,7 +2,9 @@ package eu.royalsloth.depbuilder.dsl.scheduling;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.time.LocalTime;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -54,4 +56,20 @@ class TestSchedulerSettings {
         LocalTime time = LocalTime.of(23, 59);
         assertEquals(10, settings.getAllowedExecutors(time));
     }
+
+    @Test
+    public void timeUntilNextThrottle() {
+        assertEquals(Optional.of(Duration.ofHours(10)), settings.getTimeUntilNextThrottle(LocalTime.of(0, 0)));
+        assertEquals(Optional.of(Duration.ofMinutes(1)), settings.getTimeUntilNextThrottle(LocalTime.of(14, 59)));
+        // after the last throttle, the next change happens at midnight
+        assertEquals(Optional.of(Duration.ofHours(2)), settings.getTimeUntilNextThrottle(LocalTime.of(22, 0)));
+        assertEquals(Optional.empty(), new SchedulerSettings().getTimeUntilNextThrottle(LocalTime.of(22, 0)));
+    }
+
+    @Test
+    public void allowedParallelBuilds() {
+        settings.maxParallelBuilds = 3;
+        assertEquals(3, settings.getAllowedParallelBuilds(LocalTime.of(9, 0)));
+        assertEquals(2, settings.getAllowedParallelBuilds(LocalTime.of(15, 0)));
+    }
 }
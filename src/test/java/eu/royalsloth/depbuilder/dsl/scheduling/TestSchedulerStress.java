@@ -0,0 +1,256 @@
+package eu.royalsloth.depbuilder.dsl.scheduling;
+
+import eu.royalsloth.depbuilder.dsl.ParsedBuildJob;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static eu.royalsloth.depbuilder.dsl.scheduling.BuildSettings.ParentFailureMode;
+import static eu.royalsloth.depbuilder.dsl.scheduling.ScheduledNode.ScheduledNodeStatus;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress tests of the scheduler with large randomly generated pipelines. The builds are not executed, their
+ * completion is faked with a virtual clock where every job takes its generated duration and either
+ * succeeds or fails. The tests check that the scheduler never breaks the build order or the parent failure
+ * rules and that the time spent in the scheduler stays within the budget.
+ */
+public class TestSchedulerStress {
+
+    /**
+     * Max average time the scheduler may spend per job (creating the scheduler, getNext and finishBuild
+     * calls). The budget is generous, since the usual overhead is a few microseconds, but it catches the
+     * regressions where the scheduling becomes quadratic in the number of jobs.
+     */
+    private static final long OVERHEAD_BUDGET_PER_JOB_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    @Test
+    public void stress_1kJobs_unlimitedExecutors() {
+        SyntheticPipeline pipeline = SyntheticPipeline.generate(1, 1_000, 4, 0.02);
+        simulate(pipeline, SchedulerSettings.NO_RESTRICTION);
+    }
+
+    @Test
+    public void stress_10kJobs_limitedExecutors() {
+        SyntheticPipeline pipeline = SyntheticPipeline.generate(2, 10_000, 6, 0.01);
+        simulate(pipeline, 32);
+    }
+
+    @Test
+    public void stress_20kJobs_noFailures() {
+        SyntheticPipeline pipeline = SyntheticPipeline.generate(3, 20_000, 5, 0);
+        SimulationStats stats = simulate(pipeline, 16);
+        assertEquals(ScheduledNodeStatus.FINISHED, stats.lastStatus, "Build without failures should finish");
+        assertEquals(20_000, stats.builtJobs, "All the jobs should be built");
+    }
+
+    @Test
+    public void stress_50kJobs() {
+        SyntheticPipeline pipeline = SyntheticPipeline.generate(4, 50_000, 3, 0.001);
+        simulate(pipeline, 64);
+    }
+
+    @Test
+    public void stress_randomPipelines() {
+        Random random = new Random(5);
+        for (int i = 0; i < 10; i++) {
+            int numberOfJobs = 1_000 + random.nextInt(4_000);
+            int maxFanIn = 1 + random.nextInt(8);
+            double failureRate = random.nextDouble() * 0.05;
+            int executors = random.nextBoolean() ? SchedulerSettings.NO_RESTRICTION : 1 + random.nextInt(50);
+            SyntheticPipeline pipeline = SyntheticPipeline.generate(random.nextLong(), numberOfJobs, maxFanIn, failureRate);
+            simulate(pipeline, executors);
+        }
+    }
+
+    private static class SyntheticPipeline {
+        final List<ParsedBuildJob> jobs = new ArrayList<>();
+        final List<List<Integer>> parents = new ArrayList<>();
+        final Duration[] durations;
+        final boolean[] fails;
+        final ParentFailureMode[] onParentFailure;
+
+        private SyntheticPipeline(int numberOfJobs) {
+            this.durations = new Duration[numberOfJobs];
+            this.fails = new boolean[numberOfJobs];
+            this.onParentFailure = new ParentFailureMode[numberOfJobs];
+        }
+
+        static String jobId(int job) {
+            return "J" + job;
+        }
+
+        static int jobIndex(BuildJob job) {
+            return Integer.parseInt(job.getId().substring(1));
+        }
+
+        int size() {
+            return durations.length;
+        }
+
+        /**
+         * Generate a random pipeline. The parents of every job have a lower index than the job itself, so
+         * the generated graph never contains a cycle and the job index order is a valid build order. Most of
+         * the parents are chosen among the nearby jobs (which creates long chains), while some of them are
+         * chosen among the first few jobs (which creates jobs with a large number of children).
+         */
+        static SyntheticPipeline generate(long seed, int numberOfJobs, int maxFanIn, double failureRate) {
+            final Random random = new Random(seed);
+            final SyntheticPipeline pipeline = new SyntheticPipeline(numberOfJobs);
+            final List<Set<String>> children = new ArrayList<>(numberOfJobs);
+            for (int job = 0; job < numberOfJobs; job++) {
+                children.add(new LinkedHashSet<>());
+                Set<Integer> jobParents = new TreeSet<>();
+                int fanIn = job == 0 ? 0 : random.nextInt(maxFanIn + 1);
+                for (int i = 0; i < fanIn; i++) {
+                    int parent;
+                    if (random.nextDouble() < 0.1) {
+                        parent = random.nextInt(Math.min(job, 20));
+                    } else {
+                        int windowStart = Math.max(0, job - 200);
+                        parent = windowStart + random.nextInt(job - windowStart);
+                    }
+                    jobParents.add(parent);
+                }
+                for (int parent : jobParents) {
+                    children.get(parent).add(jobId(job));
+                }
+
+                pipeline.parents.add(new ArrayList<>(jobParents));
+                pipeline.durations[job] = Duration.ofSeconds(1 + random.nextInt(3600));
+                pipeline.fails[job] = random.nextDouble() < failureRate;
+                pipeline.onParentFailure[job] = random.nextBoolean() ? ParentFailureMode.ABORT : ParentFailureMode.BUILD;
+            }
+
+            for (int job = 0; job < numberOfJobs; job++) {
+                BuildSettings settings = new BuildSettings(jobId(job));
+                settings.setOnParentFailure(pipeline.onParentFailure[job]);
+                pipeline.jobs.add(new ParsedBuildJob(jobId(job), children.get(job), settings));
+            }
+            // the scheduler should not depend on the order in which the jobs were defined
+            Collections.shuffle(pipeline.jobs, random);
+            return pipeline;
+        }
+    }
+
+    private static class SimulationStats {
+        ScheduledNodeStatus lastStatus;
+        int builtJobs;
+    }
+
+    /**
+     * Drive the scheduler through the whole pipeline build and verify the build order, the parent failure
+     * rules and the scheduling overhead.
+     */
+    private static SimulationStats simulate(SyntheticPipeline pipeline, int maxParallelBuilds) {
+        final int numberOfJobs = pipeline.size();
+        BuildLayers layers = BuildLayers.topologicalSort(pipeline.jobs);
+        assertFalse(layers.hasCycle(), "Generated pipeline should not have a cycle");
+
+        SchedulerSettings settings = new SchedulerSettings();
+        settings.maxParallelBuilds = maxParallelBuilds;
+        VirtualClock clock = new VirtualClock(Instant.EPOCH, ZoneOffset.UTC);
+
+        long schedulingNanos = 0;
+        long start = System.nanoTime();
+        Scheduler scheduler = new Scheduler(layers, settings, clock);
+        schedulingNanos += System.nanoTime() - start;
+
+        final long[] startedAt = new long[numberOfJobs];
+        final long[] finishedAt = new long[numberOfJobs];
+        Arrays.fill(startedAt, -1);
+        Arrays.fill(finishedAt, -1);
+        // fake completion source, running builds ordered by their finish time: [finish time in millis, job index]
+        final PriorityQueue<long[]> running = new PriorityQueue<>(Comparator.comparingLong((long[] build) -> build[0])
+                                                                            .thenComparingLong(build -> build[1]));
+        final SimulationStats stats = new SimulationStats();
+        while (true) {
+            start = System.nanoTime();
+            ScheduledNode node = scheduler.getNext();
+            schedulingNanos += System.nanoTime() - start;
+
+            ScheduledNodeStatus status = node.getStatus();
+            if (status == ScheduledNodeStatus.FINISHED || status == ScheduledNodeStatus.ABORT) {
+                stats.lastStatus = status;
+                break;
+            }
+
+            final long now = clock.millis();
+            if (status == ScheduledNodeStatus.OK) {
+                int job = SyntheticPipeline.jobIndex(node.getBuildJob());
+                if (startedAt[job] != -1) {
+                    fail(String.format("Job %s was scheduled twice", SyntheticPipeline.jobId(job)));
+                }
+                for (int parent : pipeline.parents.get(job)) {
+                    // parents that were not built due to their parent errors are resolved right away
+                    final boolean parentResolved = finishedAt[parent] != -1
+                            || layers.getBuildNode(SyntheticPipeline.jobId(parent)).getBuildStatus() == BuildStatus.PARENT_ERROR;
+                    if (!parentResolved) {
+                        fail(String.format("Job %s was scheduled before its parent %s has finished",
+                                           SyntheticPipeline.jobId(job), SyntheticPipeline.jobId(parent)));
+                    }
+                }
+                startedAt[job] = now;
+                running.add(new long[]{now + pipeline.durations[job].toMillis(), job});
+                assertTrue(running.size() <= maxParallelBuilds, "Too many parallel builds: " + running.size());
+                stats.builtJobs++;
+                continue;
+            }
+
+            // WAIT: finish the next build
+            long[] next = running.poll();
+            assertNotNull(next, "Scheduler is waiting, but nothing is building");
+            clock.advanceTo(Instant.ofEpochMilli(next[0]));
+            final int job = (int) next[1];
+            finishedAt[job] = next[0];
+            BuildJob buildJob = layers.getBuildNode(SyntheticPipeline.jobId(job));
+            BuildStatus buildStatus = pipeline.fails[job] ? BuildStatus.ERROR : BuildStatus.SUCCESS;
+
+            start = System.nanoTime();
+            scheduler.finishBuild(buildJob, buildStatus);
+            schedulingNanos += System.nanoTime() - start;
+        }
+        assertTrue(running.isEmpty(), "Scheduler has stopped while the builds were still running");
+
+        // the job index order is a valid build order, so the parents are checked before their children
+        final boolean[] failed = new boolean[numberOfJobs];
+        boolean parentErrors = false;
+        for (int job = 0; job < numberOfJobs; job++) {
+            boolean parentFailed = false;
+            for (int parent : pipeline.parents.get(job)) {
+                parentFailed |= failed[parent];
+            }
+
+            BuildStatus expected;
+            if (parentFailed && pipeline.onParentFailure[job] == ParentFailureMode.ABORT) {
+                expected = BuildStatus.PARENT_ERROR;
+                parentErrors = true;
+            } else {
+                expected = pipeline.fails[job] ? BuildStatus.ERROR : BuildStatus.SUCCESS;
+            }
+            failed[job] = expected != BuildStatus.SUCCESS;
+
+            BuildStatus actual = layers.getBuildNode(SyntheticPipeline.jobId(job)).getBuildStatus();
+            if (expected != actual) {
+                fail(String.format("Job %s (onParentFailure: %s) expected status %s, got %s",
+                                   SyntheticPipeline.jobId(job), pipeline.onParentFailure[job], expected, actual));
+            }
+            final boolean wasBuilt = startedAt[job] != -1;
+            if (wasBuilt == (expected == BuildStatus.PARENT_ERROR)) {
+                fail(String.format("Job %s with status %s was built: %s", SyntheticPipeline.jobId(job), expected, wasBuilt));
+            }
+        }
+        ScheduledNodeStatus expectedLastStatus = parentErrors ? ScheduledNodeStatus.ABORT : ScheduledNodeStatus.FINISHED;
+        assertEquals(expectedLastStatus, stats.lastStatus, "Wrong final scheduler status");
+
+        long overheadPerJob = schedulingNanos / numberOfJobs;
+        assertTrue(overheadPerJob < OVERHEAD_BUDGET_PER_JOB_NANOS,
+                   String.format("Scheduling overhead %d ns per job exceeded the budget of %d ns (%d jobs)",
+                                 overheadPerJob, OVERHEAD_BUDGET_PER_JOB_NANOS, numberOfJobs));
+        return stats;
+    }
+}
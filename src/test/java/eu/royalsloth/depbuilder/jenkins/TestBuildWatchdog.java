@@ -0,0 +1,112 @@
+package eu.royalsloth.depbuilder.jenkins;
+
+import eu.royalsloth.depbuilder.dsl.scheduling.VirtualClock;
+import eu.royalsloth.depbuilder.jenkins.actions.BuildAddedCause;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBuildWatchdog {
+
+    private VirtualClock clock;
+    private VirtualTimer timer;
+    private BuildWatchdog watchdog;
+
+    @BeforeEach
+    public void setUp() {
+        clock = VirtualClock.atTime(LocalTime.of(12, 0));
+        timer = new VirtualTimer(clock);
+        watchdog = new BuildWatchdog(timer, clock);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        watchdog.close();
+        timer.shutdownNow();
+    }
+
+    private void advance(Duration duration) {
+        clock.advance(duration);
+        timer.runDueTasks();
+    }
+
+    @Test
+    public void deadlineIsMeasuredFromBuildStart() {
+        AtomicInteger notified = new AtomicInteger();
+        BuildAddedCause cause = new BuildAddedCause(clock);
+        cause.addOnBuildFinished(notified::incrementAndGet);
+        watchdog.watch(cause, Duration.ofMinutes(50));
+
+        // the build is waiting in the queue, the deadline timer should not be running yet
+        assertEquals(0, timer.getPendingTasks(), "Deadline timer should not run while the build is in queue");
+        advance(Duration.ofHours(2));
+        assertFalse(cause.isBuildTimedOut(), "Build waiting in queue should not time out");
+
+        cause.buildStarted();
+        assertEquals(clock.instant(), cause.getBuildStartTime().get(), "Build start should be measured with the given clock");
+        advance(Duration.ofMinutes(49));
+        assertFalse(cause.isBuildTimedOut(), "Build should not time out before its deadline");
+        assertEquals(0, notified.get());
+
+        advance(Duration.ofMinutes(1));
+        assertTrue(cause.isBuildTimedOut(), "Build should time out");
+        assertEquals(1, notified.get(), "Scheduler was not notified about the timed out build");
+    }
+
+    @Test
+    public void deadlineOfStartedBuildIsMeasuredFromItsStart() {
+        // the build has started before it was watched, the time that has already passed
+        // counts towards its max build time
+        BuildAddedCause cause = new BuildAddedCause(clock);
+        cause.buildStarted();
+        clock.advance(Duration.ofMinutes(30));
+        watchdog.watch(cause, Duration.ofHours(1));
+
+        advance(Duration.ofMinutes(29));
+        assertFalse(cause.isBuildTimedOut(), "Build should not time out before its deadline");
+        advance(Duration.ofMinutes(1));
+        assertTrue(cause.isBuildTimedOut(), "Build should time out an hour after it has started");
+    }
+
+    @Test
+    public void finishedBuildDoesNotTimeOut() {
+        BuildAddedCause cause = new BuildAddedCause(clock);
+        watchdog.watch(cause, Duration.ofMinutes(50));
+        cause.buildStarted();
+        assertEquals(1, timer.getPendingTasks(), "Deadline timer should run while the build is executing");
+        cause.buildFinished();
+        assertEquals(0, timer.getPendingTasks(), "Deadline timer of the finished build should be cancelled");
+
+        advance(Duration.ofHours(1));
+        assertFalse(cause.isBuildTimedOut(), "Finished build should not time out");
+    }
+
+    @Test
+    public void deadlineIsStartedOnlyOnce() {
+        // the build has started before it was watched, the start callback
+        // should not start another deadline
+        BuildAddedCause cause = new BuildAddedCause(clock);
+        cause.buildStarted();
+        watchdog.watch(cause, Duration.ofMinutes(1));
+        cause.buildStarted();
+        assertEquals(1, timer.getPendingTasks(), "Wrong number of deadline timers");
+    }
+
+    @Test
+    public void closeCancelsDeadlines() {
+        BuildAddedCause cause = new BuildAddedCause(clock);
+        watchdog.watch(cause, Duration.ofMinutes(1));
+        cause.buildStarted();
+        watchdog.close();
+
+        assertEquals(0, timer.getPendingTasks(), "Deadline timers should be cancelled");
+        advance(Duration.ofMinutes(5));
+        assertFalse(cause.isBuildTimedOut(), "Build should not time out once the watchdog is closed");
+    }
+}
@@ -1,5 +1,8 @@
 package eu.royalsloth.depbuilder.jenkins;
 
+import eu.royalsloth.depbuilder.dsl.scheduling.BuildStatus;
+import eu.royalsloth.depbuilder.jenkins.actions.PersistBuildInfoAction;
+import eu.royalsloth.depbuilder.jenkins.api.JobBuildStatus;
 import hudson.EnvVars;
 import hudson.Platform;
 import hudson.model.*;
@@ -16,6 +19,7 @@ import org.jvnet.hudson.test.JenkinsRule;
 import org.jvnet.hudson.test.SingleFileSCM;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,8 +37,8 @@ public class TestDslBuild {
 
     @Before
     public void setup() throws Exception {
-        // number of executors on the master node should be at least 1, otherwise we
-        // won't be able to schedule all the jobs, since our scheduler occupies 1 executor
+        // the pipeline build is running on a flyweight executor, the master executors
+        // are used for building the jobs
         jenkins.getInstance().setNumExecutors(2);
 
         // we are testing the build process of the community version of the plugin
@@ -163,6 +167,35 @@ public class TestDslBuild {
         jenkins.buildAndAssertStatus(Result.ABORTED, dslProject);
     }
 
+    /**
+     * When one of the parallel jobs is aborted, the jobs that are still building should be terminated
+     * instead of being left running without the pipeline build.
+     */
+    @Test
+    public void abortedJobCancelsParallelJobs() throws Exception {
+        WorkflowJob fastProject = jenkins.createProject(WorkflowJob.class, "project1");
+        fastProject.setDefinition(new CpsFlowDefinition("sleep 10s", true));
+        WorkflowJob slowProject = jenkins.createProject(WorkflowJob.class, "project2");
+        slowProject.setDefinition(new CpsFlowDefinition("sleep 60s", true));
+
+        DslProject dslProject = jenkins.createProject(DslProject.class);
+        String pipeline = "project1 {\n"
+                + "maxDuration: 00:00:02\n"
+                + "}\n"
+                + "project1\n"
+                + "project2";
+        dslProject.setPipeline(pipeline);
+        jenkins.buildAndAssertStatus(Result.ABORTED, dslProject);
+
+        WorkflowRun slowBuild = slowProject.getLastBuild();
+        if (slowBuild != null) {
+            // the build might be cancelled while it was still waiting in the queue
+            jenkins.waitForCompletion(slowBuild);
+            assertEquals(Result.ABORTED, slowBuild.getResult(), "Parallel job should be aborted");
+        }
+        assertTrue(jenkins.jenkins.getQueue().isEmpty(), "Parallel job should not wait in the queue");
+    }
+
     @Test
     public void syntaxErrorShouldFailTheBuild() throws Exception {
         FreeStyleProject firstProject = jenkins.createFreeStyleProject("project1");
@@ -215,6 +248,54 @@ public class TestDslBuild {
         assertEquals("master", getOrMaster(secondBuildNode), "Wrong build node for project2");
     }
 
+    /**
+     * Job should be built on the specified agent, even if it's not the first agent on Jenkins
+     */
+    @Test
+    public void testBuildOnSecondComputer() throws Exception {
+        EnvVars linux = createLinuxVars();
+        DumbSlave buildNode = jenkins.createSlave("build1", null, linux);
+        DumbSlave buildNode2 = jenkins.createSlave("build2", null, linux);
+
+        FreeStyleProject firstProject = jenkins.createFreeStyleProject("project1");
+        DslProject job = jenkins.createProject(DslProject.class);
+        String pipeline = "project1 {\n"
+                + "agent: [build2]\n"
+                + "}\n"
+                + "project1";
+        job.setPipeline(pipeline);
+
+        jenkins.waitOnline(buildNode);
+        jenkins.waitOnline(buildNode2);
+        jenkins.buildAndAssertSuccess(job);
+
+        FreeStyleBuild firstBuild = firstProject.getLastBuild();
+        assertNotNull(firstBuild, "project1 last build was null");
+        assertEquals("build2", getOrMaster(firstBuild.getBuiltOn()), "Wrong build node for project1");
+    }
+
+    /**
+     * Pipeline build should not take the executor from the jobs, so it should be possible to run it even
+     * when the master node has no executors.
+     */
+    @Test
+    public void buildWithoutMasterExecutors() throws Exception {
+        jenkins.getInstance().setNumExecutors(0);
+        DumbSlave buildNode = jenkins.createSlave("build1", null, createLinuxVars());
+
+        FreeStyleProject firstProject = jenkins.createFreeStyleProject("project1");
+        DslProject job = jenkins.createProject(DslProject.class);
+        job.setPipeline("project1");
+
+        jenkins.waitOnline(buildNode);
+        DslBuild build = jenkins.buildAndAssertSuccess(job);
+        assertEquals("master", getOrMaster(build.getBuiltOn()), "Pipeline build should run on master");
+
+        FreeStyleBuild firstBuild = firstProject.getLastBuild();
+        assertNotNull(firstBuild, "project1 last build was null");
+        assertEquals("build1", getOrMaster(firstBuild.getBuiltOn()), "Wrong build node for project1");
+    }
+
     /**
      * Checking if the error build prevents building other projects downstream
      */
@@ -262,6 +343,39 @@ public class TestDslBuild {
         assertEquals(Result.SUCCESS, secondProjectBuild.getResult(), "project2 build should succeed but it didn't");
     }
 
+    /**
+     * Build status of the finished jobs should be served from the data stored in the build, without
+     * loading the job builds (which might no longer exist).
+     */
+    @Test
+    public void buildStatusIsStoredInBuild() throws Exception {
+        FreeStyleProject firstProject = jenkins.createFreeStyleProject("project1");
+        WorkflowJob secondProject = jenkins.createProject(WorkflowJob.class, "project2");
+        secondProject.setDefinition(new CpsFlowDefinition("error 'Fail!'", true));
+
+        DslProject job = jenkins.createProject(DslProject.class);
+        job.setPipeline("project1 -> project2");
+        DslBuild build = jenkins.buildAndAssertStatus(Result.FAILURE, job);
+
+        // the referenced builds are deleted, but their status is still known
+        firstProject.getLastBuild().delete();
+        secondProject.getLastBuild().delete();
+
+        PersistBuildInfoAction action = build.getAction(PersistBuildInfoAction.class);
+        List<JobBuildStatus> statuses = action.getBuildStatus();
+        assertEquals(2, statuses.size(), "Wrong number of job build statuses");
+
+        JobBuildStatus first = statuses.get(0);
+        assertEquals("project1", first.projectName, "Wrong project name");
+        assertEquals(1, first.buildNumber, "Wrong build number");
+        assertEquals(BuildStatus.SUCCESS.toString(), first.buildStatus, "Wrong build status");
+        assertEquals("job/project1/1/", first.buildUri, "Wrong build uri");
+
+        JobBuildStatus second = statuses.get(1);
+        assertEquals("project2", second.projectName, "Wrong project name");
+        assertEquals(BuildStatus.ERROR.toString(), second.buildStatus, "Wrong build status");
+    }
+
     /**
      * Checking if pulling pipeline data with the SCM works as expected
      */
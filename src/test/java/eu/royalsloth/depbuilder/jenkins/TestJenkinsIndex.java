@@ -0,0 +1,64 @@
+package eu.royalsloth.depbuilder.jenkins;
+
+import hudson.model.FreeStyleProject;
+import hudson.slaves.DumbSlave;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.MockFolder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests that are checking if the {@link JenkinsIndex} is following the changes of the jobs and
+ * agents on Jenkins.
+ */
+public class TestJenkinsIndex {
+    @Rule
+    public final JenkinsRule jenkins = new JenkinsRule();
+
+    @Test
+    public void jobsAreIndexed() throws Exception {
+        FreeStyleProject project = jenkins.createFreeStyleProject("project1");
+        JenkinsIndex index = JenkinsIndex.get();
+        assertTrue(index.getJobNames().contains("project1"), "Created job should be indexed");
+        assertTrue(index.getJobUrl("project1").endsWith("job/project1/"), "Wrong job url: " + index.getJobUrl("project1"));
+        assertEquals("", index.getJobUrl("missing"), "Missing job should not have url");
+        assertFalse(index.getJobNamesExcept("project1").contains("project1"), "Excluded job should not be present");
+
+        project.renameTo("renamed");
+        assertFalse(index.getJobNames().contains("project1"), "Old job name should be removed");
+        assertTrue(index.getJobNames().contains("renamed"), "Renamed job should be indexed");
+        assertTrue(index.getJobUrl("renamed").endsWith("job/renamed/"), "Wrong job url: " + index.getJobUrl("renamed"));
+
+        project.delete();
+        assertFalse(index.getJobNames().contains("renamed"), "Deleted job should be removed");
+    }
+
+    @Test
+    public void jobsInFoldersAreIndexed() throws Exception {
+        MockFolder folder = jenkins.createFolder("folder");
+        folder.createProject(FreeStyleProject.class, "project1");
+        JenkinsIndex index = JenkinsIndex.get();
+        assertTrue(index.getJobNames().contains("folder/project1"), "Job in folder should be indexed");
+
+        folder.renameTo("renamedFolder");
+        assertFalse(index.getJobNames().contains("folder/project1"), "Old job name should be removed");
+        assertTrue(index.getJobNames().contains("renamedFolder/project1"), "Job in renamed folder should be indexed");
+
+        folder.delete();
+        assertFalse(index.getJobNames().contains("renamedFolder/project1"), "Jobs of deleted folder should be removed");
+    }
+
+    @Test
+    public void agentsAreIndexed() throws Exception {
+        JenkinsIndex index = JenkinsIndex.get();
+        assertTrue(index.getAgentNames().contains("master"), "Master should be indexed");
+
+        DumbSlave agent = jenkins.createSlave("agent1", null, null);
+        assertTrue(index.getAgentNames().contains("agent1"), "Created agent should be indexed");
+
+        jenkins.jenkins.removeNode(agent);
+        assertFalse(index.getAgentNames().contains("agent1"), "Removed agent should be removed");
+    }
+}
@@ -0,0 +1,210 @@
+package eu.royalsloth.depbuilder.jenkins;
+
+import hudson.model.Result;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestOrchestrationLoop {
+
+    private ScheduledExecutorService executor;
+    private OrchestrationLoop loop;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        loop = new OrchestrationLoop(executor);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Orchestration that finishes after the given number of steps and is waiting for the given time between
+     * the steps.
+     */
+    private class CountingOrchestration extends OrchestrationLoop.Orchestration {
+        final AtomicInteger steps = new AtomicInteger();
+        final AtomicReference<Thread> stepThread = new AtomicReference<>();
+        private final int finishAfterSteps;
+        private final Duration waitingTime;
+
+        CountingOrchestration(int finishAfterSteps, Duration waitingTime) {
+            super(loop);
+            this.finishAfterSteps = finishAfterSteps;
+            this.waitingTime = waitingTime;
+        }
+
+        @Override
+        protected Optional<Result> step() {
+            stepThread.set(Thread.currentThread());
+            if (steps.incrementAndGet() >= finishAfterSteps) {
+                return Optional.of(Result.SUCCESS);
+            }
+            return Optional.empty();
+        }
+
+        @Override
+        protected Duration getWaitingTime() {
+            return waitingTime;
+        }
+
+        @Override
+        protected Result cancel() {
+            return Result.ABORTED;
+        }
+    }
+
+    @Test
+    public void orchestrationIsSteppedOnLoopThread() throws Exception {
+        CountingOrchestration orchestration = new CountingOrchestration(1, Duration.ofHours(1));
+        assertEquals(Result.SUCCESS, orchestration.run());
+        assertEquals(1, orchestration.steps.get(), "Wrong number of steps");
+        assertNotSame(Thread.currentThread(), orchestration.stepThread.get(), "Step should run on the loop thread");
+    }
+
+    @Test
+    public void orchestrationIsSteppedAfterWaitingTime() throws Exception {
+        // nobody wakes up the orchestration, the steps are made after the waiting time
+        CountingOrchestration orchestration = new CountingOrchestration(3, Duration.ofMillis(10));
+        assertEquals(Result.SUCCESS, orchestration.run());
+        assertEquals(3, orchestration.steps.get(), "Wrong number of steps");
+    }
+
+    @Test
+    public void orchestrationIsSteppedWhenWokenUp() throws Exception {
+        CountingOrchestration orchestration = new CountingOrchestration(2, Duration.ofHours(1));
+        Thread buildFinished = new Thread(() -> {
+            // simulating the build listener, that is waking up the orchestration from another thread
+            while (orchestration.steps.get() == 0) {
+                Thread.yield();
+            }
+            orchestration.wakeUp();
+        });
+        buildFinished.start();
+        assertEquals(Result.SUCCESS, orchestration.run());
+        buildFinished.join();
+    }
+
+    @Test
+    public void interruptedBuildCancelsOrchestration() throws Exception {
+        CountingOrchestration orchestration = new CountingOrchestration(Integer.MAX_VALUE, Duration.ofHours(1));
+        AtomicReference<Result> result = new AtomicReference<>();
+        Thread buildThread = new Thread(() -> {
+            try {
+                result.set(orchestration.run());
+            } catch (Exception e) {
+                fail("Orchestration should be cancelled without an exception: " + e);
+            }
+        });
+        buildThread.start();
+        while (orchestration.steps.get() == 0) {
+            Thread.yield();
+        }
+
+        // the user has aborted the build
+        buildThread.interrupt();
+        buildThread.join(5000);
+        assertFalse(buildThread.isAlive(), "Build thread should stop waiting");
+        assertEquals(Result.ABORTED, result.get(), "Cancelled orchestration should be aborted");
+    }
+
+    @Test
+    public void workIsExecutedOnBuildThread() throws Exception {
+        AtomicReference<Thread> workThread = new AtomicReference<>();
+        CountingOrchestration orchestration = new CountingOrchestration(1, Duration.ofHours(1)) {
+            @Override
+            protected Optional<Result> step() {
+                runOnBuildThread(() -> workThread.set(Thread.currentThread()));
+                return super.step();
+            }
+        };
+        assertEquals(Result.SUCCESS, orchestration.run());
+        assertSame(Thread.currentThread(), workThread.get(), "Work of the last step should run on the build thread");
+        assertNotSame(Thread.currentThread(), orchestration.stepThread.get(), "Step should run on the loop thread");
+    }
+
+    @Test
+    public void orchestrationIsSteppedAfterWork() throws Exception {
+        // the waiting time is long, the second step is made because the work is done
+        CountingOrchestration orchestration = new CountingOrchestration(2, Duration.ofHours(1)) {
+            @Override
+            protected Optional<Result> step() {
+                if (steps.get() == 0) {
+                    runOnBuildThreadAndWakeUp(() -> assertTrue(hasPendingWork(), "Work is not done yet"));
+                } else {
+                    assertFalse(hasPendingWork(), "Work should be done before the next step");
+                }
+                return super.step();
+            }
+        };
+        assertEquals(Result.SUCCESS, orchestration.run());
+        assertEquals(2, orchestration.steps.get(), "Wrong number of steps");
+    }
+
+    @Test
+    public void failedWorkStopsOrchestration() throws Exception {
+        CountingOrchestration orchestration = new CountingOrchestration(Integer.MAX_VALUE, Duration.ofMillis(1)) {
+            @Override
+            protected Optional<Result> step() {
+                runOnBuildThread(() -> {
+                    throw new IllegalStateException("Job does not exist");
+                });
+                return super.step();
+            }
+        };
+        IllegalStateException e = assertThrows(IllegalStateException.class, orchestration::run);
+        assertEquals("Job does not exist", e.getMessage());
+
+        // make sure the orchestration is no longer stepped
+        int steps = orchestration.steps.get();
+        Thread.sleep(50);
+        assertEquals(steps, orchestration.steps.get(), "Failed orchestration should not be stepped");
+    }
+
+    @Test
+    public void stoppedLoopCancelsOrchestration() throws Exception {
+        CountingOrchestration orchestration = new CountingOrchestration(Integer.MAX_VALUE, Duration.ofMillis(1));
+        AtomicReference<Result> result = new AtomicReference<>();
+        Thread buildThread = new Thread(() -> {
+            try {
+                result.set(orchestration.run());
+            } catch (Exception e) {
+                fail("Orchestration should be cancelled without an exception: " + e);
+            }
+        });
+        buildThread.start();
+        while (orchestration.steps.get() == 0) {
+            Thread.yield();
+        }
+
+        // Jenkins is shutting down
+        loop.stop();
+        buildThread.join(5000);
+        assertFalse(buildThread.isAlive(), "Build thread should stop waiting");
+        assertEquals(Result.ABORTED, result.get(), "Orchestration should be cancelled once the loop stops");
+    }
+
+    @Test
+    public void stepExceptionIsThrownOnBuildThread() {
+        OrchestrationLoop.Orchestration orchestration = new CountingOrchestration(1, Duration.ofHours(1)) {
+            @Override
+            protected Optional<Result> step() {
+                throw new IllegalStateException("Job does not exist");
+            }
+        };
+        IllegalStateException e = assertThrows(IllegalStateException.class, orchestration::run);
+        assertEquals("Job does not exist", e.getMessage());
+    }
+}
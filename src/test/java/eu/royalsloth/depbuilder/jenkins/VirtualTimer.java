@@ -0,0 +1,134 @@
+package eu.royalsloth.depbuilder.jenkins;
+
+import eu.royalsloth.depbuilder.dsl.scheduling.VirtualClock;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Scheduled executor that is driven by the {@link VirtualClock}. The scheduled tasks are only executed
+ * when {@link #runDueTasks()} is called and their scheduled time has been reached on the virtual clock,
+ * so the timeouts can be tested without waiting for the real time to pass.
+ */
+public class VirtualTimer extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final VirtualClock clock;
+    private final List<VirtualTask<?>> tasks = new ArrayList<>();
+    private boolean shutdown = false;
+
+    public VirtualTimer(VirtualClock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Run all the tasks that are due at the current time of the virtual clock in the order of their
+     * scheduled time.
+     */
+    public void runDueTasks() {
+        List<VirtualTask<?>> dueTasks = new ArrayList<>();
+        synchronized (this) {
+            Instant now = clock.instant();
+            for (VirtualTask<?> task : tasks) {
+                if (!task.due.isAfter(now)) {
+                    dueTasks.add(task);
+                }
+            }
+            tasks.removeAll(dueTasks);
+        }
+        dueTasks.sort(Comparator.comparing(task -> task.due));
+        for (VirtualTask<?> task : dueTasks) {
+            task.run();
+        }
+    }
+
+    /**
+     * @return number of tasks that were scheduled, but were not executed or cancelled yet
+     */
+    public synchronized int getPendingTasks() {
+        tasks.removeIf(Future::isCancelled);
+        return tasks.size();
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(Executors.callable(command), delay, unit);
+    }
+
+    @Override
+    public synchronized <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Virtual timer was shut down");
+        }
+        Instant due = clock.instant().plus(Duration.ofNanos(unit.toNanos(delay)));
+        VirtualTask<V> task = new VirtualTask<>(callable, due);
+        tasks.add(task);
+        return task;
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        throw new UnsupportedOperationException("Periodic tasks are not supported by the virtual timer");
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException("Periodic tasks are not supported by the virtual timer");
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> pending = new ArrayList<>(tasks);
+        tasks.clear();
+        return pending;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return isTerminated();
+    }
+
+    private class VirtualTask<V> extends FutureTask<V> implements ScheduledFuture<V> {
+        private final Instant due;
+
+        private VirtualTask(Callable<V> callable, Instant due) {
+            super(callable);
+            this.due = due;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            long delayNanos = Duration.between(clock.instant(), due).toNanos();
+            return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}